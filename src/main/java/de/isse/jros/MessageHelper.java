@@ -280,11 +280,28 @@ public class MessageHelper {
 	 * @return md5 checksum for the type
 	 */
 	public static String getStructMD5(ROSstruct message) {
-		String def = getStructDefinitionForMD5(message);
+		return md5(getStructDefinitionForMD5(message).trim());
+	}
+
+	/**
+	 * Retrieves the md5 checksum for a service type
+	 * 
+	 * @param request  request message type of the service
+	 * @param response response message type of the service
+	 * @return md5 checksum for the service type
+	 */
+	public static String getServiceMD5(ROSstruct request, ROSstruct response) {
+		return md5(getStructDefinitionForMD5(request).trim() + getStructDefinitionForMD5(response).trim());
+	}
+
+	/**
+	 * Computes the md5 checksum of a type definition
+	 */
+	private static String md5(String def) {
 		try {
 			MessageDigest md;
 			md = MessageDigest.getInstance("MD5");
-			byte[] bytes = md.digest(def.toString().trim().getBytes());
+			byte[] bytes = md.digest(def.getBytes());
 			StringBuffer ret = new StringBuffer();
 			for (int i = 0; i < bytes.length; i++) {
 				ret.append(Integer.toString((bytes[i] & 0xff) + 0x100, 16).substring(1));
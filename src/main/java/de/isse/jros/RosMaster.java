@@ -8,31 +8,40 @@
 package de.isse.jros;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-
-import de.isse.jros.internal.xmlrpc.RpcClient;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadFactory;
+
+import de.isse.jros.internal.Names;
+import de.isse.jros.internal.master.LivenessMonitor;
+import de.isse.jros.internal.master.ParameterTree;
+import de.isse.jros.internal.master.Registry;
+import de.isse.jros.internal.master.UpdateNotifier;
 import de.isse.jros.internal.xmlrpc.RpcServer;
 import de.isse.jros.internal.xmlrpc.RpcServer.ServerInterface;
 
 /**
- * Minimal implementation of a ROS master supporting topics (but no services or
- * parameter server), for use in tests and publish/subscribe-only scenarios
+ * Minimal implementation of a ROS master supporting topics, services and the
+ * parameter server, for use in tests and scenarios without a ROS installation
  */
 public class RosMaster {
 
-	private Map<String, String> topicTypes = new HashMap<String, String>();
-	private Map<String, List<String>> topicSubscribers = new HashMap<String, List<String>>();
-	private Map<String, List<String>> topicPublishers = new HashMap<String, List<String>>();
-	private Map<String, String> nodeUris = new HashMap<String, String>();
+	private Registry registry = new Registry();
+	private ParameterTree parameters = new ParameterTree();
+	private Map<String, Set<String>> parameterSubscribers = new ConcurrentHashMap<String, Set<String>>();
 
 	private RpcServer server;
+	private final UpdateNotifier notifier;
+	private final LivenessMonitor monitor;
 
 	/**
 	 * Starts a new ROS master
@@ -41,6 +50,18 @@ public class RosMaster {
 	 * @throws IOException when the port is already in use
 	 */
 	public RosMaster(int port) throws IOException {
+		this(port, Threads.platform());
+	}
+
+	/**
+	 * Starts a new ROS master
+	 * 
+	 * @param port    port to listen on
+	 * @param threads factory for the threads handling requests, e.g.
+	 *                {@link Threads#virtual()}
+	 * @throws IOException when the port is already in use
+	 */
+	public RosMaster(int port, ThreadFactory threads) throws IOException {
 		server = new RpcServer(port, new ServerInterface() {
 			@Override
 			public List<?> execute(String method, List<?> params) {
@@ -70,11 +91,35 @@ public class RosMaster {
 				} else if ("getUri".equals(method)) {
 					return getUri((String) params.get(0));
 				} else if ("lookupService".equals(method)) {
-					return lookupNode((String) params.get(0), (String) params.get(1));
+					return lookupService((String) params.get(0), (String) params.get(1));
+				} else if ("getParam".equals(method)) {
+					return getParam((String) params.get(0), (String) params.get(1));
+				} else if ("setParam".equals(method)) {
+					return setParam((String) params.get(0), (String) params.get(1), params.get(2));
+				} else if ("hasParam".equals(method)) {
+					return hasParam((String) params.get(0), (String) params.get(1));
+				} else if ("deleteParam".equals(method)) {
+					return deleteParam((String) params.get(0), (String) params.get(1));
+				} else if ("searchParam".equals(method)) {
+					return searchParam((String) params.get(0), (String) params.get(1));
+				} else if ("subscribeParam".equals(method)) {
+					return subscribeParam((String) params.get(0), (String) params.get(1), (String) params.get(2));
+				} else if ("unsubscribeParam".equals(method)) {
+					return unsubscribeParam((String) params.get(0), (String) params.get(1), (String) params.get(2));
+				} else if ("getParamNames".equals(method)) {
+					return getParamNames((String) params.get(0));
 				}
 				return null;
 			}
-		});
+		}, threads);
+		// requests may arrive as soon as the server is started
+		notifier = new UpdateNotifier(server.getUri(), threads);
+		monitor = new LivenessMonitor(server.getUri(), registry, new LivenessMonitor.Listener() {
+			@Override
+			public void dead(Map<String, String> nodes) {
+				removeNodes(nodes);
+			}
+		}, threads);
 		server.start();
 	}
 
@@ -85,10 +130,12 @@ public class RosMaster {
 	 * @param service     Fully-qualified name of service
 	 * @param service_api ROSRPC Service URI
 	 * @param caller_api  XML-RPC URI of caller node
-	 * @return
+	 * @return ignore
 	 */
 	protected List<?> registerService(String caller_id, String service, String service_api, String caller_api) {
-		return error("not implemented", 0);
+		replaceNode(caller_id, caller_api);
+		registry.registerService(caller_id, service, service_api, caller_api);
+		return success("service registered", 0);
 	}
 
 	/**
@@ -103,7 +150,8 @@ public class RosMaster {
 	 *         still succeeds as the intended final state is reached.
 	 */
 	protected List<?> unregisterService(String caller_id, String service, String service_api) {
-		return error("not implemented", 0);
+		boolean removed = registry.unregisterService(caller_id, service, service_api);
+		return success("service removed", removed ? 1 : 0);
 	}
 
 	/**
@@ -121,22 +169,10 @@ public class RosMaster {
 	 *         specified topic.
 	 */
 	protected List<?> registerSubscriber(String caller_id, String topic, String topic_type, String caller_api) {
-		if (!topicTypes.containsKey(topic)) {
-			topicTypes.put(topic, topic_type);
-		} else if (!topicTypes.get(topic).equals(topic_type)) {
+		replaceNode(caller_id, caller_api);
+		if (!registry.registerSubscriber(caller_id, topic, topic_type, caller_api))
 			return failure("Incorrect topic type for topic.", new ArrayList<String>());
-		}
-		if (!topicSubscribers.containsKey(topic))
-			topicSubscribers.put(topic, new ArrayList<String>());
-		topicSubscribers.get(topic).add(caller_api);
-
-		List<String> ret = new ArrayList<String>();
-		if (topicPublishers.containsKey(topic))
-			ret.addAll(topicPublishers.get(topic));
-
-		nodeUris.put(caller_id, caller_api);
-
-		return success("subscriber registered", ret);
+		return success("subscriber registered", registry.getPublishers(topic));
 	}
 
 	/**
@@ -151,17 +187,8 @@ public class RosMaster {
 	 *         final state is reached.
 	 */
 	protected List<?> unregisterSubscriber(String caller_id, String topic, String caller_api) {
-		if (!topicSubscribers.containsKey(topic))
-			return success("subscriber removed", 0);
-
-		boolean removed = topicSubscribers.get(topic).remove(caller_api);
-		if (topicSubscribers.get(topic).isEmpty()) {
-			topicSubscribers.remove(topic);
-			if (!topicPublishers.containsKey(topic)) {
-				topicTypes.remove(topic);
-			}
-		}
-
+		boolean removed = registry.unregisterSubscriber(caller_id, topic, caller_api);
+		notifier.cancel(caller_api, "publisherUpdate", topic);
 		return success("subscriber removed", removed ? 1 : 0);
 	}
 
@@ -176,24 +203,11 @@ public class RosMaster {
 	 * @return List of current subscribers of topic in the form of XMLRPC URIs.
 	 */
 	protected List<?> registerPublisher(String caller_id, String topic, String topic_type, String caller_api) {
-		if (!topicTypes.containsKey(topic)) {
-			topicTypes.put(topic, topic_type);
-		} else if (!topicTypes.get(topic).equals(topic_type)) {
+		replaceNode(caller_id, caller_api);
+		if (!registry.registerPublisher(caller_id, topic, topic_type, caller_api))
 			return failure("Incorrect topic type for topic.", new ArrayList<String>());
-		}
-		if (!topicPublishers.containsKey(topic))
-			topicPublishers.put(topic, new ArrayList<String>());
-		topicPublishers.get(topic).add(caller_api);
-
 		publisherUpdate(caller_id, topic);
-		List<String> ret = new ArrayList<String>();
-		if (topicSubscribers.containsKey(topic)) {
-			ret.addAll(topicSubscribers.get(topic));
-		}
-
-		nodeUris.put(caller_id, caller_api);
-
-		return success("publisher registered", ret);
+		return success("publisher registered", registry.getSubscribers(topic));
 	}
 
 	/**
@@ -208,38 +222,54 @@ public class RosMaster {
 	 *         final state is reached.
 	 */
 	protected List<?> unregisterPublisher(String caller_id, String topic, String caller_api) {
-		if (!topicPublishers.containsKey(topic))
-			return success("publisher removed", 0);
-
-		boolean removed = topicPublishers.get(topic).remove(caller_api);
-		if (topicPublishers.get(topic).isEmpty()) {
-			topicPublishers.remove(topic);
-			if (!topicSubscribers.containsKey(topic)) {
-				topicTypes.remove(topic);
-			}
-		}
-		publisherUpdate(caller_id, topic);
-
+		boolean removed = registry.unregisterPublisher(caller_id, topic, caller_api);
+		if (removed)
+			publisherUpdate(caller_id, topic);
 		return success("publisher removed", removed ? 1 : 0);
 	}
 
-	private void publisherUpdate(String caller_id, String topic) {
-		List<String> publishers = new ArrayList<String>();
-		if (topicPublishers.containsKey(topic))
-			publishers.addAll(topicPublishers.get(topic));
-		if (topicSubscribers.containsKey(topic)) {
-			for (String subscriber : topicSubscribers.get(topic)) {
-				try {
-					URI uri = new URI(subscriber);
-					new RpcClient(uri.getHost(), uri.getPort()).execute("publisherUpdate",
-							Arrays.asList(getMasterUri(caller_id), topic, publishers));
-				} catch (IOException e) {
-					e.printStackTrace();
-				} catch (URISyntaxException e) {
-					e.printStackTrace();
-				}
+	/**
+	 * Drops the registrations of a node that registers again with a different
+	 * XMLRPC URI (e.g. after a restart)
+	 */
+	private void replaceNode(String caller_id, String caller_api) {
+		String known = registry.lookupNode(caller_id);
+		if (known != null && !known.equals(caller_api)) {
+			for (String topic : registry.unregisterNode(caller_id))
+				publisherUpdate(caller_id, topic);
+		}
+	}
+
+	/**
+	 * Drops the registrations of dead nodes, notifying the subscribers of each
+	 * affected topic once
+	 */
+	private void removeNodes(Map<String, String> nodes) {
+		Set<String> topics = new LinkedHashSet<String>();
+		for (Entry<String, String> node : nodes.entrySet()) {
+			topics.addAll(registry.unregisterNode(node.getKey(), node.getValue()));
+			notifier.cancel(node.getValue());
+		}
+		synchronized (parameters) {
+			for (Iterator<Set<String>> it = parameterSubscribers.values().iterator(); it.hasNext();) {
+				Set<String> subscribers = it.next();
+				subscribers.removeAll(nodes.values());
+				if (subscribers.isEmpty())
+					it.remove();
 			}
 		}
+		for (String topic : topics)
+			publisherUpdate("/master", topic);
+	}
+
+	/**
+	 * Notifies the subscribers of a topic about its current publishers, without
+	 * waiting for them to answer
+	 */
+	private void publisherUpdate(String caller_id, String topic) {
+		List<String> publishers = registry.getPublishers(topic);
+		for (String subscriber : registry.getSubscribers(topic))
+			notifier.publisherUpdate(subscriber, topic, publishers);
 	}
 
 	/**
@@ -252,7 +282,10 @@ public class RosMaster {
 	 * @return URI
 	 */
 	protected List<?> lookupNode(String caller_id, String node_name) {
-		return success("here you are", nodeUris.get(node_name));
+		String uri = registry.lookupNode(node_name);
+		if (uri == null)
+			return error("unknown node [" + node_name + "]", "");
+		return success("node api", uri);
 	}
 
 	/**
@@ -267,9 +300,10 @@ public class RosMaster {
 	 */
 	protected List<?> getPublishedTopics(String caller_id, String subgraph) {
 		List<List<String>> ret = new ArrayList<List<String>>();
-		for (String topic : topicPublishers.keySet()) {
-			if (topic.startsWith(subgraph))
-				ret.add(Arrays.asList(topic, topicTypes.get(topic)));
+		for (String topic : registry.getPublishedTopics(subgraph)) {
+			String type = registry.getTopicType(topic);
+			if (type != null)
+				ret.add(Arrays.asList(topic, type));
 		}
 		return success("here you are", ret);
 	}
@@ -282,9 +316,8 @@ public class RosMaster {
 	 */
 	protected List<?> getTopicTypes(String caller_id) {
 		List<List<String>> ret = new ArrayList<List<String>>();
-		for (String topic : topicTypes.keySet()) {
-			ret.add(Arrays.asList(topic, topicTypes.get(topic)));
-		}
+		for (Entry<String, String> entry : registry.getTopicTypes().entrySet())
+			ret.add(Arrays.asList(entry.getKey(), entry.getValue()));
 		return success("here you are", ret);
 	}
 
@@ -315,14 +348,18 @@ public class RosMaster {
 		List<Object> subscribers = new ArrayList<Object>();
 		List<Object> services = new ArrayList<Object>();
 
-		for (Entry<String, List<String>> entry : topicPublishers.entrySet()) {
+		for (Entry<String, List<String>> entry : registry.getPublishers().entrySet()) {
 			publishers.add(Arrays.asList(entry.getKey(), entry.getValue()));
 		}
 
-		for (Entry<String, List<String>> entry : topicSubscribers.entrySet()) {
+		for (Entry<String, List<String>> entry : registry.getSubscribers().entrySet()) {
 			subscribers.add(Arrays.asList(entry.getKey(), entry.getValue()));
 		}
 
+		for (Entry<String, List<String>> entry : registry.getServices().entrySet()) {
+			services.add(Arrays.asList(entry.getKey(), entry.getValue()));
+		}
+
 		return success("here you are", Arrays.asList(publishers, subscribers, services));
 	}
 
@@ -345,7 +382,164 @@ public class RosMaster {
 	 *         there is no provider.
 	 */
 	protected List<?> lookupService(String caller_id, String service) {
-		return error("not implemented", 0);
+		String uri = registry.lookupService(service);
+		if (uri == null)
+			return error("no provider", "");
+		return success("rosrpc URI: [" + uri + "]", uri);
+	}
+
+	/**
+	 * Retrieve parameter value from server.
+	 * 
+	 * @param caller_id ROS caller ID
+	 * @param key       Parameter name. If key is a namespace, getParam() will
+	 *                  return a parameter tree.
+	 * @return parameterValue. If key is a namespace, the return value will be a
+	 *         dictionary, where each key is a parameter in that namespace.
+	 *         Sub-namespaces are also represented as dictionaries.
+	 */
+	protected List<?> getParam(String caller_id, String key) {
+		String resolved = Names.resolve(caller_id, key);
+		Object value = parameters.get(resolved);
+		if (value == null)
+			return error("Parameter [" + resolved + "] is not set", 0);
+		return success("Parameter [" + resolved + "]", value);
+	}
+
+	/**
+	 * Set parameter. NOTE: if value is a dictionary it will be treated as a
+	 * parameter tree, where key is the parameter namespace.
+	 * 
+	 * @param caller_id ROS caller ID
+	 * @param key       Parameter name
+	 * @param value     Parameter value
+	 * @return ignore
+	 */
+	protected List<?> setParam(String caller_id, String key, Object value) {
+		String resolved = Names.resolve(caller_id, key);
+		synchronized (parameters) {
+			parameters.set(resolved, value);
+			paramUpdate(resolved);
+		}
+		return success("parameter " + resolved + " set", 0);
+	}
+
+	/**
+	 * Check if parameter is stored on server.
+	 * 
+	 * @param caller_id ROS caller ID
+	 * @param key       Parameter name
+	 * @return hasParam
+	 */
+	protected List<?> hasParam(String caller_id, String key) {
+		String resolved = Names.resolve(caller_id, key);
+		return success(resolved, parameters.has(resolved));
+	}
+
+	/**
+	 * Delete parameter
+	 * 
+	 * @param caller_id ROS caller ID
+	 * @param key       Parameter name
+	 * @return ignore
+	 */
+	protected List<?> deleteParam(String caller_id, String key) {
+		String resolved = Names.resolve(caller_id, key);
+		synchronized (parameters) {
+			if (!parameters.delete(resolved))
+				return error("parameter [" + resolved + "] is not set", 0);
+			paramUpdate(resolved);
+		}
+		return success("parameter " + resolved + " deleted", 0);
+	}
+
+	/**
+	 * Search for parameter key on the Parameter Server. Search starts in caller's
+	 * namespace and proceeds upwards through parent namespaces until Parameter
+	 * Server finds a matching key.
+	 * 
+	 * @param caller_id ROS caller ID
+	 * @param key       Parameter name to search for
+	 * @return foundKey
+	 */
+	protected List<?> searchParam(String caller_id, String key) {
+		String found = key.startsWith("/") ? (parameters.has(key) ? key : null)
+				: parameters.search(Names.namespace(caller_id), key);
+		if (found == null)
+			return error("Cannot find parameter [" + key + "] in an upwards search", "");
+		return success("Found [" + found + "]", found);
+	}
+
+	/**
+	 * Retrieve parameter value from server and subscribe to updates to that param.
+	 * See paramUpdate() in the Node API.
+	 * 
+	 * @param caller_id  ROS caller ID
+	 * @param caller_api Node API URI of subscriber for paramUpdate callbacks.
+	 * @param key        Parameter name
+	 * @return parameterValue. If the parameter is not set, an empty dictionary is
+	 *         returned.
+	 */
+	protected List<?> subscribeParam(String caller_id, String caller_api, String key) {
+		String resolved = Names.resolve(caller_id, key);
+		synchronized (parameters) {
+			Set<String> subscribers = parameterSubscribers.get(resolved);
+			if (subscribers == null)
+				parameterSubscribers.put(resolved, subscribers = new CopyOnWriteArraySet<String>());
+			subscribers.add(caller_api);
+			Object value = parameters.get(resolved);
+			return success("Subscribed to parameter [" + resolved + "]",
+					value != null ? value : new HashMap<String, Object>());
+		}
+	}
+
+	/**
+	 * Retrieve parameter value from server and subscribe to updates to that param.
+	 * See paramUpdate() in the Node API.
+	 * 
+	 * @param caller_id  ROS caller ID
+	 * @param caller_api Node API URI of subscriber
+	 * @param key        Parameter name
+	 * @return numUnsubscribed. If numUnsubscribed is zero it means that the caller
+	 *         was not subscribed to the parameter.
+	 */
+	protected List<?> unsubscribeParam(String caller_id, String caller_api, String key) {
+		String resolved = Names.resolve(caller_id, key);
+		synchronized (parameters) {
+			Set<String> subscribers = parameterSubscribers.get(resolved);
+			boolean removed = subscribers != null && subscribers.remove(caller_api);
+			if (subscribers != null && subscribers.isEmpty())
+				parameterSubscribers.remove(resolved);
+			notifier.cancel(caller_api, "paramUpdate", resolved);
+			return success("Unsubscribed from parameter [" + resolved + "]", removed ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Get list of all parameter names stored on this server.
+	 * 
+	 * @param caller_id ROS caller ID
+	 * @return parameterNameList
+	 */
+	protected List<?> getParamNames(String caller_id) {
+		return success("Parameter names", parameters.getNames());
+	}
+
+	/**
+	 * Notifies the nodes subscribed to a changed parameter, to a namespace
+	 * containing it or to a parameter within it (if a namespace changed)
+	 */
+	private void paramUpdate(String key) {
+		for (Entry<String, Set<String>> entry : parameterSubscribers.entrySet()) {
+			String subscribed = entry.getKey();
+			if (!Names.isWithin(subscribed, key) && !Names.isWithin(key, subscribed))
+				continue;
+			Object value = parameters.get(subscribed);
+			if (value == null)
+				value = new HashMap<String, Object>();
+			for (String subscriber : entry.getValue())
+				notifier.paramUpdate(subscriber, subscribed, value);
+		}
 	}
 
 	private String getMasterUri(String caller_id) {
@@ -388,6 +582,15 @@ public class RosMaster {
 		return Arrays.asList((Integer) 1, statusMessage, response);
 	}
 
+	/**
+	 * Retrieves the statistics of the XMLRPC server handling the master API
+	 * 
+	 * @return server statistics
+	 */
+	public ServerStatistics getServerStatistics() {
+		return server;
+	}
+
 	/**
 	 * Stops the ROS master
 	 * 
@@ -396,6 +599,24 @@ public class RosMaster {
 	public void shutdown() throws IOException {
 		server.stop();
 		server = null;
+		monitor.stop();
+		notifier.stop();
+	}
+
+	/**
+	 * Changes how often the registered nodes are probed. Nodes that do not answer
+	 * are removed with all their registrations, and the subscribers of their
+	 * topics are notified. By default, nodes are probed every
+	 * {@value LivenessMonitor#DEFAULT_INTERVAL} milliseconds and removed after
+	 * {@value LivenessMonitor#DEFAULT_MISSED_PROBES} missed probes.
+	 * 
+	 * @param interval     time (in milliseconds) between probes, or 0 to disable
+	 *                     probing
+	 * @param missedProbes number of consecutive missed probes before a node is
+	 *                     removed
+	 */
+	public void setProbeInterval(long interval, int missedProbes) {
+		monitor.setInterval(interval, missedProbes);
 	}
 
 	/**
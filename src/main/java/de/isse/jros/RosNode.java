@@ -8,18 +8,39 @@
 package de.isse.jros;
 
 import java.io.IOException;
+import java.net.URI;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
+import de.isse.jros.internal.BufferPool;
+import de.isse.jros.internal.Dispatcher;
+import de.isse.jros.internal.Names;
+import de.isse.jros.internal.TopicConnection;
+import de.isse.jros.internal.intraprocess.IntraProcessPublisher;
+import de.isse.jros.internal.shmros.ShmRosHelper;
+import de.isse.jros.internal.shmros.ShmRosPublisher;
+import de.isse.jros.internal.shmros.ShmRosSubscriber;
+import de.isse.jros.internal.tcpros.TcpRosHelper;
 import de.isse.jros.internal.tcpros.TcpRosPublisher;
+import de.isse.jros.internal.tcpros.TcpRosSelector;
+import de.isse.jros.internal.tcpros.TcpRosServiceClient;
+import de.isse.jros.internal.tcpros.TcpRosServiceServer;
 import de.isse.jros.internal.tcpros.TcpRosSubscriber;
+import de.isse.jros.internal.udpros.UdpRosHelper;
+import de.isse.jros.internal.udpros.UdpRosPublisher;
+import de.isse.jros.internal.udpros.UdpRosSubscriber;
 import de.isse.jros.internal.xmlrpc.RpcClient;
+import de.isse.jros.internal.xmlrpc.RpcConnectionPool;
 import de.isse.jros.internal.xmlrpc.RpcServer;
 import de.isse.jros.internal.xmlrpc.RpcServer.ServerInterface;
 import de.isse.jros.types.ROSType;
@@ -29,36 +50,111 @@ import de.isse.jros.types.ROSstruct;
  * Minimal implementation of a ROS node supporting topics (publish / subscribe)
  */
 public class RosNode {
+	/** Maximum number of registrations sent to the master in one request */
+	private static final int MAX_BATCH_SIZE = 256;
+	/** Nodes running in this JVM, by XMLRPC address */
+	private static final Map<String, RosNode> localNodes = new ConcurrentHashMap<String, RosNode>();
+	/** Placeholder for cached parameters whose subscription is in progress */
+	private static final Object PENDING = new Object();
+
 	private RpcClient master;
+	private RpcConnectionPool rpcPool = new RpcConnectionPool();
 	private String callerId;
 	private String nodeUri = "http://127.0.0.1:8080";
-	private Map<String, Integer> portsForPublish = new HashMap<String, Integer>();
-	private Map<String, ROSstruct> prototypes = new HashMap<String, ROSstruct>();
+	private Map<String, Integer> portsForPublish = new ConcurrentHashMap<String, Integer>();
 	private Map<String, List<String>> publishers = new HashMap<String, List<String>>();
-	private Map<String, TcpRosSubscriber> connections = new HashMap<String, TcpRosSubscriber>();
+	private Map<String, IntraProcessPublisher> localPublishers = new ConcurrentHashMap<String, IntraProcessPublisher>();
+	private Map<String, ShmRosPublisher> shmPublishers = new ConcurrentHashMap<String, ShmRosPublisher>();
+	private Map<String, UdpRosPublisher> udpPublishers = new ConcurrentHashMap<String, UdpRosPublisher>();
+	private Map<String, TopicConnection> connections = new HashMap<String, TopicConnection>();
 	private Map<String, String> hostMap = new HashMap<String, String>();
+	private String localHost;
+	private int maxDatagramSize = UdpRosHelper.DEFAULT_MAX_DATAGRAM_SIZE;
+	private int shmCapacity = ShmRosHelper.DEFAULT_CAPACITY;
+	private boolean intraProcess = false;
+	private ThreadFactory threads;
+	private Executor callbackExecutor;
+	private int callbackQueueSize;
+	private QueuePolicy callbackPolicy;
 	private RpcServer server;
+	private TcpRosSelector tcpSelector;
+	private BufferPool bufferPool = new BufferPool(16);
 	private Map<String, Publishing> publishings = new HashMap<String, Publishing>();
-	private Map<String, Subscriber> subscriptions = new HashMap<String, Subscriber>();
+	private Map<String, Subscription> subscriptions = new HashMap<String, Subscription>();
+	private List<List<?>> batch;
+	private Map<String, Object> parameterCache = new ConcurrentHashMap<String, Object>();
+	private Map<String, ServiceProvider> serviceProviders = new ConcurrentHashMap<String, ServiceProvider>();
 
 	/**
 	 * Interface to publish messages
 	 */
 	public interface Publishing {
 		/**
-		 * Publish a message (given in ROS binary format)
+		 * Publish a message (given in ROS binary format). Subscribers of nodes in
+		 * the same JVM that enabled {@link RosNode#setIntraProcess(boolean)} are
+		 * called directly from this method.
 		 * 
 		 * @param message message to send
 		 * @throws IOException if an I/O error occurs
 		 */
 		void send(byte[] message) throws IOException;
 
+		/**
+		 * Publish a message (given in ROS binary format) without copying it. The
+		 * same array is handed to all subscribers, so it must not be modified after
+		 * calling this method.
+		 * 
+		 * @param message message to send
+		 * @throws IOException if an I/O error occurs
+		 */
+		void sendShared(byte[] message) throws IOException;
+
 		/**
 		 * Stop publishing the message
 		 * 
 		 * @throws IOException if an I/O error occurs
 		 */
 		void stop() throws IOException;
+
+		/**
+		 * Retrieves the number of messages dropped for each connected subscriber
+		 * because its queue was full
+		 * 
+		 * @return Assignment of dropped message counts to subscriber caller IDs
+		 */
+		Map<String, Long> getDroppedMessages();
+	}
+
+	/**
+	 * Policy to apply when publishing to a subscriber whose queue is full
+	 */
+	public enum QueuePolicy {
+		/** Discard the oldest queued message to make room for the new one */
+		DROP_OLDEST,
+		/** Discard the new message */
+		DROP_NEWEST,
+		/** Block the publisher until the subscriber has room for the message */
+		BLOCK
+	}
+
+	/**
+	 * Transport protocol used to receive messages of a subscription
+	 */
+	public enum Transport {
+		/** Reliable, ordered delivery over a TCP connection */
+		TCPROS,
+		/**
+		 * Unreliable delivery over UDP datagrams, dropping incomplete messages
+		 * instead of delaying later ones (falls back to TCPROS if the publisher does
+		 * not support UDPROS)
+		 */
+		UDPROS,
+		/**
+		 * Delivery through a ring buffer in shared memory, for publishers on the
+		 * same host (falls back to TCPROS otherwise). Messages are dropped if the
+		 * subscriber falls behind by more than the ring size.
+		 */
+		SHMROS
 	}
 
 	/**
@@ -73,6 +169,190 @@ public class RosNode {
 		void received(byte[] message);
 	}
 
+	/**
+	 * Statistics of the dispatch of received messages to a subscriber running in
+	 * a callback executor
+	 */
+	public interface DispatchStatistics {
+		/**
+		 * Retrieves the number of messages waiting for the callback
+		 * 
+		 * @return current queue depth
+		 */
+		int getQueueDepth();
+
+		/**
+		 * Retrieves the largest number of messages that waited for the callback
+		 * 
+		 * @return maximum queue depth
+		 */
+		int getMaxQueueDepth();
+
+		/**
+		 * Retrieves the number of messages handed to the callback
+		 * 
+		 * @return number of dispatched messages
+		 */
+		long getDispatchedMessages();
+
+		/**
+		 * Retrieves the number of messages dropped because the queue was full
+		 * 
+		 * @return number of dropped messages
+		 */
+		long getDroppedMessages();
+
+		/**
+		 * Retrieves the average time messages waited in the queue
+		 * 
+		 * @return average queue latency in nanoseconds
+		 */
+		long getAverageQueueNanos();
+
+		/**
+		 * Retrieves the average time the callback took per message
+		 * 
+		 * @return average callback duration in nanoseconds
+		 */
+		long getAverageCallbackNanos();
+	}
+
+	/**
+	 * Received message in a buffer borrowed from a pool. The lease is only valid
+	 * while the callback runs, afterwards the buffer is reused for other
+	 * messages.
+	 */
+	public interface MessageLease {
+		/**
+		 * Retrieves the buffer containing the message (given in ROS binary format),
+		 * which may be larger than the message
+		 * 
+		 * @return buffer containing the message at position 0
+		 */
+		byte[] getBuffer();
+
+		/**
+		 * Retrieves the length of the message in the buffer
+		 * 
+		 * @return length of the message
+		 */
+		int getLength();
+
+		/**
+		 * Copies the message, to keep it after the callback returned
+		 * 
+		 * @return copy of the message
+		 */
+		byte[] retain();
+	}
+
+	/**
+	 * Callback to handle received messages in pooled buffers, avoiding an
+	 * allocation per message
+	 */
+	public interface PooledSubscriber {
+		/**
+		 * Handle a received message (only valid until this method returns)
+		 * 
+		 * @param message lease of the buffer containing the message
+		 */
+		void received(MessageLease message);
+	}
+
+	/**
+	 * Callback to handle received messages in a (direct) byte buffer, avoiding
+	 * the copy from the socket into the Java heap
+	 */
+	public interface BufferSubscriber {
+		/**
+		 * Handle a received message (only valid until this method returns)
+		 * 
+		 * @param message read-only little-endian view of the message (given in ROS
+		 *                binary format)
+		 */
+		void received(ByteBuffer message);
+	}
+
+	/**
+	 * Callback answering the calls of a provided service
+	 */
+	public interface ServiceHandler {
+		/**
+		 * Handle a service call. Calls on different connections may be handled
+		 * concurrently.
+		 * 
+		 * @param request request message (given in ROS binary format)
+		 * @return response message (in ROS binary format)
+		 * @throws Exception if the request cannot be handled, reporting the message
+		 *                   of the exception to the caller
+		 */
+		byte[] call(byte[] request) throws Exception;
+	}
+
+	/**
+	 * Interface to a provided service
+	 */
+	public interface ServiceProvider {
+		/**
+		 * Stop providing the service
+		 * 
+		 * @throws IOException if an I/O error occurs
+		 */
+		void stop() throws IOException;
+	}
+
+	/**
+	 * Interface to call a service
+	 */
+	public interface ServiceClient {
+		/**
+		 * Call the service
+		 * 
+		 * @param request request message (given in ROS binary format)
+		 * @return response message (in ROS binary format)
+		 * @throws IOException              if an I/O error occurs or the service is
+		 *                                  not available
+		 * @throws IllegalArgumentException if the service provider failed to
+		 *                                  handle the request
+		 */
+		byte[] call(byte[] request) throws IOException;
+
+		/**
+		 * Close the connection to the service provider
+		 * 
+		 * @throws IOException if an I/O error occurs
+		 */
+		void close() throws IOException;
+	}
+
+	/**
+	 * Type and callback of a subscribed topic
+	 */
+	private static class Subscription {
+		private ROSstruct type;
+		private Subscriber subscriber;
+		private PooledSubscriber pooledSubscriber;
+		private BufferSubscriber bufferSubscriber;
+		private Transport transport = Transport.TCPROS;
+		private Dispatcher dispatcher;
+
+		Subscription(ROSstruct type, Subscriber subscriber, Transport transport) {
+			this.type = type;
+			this.subscriber = subscriber;
+			this.transport = transport;
+		}
+
+		Subscription(ROSstruct type, PooledSubscriber pooledSubscriber) {
+			this.type = type;
+			this.pooledSubscriber = pooledSubscriber;
+		}
+
+		Subscription(ROSstruct type, BufferSubscriber bufferSubscriber) {
+			this.type = type;
+			this.bufferSubscriber = bufferSubscriber;
+		}
+	}
+
 	/**
 	 * Starts a new ROS node with the given name and ROS master
 	 * 
@@ -113,12 +393,29 @@ public class RosNode {
 	 * @throws IOException if an I/O error occurs
 	 */
 	public RosNode(String name, String masterUri, Map<String, String> hostMap) throws IOException {
+		this(name, masterUri, hostMap, Threads.platform());
+	}
+
+	/**
+	 * Starts a new ROS node with the given name and ROS master
+	 * 
+	 * @param name      name of the node
+	 * @param masterUri URI of the ROS master to use
+	 * @param hostMap   Map assigning IP addresses to host names (when DNS is not
+	 *                  set up correctly)
+	 * @param threads   factory for the I/O threads of the node, e.g.
+	 *                  {@link Threads#virtual()}
+	 * @throws IOException if an I/O error occurs
+	 */
+	public RosNode(String name, String masterUri, Map<String, String> hostMap, ThreadFactory threads)
+			throws IOException {
 		this.callerId = name;
+		this.threads = threads;
 		this.hostMap.putAll(hostMap);
 		String host = new URL(masterUri).getHost();
 		int port = new URL(masterUri).getPort();
-		master = new RpcClient(resolveHost(host), port);
-		final String local = master.getLocalHost();
+		master = new RpcClient(resolveHost(host), port, rpcPool);
+		localHost = master.getLocalHost();
 
 		server = new RpcServer(0, new ServerInterface() {
 			@Override
@@ -128,11 +425,41 @@ public class RosNode {
 					List<?> ps = (List<?>) params.get(2);
 					publisherUpdate(tp, ps);
 					return Arrays.asList(1, "Publishers updated", 0);
+				} else if (method.equals("getPid")) {
+					return Arrays.asList(1, "", (int) ProcessHandle.current().pid());
+				} else if (method.equals("paramUpdate")) {
+					String key = Names.resolve(callerId, (String) params.get(1));
+					parameterCache.replace(key, params.get(2));
+					return Arrays.asList(1, "Parameter updated", 0);
 				} else if (method.equals("requestTopic")) {
 					Integer port = portsForPublish.get(params.get(1));
+					UdpRosPublisher udp = udpPublishers.get(params.get(1));
+					ShmRosPublisher shm = shmPublishers.get(params.get(1));
 					for (Object o : ((List<?>) params.get(2))) {
-						if (((List<?>) o).get(0).equals("TCPROS") && port != null) {
-							return Arrays.asList(1, "ready", Arrays.asList("TCPROS", local, port));
+						List<?> protocol = (List<?>) o;
+						if (protocol.get(0).equals("TCPROS") && port != null) {
+							return Arrays.asList(1, "ready", Arrays.asList("TCPROS", localHost, port));
+						} else if (protocol.get(0).equals("UDPROS") && udp != null && protocol.size() >= 5) {
+							try {
+								int[] conn = udp.addSubscriber(
+										TcpRosHelper.parseConnectionHeader((byte[]) protocol.get(1)),
+										resolveHost((String) protocol.get(2)), (Integer) protocol.get(3),
+										(Integer) protocol.get(4));
+								return Arrays.asList(1, "ready", Arrays.asList("UDPROS", localHost, conn[2], conn[0],
+										conn[1], udp.getConnectionHeader()));
+							} catch (IOException e) {
+								Logger.getGlobal().warning("Cannot accept UDPROS subscriber: " + e.getMessage());
+							}
+						} else if (protocol.get(0).equals("SHMROS") && shm != null && protocol.size() >= 3
+								&& ShmRosHelper.getHostName().equals(protocol.get(2))) {
+							try {
+								String path = shm.addSubscriber(
+										TcpRosHelper.parseConnectionHeader((byte[]) protocol.get(1)));
+								return Arrays.asList(1, "ready",
+										Arrays.asList("SHMROS", path, shm.getConnectionHeader()));
+							} catch (IOException e) {
+								Logger.getGlobal().warning("Cannot accept SHMROS subscriber: " + e.getMessage());
+							}
 						}
 					}
 					return Arrays.asList(-1, "Unsupported method", Arrays.asList());
@@ -142,10 +469,14 @@ public class RosNode {
 				}
 			}
 
-		});
+		}, threads);
 		server.start();
 
-		nodeUri = "http://" + local + ":" + server.getPort() + "/";
+		tcpSelector = new TcpRosSelector(threads);
+		tcpSelector.start();
+
+		nodeUri = "http://" + localHost + ":" + server.getPort() + "/";
+		localNodes.put(nodeUri, this);
 
 	}
 
@@ -222,7 +553,7 @@ public class RosNode {
 		;
 		for (String pub : publishers) {
 			URL uri = new URL(lookupNode(pub));
-			RpcClient client = new RpcClient(resolveHost(uri.getHost()), uri.getPort());
+			RpcClient client = new RpcClient(resolveHost(uri.getHost()), uri.getPort(), rpcPool);
 			List<?> provider = (List<?>) client.execute("requestTopic",
 					Arrays.asList(callerId, topic, Arrays.asList(Arrays.asList("TCPROS"))));
 
@@ -258,7 +589,224 @@ public class RosNode {
 	}
 
 	/**
-	 * Publish a given topic
+	 * Retrieves a parameter from the parameter server
+	 * 
+	 * @param key name of the parameter, relative to the namespace of the node
+	 * @return value of the parameter (a map for a namespace), or null if it is not
+	 *         set
+	 * @throws IOException if an I/O error occurs
+	 */
+	public Object getParam(String key) throws IOException {
+		List<?> resp = (List<?>) master.execute("getParam", Arrays.asList(callerId, key));
+		return (Integer) resp.get(0) == 1 ? resp.get(2) : null;
+	}
+
+	/**
+	 * Retrieves a parameter from a local cache. On first access, the node
+	 * subscribes to the parameter, so that the master keeps the cache up to date.
+	 * 
+	 * @param key name of the parameter, relative to the namespace of the node
+	 * @return value of the parameter (a map for a namespace), or null if it is not
+	 *         set
+	 * @throws IOException if an I/O error occurs
+	 */
+	public Object getCachedParam(String key) throws IOException {
+		String resolved = Names.resolve(callerId, key);
+		Object value = parameterCache.get(resolved);
+		if (value == null || value == PENDING) {
+			// updates arriving while subscribing replace the placeholder and win
+			// over the (possibly older) value returned by subscribeParam
+			parameterCache.putIfAbsent(resolved, PENDING);
+			List<?> resp;
+			try {
+				resp = (List<?>) master.execute("subscribeParam", Arrays.asList(callerId, nodeUri, resolved));
+			} catch (IOException e) {
+				parameterCache.remove(resolved, PENDING);
+				throw e;
+			}
+			if ((Integer) resp.get(0) != 1) {
+				parameterCache.remove(resolved, PENDING);
+				throw new IOException((String) resp.get(1));
+			}
+			parameterCache.replace(resolved, PENDING, resp.get(2));
+			value = parameterCache.get(resolved);
+		}
+		return value instanceof Map<?, ?> && ((Map<?, ?>) value).isEmpty() ? null : value;
+	}
+
+	/**
+	 * Sets a parameter on the parameter server
+	 * 
+	 * @param key   name of the parameter, relative to the namespace of the node
+	 * @param value value of the parameter; a map sets all parameters of a
+	 *              namespace
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void setParam(String key, Object value) throws IOException {
+		List<?> resp = (List<?>) master.execute("setParam", Arrays.asList(callerId, key, value));
+		if ((Integer) resp.get(0) != 1)
+			throw new IOException((String) resp.get(1));
+	}
+
+	/**
+	 * Checks whether a parameter is set on the parameter server
+	 * 
+	 * @param key name of the parameter, relative to the namespace of the node
+	 * @return true if the parameter is set
+	 * @throws IOException if an I/O error occurs
+	 */
+	public boolean hasParam(String key) throws IOException {
+		List<?> resp = (List<?>) master.execute("hasParam", Arrays.asList(callerId, key));
+		return (Integer) resp.get(0) == 1 && Boolean.TRUE.equals(resp.get(2));
+	}
+
+	/**
+	 * Deletes a parameter from the parameter server
+	 * 
+	 * @param key name of the parameter, relative to the namespace of the node
+	 * @return true if the parameter was set
+	 * @throws IOException if an I/O error occurs
+	 */
+	public boolean deleteParam(String key) throws IOException {
+		List<?> resp = (List<?>) master.execute("deleteParam", Arrays.asList(callerId, key));
+		return (Integer) resp.get(0) == 1;
+	}
+
+	/**
+	 * Searches a parameter from the namespace of the node upwards
+	 * 
+	 * @param key name of the parameter
+	 * @return fully qualified name of the closest matching parameter, or null if
+	 *         none was found
+	 * @throws IOException if an I/O error occurs
+	 */
+	public String searchParam(String key) throws IOException {
+		List<?> resp = (List<?>) master.execute("searchParam", Arrays.asList(callerId, key));
+		return (Integer) resp.get(0) == 1 ? (String) resp.get(2) : null;
+	}
+
+	/**
+	 * Retrieves the names of all parameters on the parameter server
+	 * 
+	 * @return fully qualified names of the parameters
+	 * @throws IOException if an I/O error occurs
+	 */
+	public List<String> getParamNames() throws IOException {
+		List<String> ret = new ArrayList<String>();
+		List<?> resp = (List<?>) master.execute("getParamNames", Arrays.asList(callerId));
+		if ((Integer) resp.get(0) == 1)
+			for (Object o : (List<?>) resp.get(2))
+				ret.add((String) o);
+		return ret;
+	}
+
+	/**
+	 * Provide a service, answering calls in a pool of
+	 * {@value TcpRosServiceServer#DEFAULT_WORKERS} to
+	 * {@value TcpRosServiceServer#DEFAULT_MAX_WORKERS} worker threads
+	 * 
+	 * @param service  name of the service
+	 * @param type     service type
+	 * @param request  request message type of the service
+	 * @param response response message type of the service
+	 * @param handler  callback answering the calls
+	 * @return interface to stop providing the service
+	 * @throws IOException if an I/O error occurs
+	 */
+	public ServiceProvider advertiseService(String service, String type, ROSstruct request, ROSstruct response,
+			ServiceHandler handler) throws IOException {
+		return advertiseService(service, type, request, response, handler, TcpRosServiceServer.DEFAULT_WORKERS,
+				TcpRosServiceServer.DEFAULT_MAX_WORKERS);
+	}
+
+	/**
+	 * Provide a service
+	 * 
+	 * @param service    name of the service
+	 * @param type       service type
+	 * @param request    request message type of the service
+	 * @param response   response message type of the service
+	 * @param handler    callback answering the calls
+	 * @param workers    number of worker threads kept alive to answer calls (each
+	 *                   persistent connection occupies a worker while it is open)
+	 * @param maxWorkers maximum number of worker threads; further connections are
+	 *                   closed
+	 * @return interface to stop providing the service
+	 * @throws IOException if an I/O error occurs
+	 */
+	public ServiceProvider advertiseService(final String service, String type, ROSstruct request,
+			ROSstruct response, ServiceHandler handler, int workers, int maxWorkers) throws IOException {
+		final TcpRosServiceServer server = new TcpRosServiceServer(0, callerId, service, type, request, response,
+				handler, workers, maxWorkers, threads);
+		server.start();
+		final String uri = "rosrpc://" + localHost + ":" + server.getPort();
+		ServiceProvider ret = new ServiceProvider() {
+			@Override
+			public void stop() throws IOException {
+				serviceProviders.remove(service, this);
+				try {
+					master.execute("unregisterService", Arrays.asList(callerId, service, uri));
+				} finally {
+					server.stop();
+				}
+			}
+		};
+		ServiceProvider previous = serviceProviders.put(service, ret);
+		if (previous != null)
+			previous.stop();
+		master.execute("registerService", Arrays.asList(callerId, service, uri, nodeUri));
+		return ret;
+	}
+
+	/**
+	 * Creates a client for a service. The service is looked up on the master
+	 * when the client connects.
+	 * 
+	 * @param service    name of the service
+	 * @param request    request message type of the service
+	 * @param response   response message type of the service
+	 * @param persistent decides whether to keep the connection open for further
+	 *                   calls (reconnecting if it fails), or to connect for each
+	 *                   call
+	 * @return client to call the service
+	 */
+	public ServiceClient serviceClient(final String service, ROSstruct request, ROSstruct response,
+			final boolean persistent) {
+		final String md5sum = MessageHelper.getServiceMD5(request, response);
+		return new ServiceClient() {
+			private TcpRosServiceClient connection;
+
+			@Override
+			public synchronized byte[] call(byte[] request) throws IOException {
+				if (connection == null || !connection.isOpen())
+					connection = connectService(service, md5sum, persistent);
+				return connection.call(request);
+			}
+
+			@Override
+			public synchronized void close() throws IOException {
+				if (connection != null)
+					connection.close();
+			}
+		};
+	}
+
+	/**
+	 * Looks up a service and connects to its provider
+	 */
+	private TcpRosServiceClient connectService(String service, String md5sum, boolean persistent)
+			throws IOException {
+		List<?> resp = (List<?>) master.execute("lookupService", Arrays.asList(callerId, service));
+		if ((Integer) resp.get(0) != 1)
+			throw new IOException("Service " + service + " is not available: " + resp.get(1));
+		URI uri = URI.create((String) resp.get(2));
+		return new TcpRosServiceClient(resolveHost(uri.getHost()), uri.getPort(), callerId, service, md5sum,
+				persistent);
+	}
+
+	/**
+	 * Publish a given topic, only sending the latest message to subscribers that
+	 * cannot keep up
 	 * 
 	 * @param topic    topic to publish
 	 * @param msg      type of the message to publish
@@ -269,21 +817,61 @@ public class RosNode {
 	 *                     error occurs
 	 */
 	public Publishing publish(final String topic, ROSstruct msg, boolean latching) throws IOException {
+		return publish(topic, msg, latching, 1, QueuePolicy.DROP_OLDEST);
+	}
+
+	/**
+	 * Publish a given topic
+	 * 
+	 * @param topic     topic to publish
+	 * @param msg       type of the message to publish
+	 * @param latching  decides whether new subscribers should get the previously
+	 *                  published message (true), or only new messages (false)
+	 * @param queueSize number of messages queued for each subscriber
+	 * @param policy    policy to apply when the queue of a subscriber is full
+	 * @return Publishing that allows to control the publication
+	 * @throws IOException if the node already publishes the topic, or if an I/O
+	 *                     error occurs
+	 */
+	public Publishing publish(final String topic, ROSstruct msg, boolean latching, int queueSize,
+			QueuePolicy policy) throws IOException {
 		if (portsForPublish.containsKey(topic))
 			throw new IOException("Topic already published");
 		Logger.getGlobal().info("Publishing " + topic);
 
-		final TcpRosPublisher tcps = new TcpRosPublisher(0, callerId, topic, msg, latching);
+		final TcpRosPublisher tcps = new TcpRosPublisher(0, callerId, topic, msg, latching, queueSize, policy,
+				tcpSelector);
 		portsForPublish.put(topic, tcps.getPort());
 		tcps.start();
+		final UdpRosPublisher udps = new UdpRosPublisher(callerId, topic, msg, latching, tcps::getLatchedMessage,
+				maxDatagramSize);
+		udpPublishers.put(topic, udps);
+		final ShmRosPublisher shms = new ShmRosPublisher(callerId, topic, msg, latching, tcps::getLatchedMessage,
+				shmCapacity);
+		shmPublishers.put(topic, shms);
+		final IntraProcessPublisher locals = new IntraProcessPublisher(topic, msg, tcps::getLatchedMessage);
+		localPublishers.put(topic, locals);
 
-		master.execute("registerPublisher", Arrays.asList(callerId, topic, msg.getName(), nodeUri));
+		register("registerPublisher", topic, msg.getName());
 
 		Publishing ret = new Publishing() {
 
 			@Override
 			public void send(byte[] message) throws IOException {
-				tcps.setMessage(message, 0, msg.skip(message, 0));
+				int len = msg.skip(message, 0);
+				tcps.setMessage(message, 0, len);
+				udps.setMessage(message, 0, len);
+				shms.setMessage(message, 0, len);
+				locals.setMessage(message, len);
+			}
+
+			@Override
+			public void sendShared(byte[] message) throws IOException {
+				int len = msg.skip(message, 0);
+				tcps.setSharedMessage(message, 0, len);
+				udps.setMessage(message, 0, len);
+				shms.setMessage(message, 0, len);
+				locals.setMessage(message, len);
 			}
 
 			@Override
@@ -291,9 +879,20 @@ public class RosNode {
 				Logger.getGlobal().info("Unpublishing " + topic);
 				master.execute("unregisterPublisher", Arrays.asList(callerId, topic, nodeUri));
 				tcps.stop();
+				udps.stop();
+				shms.stop();
+				locals.stop();
 				portsForPublish.remove(topic);
+				udpPublishers.remove(topic);
+				shmPublishers.remove(topic);
+				localPublishers.remove(topic);
 				publishings.remove(topic);
 			}
+
+			@Override
+			public Map<String, Long> getDroppedMessages() {
+				return tcps.getDroppedMessages();
+			}
 		};
 		publishings.put(topic, ret);
 		return ret;
@@ -309,14 +908,180 @@ public class RosNode {
 	 *                     error occurs
 	 */
 	public void subscribe(String topic, ROSstruct msg, Subscriber subscriber) throws IOException {
+		subscribe(topic, msg, subscriber, Transport.TCPROS);
+	}
+
+	/**
+	 * Subscribe to a given topic using the given transport
+	 * 
+	 * @param topic      topic to publish
+	 * @param msg        type of the message to publish
+	 * @param subscriber callback to receive the messages
+	 * @param transport  preferred transport to receive the messages
+	 * @throws IOException if the node already subscribes to the topic, or if an I/O
+	 *                     error occurs
+	 */
+	public void subscribe(String topic, ROSstruct msg, Subscriber subscriber, Transport transport)
+			throws IOException {
+		subscribe(topic, new Subscription(msg, subscriber, transport));
+	}
+
+	/**
+	 * Subscribe to a given topic, receiving messages into pooled buffers that are
+	 * reused after the callback returns
+	 * 
+	 * @param topic      topic to publish
+	 * @param msg        type of the message to publish
+	 * @param subscriber callback to receive the messages
+	 * @throws IOException if the node already subscribes to the topic, or if an I/O
+	 *                     error occurs
+	 */
+	public void subscribePooled(String topic, ROSstruct msg, PooledSubscriber subscriber) throws IOException {
+		subscribe(topic, new Subscription(msg, subscriber));
+	}
+
+	/**
+	 * Subscribe to a given topic, receiving messages into a direct byte buffer
+	 * that is reused after the callback returns
+	 * 
+	 * @param topic      topic to publish
+	 * @param msg        type of the message to publish
+	 * @param subscriber callback to receive the messages
+	 * @throws IOException if the node already subscribes to the topic, or if an I/O
+	 *                     error occurs
+	 */
+	public void subscribeDirect(String topic, ROSstruct msg, BufferSubscriber subscriber) throws IOException {
+		subscribe(topic, new Subscription(msg, subscriber));
+	}
+
+	/**
+	 * Registers a subscription with the master and connects to the publishers
+	 */
+	private void subscribe(String topic, Subscription subscription) throws IOException {
 		Logger.getGlobal().info("Subscribing " + topic);
 		if (subscriptions.containsKey(topic))
 			throw new IOException("Topic already subscribed");
-		subscriptions.put(topic, subscriber);
-		prototypes.put(topic, msg);
-		List<?> reg = (List<?>) master.execute("registerSubscriber",
-				Arrays.asList(callerId, topic, msg.getName(), nodeUri));
-		publisherUpdate(topic, (List<?>) reg.get(2));
+		if (callbackExecutor != null && subscription.subscriber != null) {
+			subscription.dispatcher = new Dispatcher(subscription.subscriber, callbackExecutor, callbackQueueSize,
+					callbackPolicy);
+			subscription.subscriber = subscription.dispatcher;
+		}
+		subscriptions.put(topic, subscription);
+		register("registerSubscriber", topic, subscription.type.getName());
+	}
+
+	/**
+	 * Registers a publication or subscription with the master, or adds it to the
+	 * current batch
+	 */
+	private void register(String method, String topic, String type) throws IOException {
+		if (batch != null) {
+			batch.add(Arrays.asList(method, callerId, topic, type, nodeUri));
+			return;
+		}
+		List<?> reg = (List<?>) master.execute(method, Arrays.asList(callerId, topic, type, nodeUri));
+		if (method.equals("registerSubscriber"))
+			publisherUpdate(topic, (List<?>) reg.get(2));
+	}
+
+	/**
+	 * Defers the registration of subsequent publications and subscriptions with
+	 * the master until {@link #commitBatch()} is called, so that a node with many
+	 * topics registers them in few round trips.
+	 */
+	public void beginBatch() {
+		if (batch == null)
+			batch = new ArrayList<List<?>>();
+	}
+
+	/**
+	 * Registers the publications and subscriptions created since
+	 * {@link #beginBatch()} with the master (using system.multicall) and connects
+	 * to the publishers of the subscribed topics
+	 * 
+	 * @throws IOException if a registration failed, or if an I/O error occurs
+	 */
+	public void commitBatch() throws IOException {
+		List<List<?>> calls = batch;
+		batch = null;
+		if (calls == null)
+			return;
+		List<String> failures = new ArrayList<String>();
+		boolean multicall = true;
+		for (int start = 0; start < calls.size(); start += MAX_BATCH_SIZE) {
+			List<List<?>> chunk = calls.subList(start, Math.min(calls.size(), start + MAX_BATCH_SIZE));
+			List<Object> responses = null;
+			if (multicall) {
+				try {
+					responses = master.multicall(chunk);
+				} catch (UnsupportedOperationException e) {
+					// master without system.multicall, nothing has been registered
+					multicall = false;
+				}
+			}
+			if (responses == null) {
+				responses = new ArrayList<Object>();
+				for (List<?> call : chunk) {
+					try {
+						responses.add(master.execute((String) call.get(0), call.subList(1, call.size())));
+					} catch (IllegalArgumentException e) {
+						responses.add(e.getMessage());
+					}
+				}
+			}
+			for (int i = 0; i < chunk.size(); i++) {
+				List<?> call = chunk.get(i);
+				Object response = responses.get(i);
+				if (!(response instanceof List<?>)) {
+					failures.add(call.get(0) + " " + call.get(2) + ": " + response);
+				} else if (!Integer.valueOf(1).equals(((List<?>) response).get(0))) {
+					failures.add(call.get(0) + " " + call.get(2) + ": " + ((List<?>) response).get(1));
+				} else if (call.get(0).equals("registerSubscriber")) {
+					publisherUpdate((String) call.get(2), (List<?>) ((List<?>) response).get(2));
+				}
+			}
+		}
+		if (!failures.isEmpty())
+			throw new IOException("Registration failed: " + String.join("; ", failures));
+	}
+
+	/**
+	 * Runs the callbacks of subsequent subscriptions (using {@link Subscriber}) in
+	 * the given executor instead of the thread receiving the messages. Messages of
+	 * a topic are handed to the callback one at a time, in the order received.
+	 * 
+	 * @param executor  executor to run the callbacks in, or null to call them
+	 *                  directly from the receiving thread
+	 * @param queueSize number of messages per topic waiting for the callback
+	 * @param policy    policy to apply when the queue of a topic is full
+	 */
+	public void setCallbackExecutor(Executor executor, int queueSize, QueuePolicy policy) {
+		this.callbackExecutor = executor;
+		this.callbackQueueSize = queueSize;
+		this.callbackPolicy = policy;
+	}
+
+	/**
+	 * Retrieves the dispatch statistics of a subscription using a callback
+	 * executor
+	 * 
+	 * @param topic subscribed topic
+	 * @return dispatch statistics, or null if the subscription does not use a
+	 *         callback executor
+	 */
+	public DispatchStatistics getDispatchStatistics(String topic) {
+		Subscription subscription = subscriptions.get(topic);
+		return subscription != null ? subscription.dispatcher : null;
+	}
+
+	/**
+	 * Retrieves the statistics of the XMLRPC server handling the slave API of this
+	 * node
+	 * 
+	 * @return server statistics
+	 */
+	public ServerStatistics getServerStatistics() {
+		return server;
 	}
 
 	/**
@@ -329,8 +1094,9 @@ public class RosNode {
 		Logger.getGlobal().info("Unsubscribing " + topic);
 		master.execute("unregisterSubscriber", Arrays.asList(callerId, topic, nodeUri));
 		publisherUpdate(topic, Arrays.asList());
-		prototypes.remove(topic);
-		subscriptions.remove(topic);
+		Subscription subscription = subscriptions.remove(topic);
+		if (subscription != null && subscription.dispatcher != null)
+			subscription.dispatcher.stop();
 	}
 
 	/**
@@ -363,22 +1129,92 @@ public class RosNode {
 	 */
 	private void publisherAdded(String topic, String publisher) throws IOException {
 		Logger.getGlobal().info("Got publisher " + publisher + " for topic " + topic);
+		Subscription subscription = subscriptions.get(topic);
+		RosNode localNode = intraProcess ? localNodes.get(publisher) : null;
+		IntraProcessPublisher local = localNode != null ? localNode.localPublishers.get(topic) : null;
+		if (local != null) {
+			TopicConnection connection;
+			if (subscription.pooledSubscriber != null)
+				connection = local.addPooledSubscriber(subscription.type, subscription.pooledSubscriber);
+			else if (subscription.bufferSubscriber != null)
+				connection = local.addBufferSubscriber(subscription.type, subscription.bufferSubscriber);
+			else
+				connection = local.addSubscriber(subscription.type, subscription.subscriber);
+			connections.put(publisher + " for " + topic, connection);
+			return;
+		}
+
 		URL uri = new URL(publisher);
-		RpcClient client = new RpcClient(resolveHost(uri.getHost()), uri.getPort());
-		List<?> provider = (List<?>) client.execute("requestTopic", Arrays
-				.asList("/rapi-org.roboticsapi.communication.ros", topic, Arrays.asList(Arrays.asList("TCPROS"))));
+		RpcClient client = new RpcClient(resolveHost(uri.getHost()), uri.getPort(), rpcPool);
+		UdpRosSubscriber udp = null;
+		List<?> protocols = Arrays.asList(Arrays.asList("TCPROS"));
+		if (subscription.transport == Transport.UDPROS) {
+			udp = new UdpRosSubscriber(topic, subscription.type, subscription.subscriber, maxDatagramSize, threads);
+			protocols = Arrays.asList(Arrays.asList("UDPROS",
+					udp.getConnectionHeader("/rapi-org.roboticsapi.communication.ros"), localHost, udp.getPort(),
+					maxDatagramSize), Arrays.asList("TCPROS"));
+		} else if (subscription.transport == Transport.SHMROS) {
+			protocols = Arrays.asList(Arrays.asList("SHMROS",
+					TcpRosHelper.createConnectionHeader(subscription.type, "/rapi-org.roboticsapi.communication.ros",
+							false, topic),
+					ShmRosHelper.getHostName()), Arrays.asList("TCPROS"));
+		}
+		List<?> provider;
+		try {
+			provider = (List<?>) client.execute("requestTopic",
+					Arrays.asList("/rapi-org.roboticsapi.communication.ros", topic, protocols));
+		} catch (IOException e) {
+			if (udp != null)
+				udp.stop();
+			throw e;
+		}
 
-		Object spec = provider.get(2);
-		if (((List<?>) spec).size() == 0)
+		List<?> spec = (List<?>) provider.get(2);
+		if (udp != null && (spec.size() == 0 || !spec.get(0).equals("UDPROS")))
+			udp.stop();
+		if (spec.size() == 0)
 			return;
-		if (((List<?>) spec).get(0).equals("TCPROS")) {
-			connections.put(publisher + " for " + topic,
-					new TcpRosSubscriber(resolveHost(((List<?>) spec).get(1).toString()),
-							(Integer) (((List<?>) spec).get(2)), "/rapi-org.roboticsapi.communication.ros", topic,
-							prototypes.get(topic), subscriptions.get(topic)));
+		if (spec.get(0).equals("UDPROS") && udp != null) {
+			udp.start((byte[]) spec.get(5), (Integer) spec.get(3));
+			connections.put(publisher + " for " + topic, udp);
+		} else if (spec.get(0).equals("SHMROS") && subscription.transport == Transport.SHMROS) {
+			try {
+				connections.put(publisher + " for " + topic, new ShmRosSubscriber((String) spec.get(1),
+						(byte[]) spec.get(2), topic, subscription.type, subscription.subscriber, threads));
+			} catch (IOException e) {
+				Logger.getGlobal().warning("Cannot open shared memory of " + publisher + ", falling back to TCPROS: "
+						+ e.getMessage());
+				provider = (List<?>) client.execute("requestTopic", Arrays.asList(
+						"/rapi-org.roboticsapi.communication.ros", topic, Arrays.asList(Arrays.asList("TCPROS"))));
+				spec = (List<?>) provider.get(2);
+				if (spec.size() > 0 && spec.get(0).equals("TCPROS"))
+					connectTcp(topic, publisher, spec, subscription);
+			}
+		} else if (spec.get(0).equals("TCPROS")) {
+			connectTcp(topic, publisher, spec, subscription);
 		}
 	}
 
+	/**
+	 * Connects a subscription to a publisher using TCPROS
+	 */
+	private void connectTcp(String topic, String publisher, List<?> spec, Subscription subscription)
+			throws IOException {
+		String host = resolveHost(spec.get(1).toString());
+		Integer port = (Integer) spec.get(2);
+		TcpRosSubscriber connection;
+		if (subscription.pooledSubscriber != null)
+			connection = new TcpRosSubscriber(host, port, "/rapi-org.roboticsapi.communication.ros", topic,
+					subscription.type, subscription.pooledSubscriber, bufferPool, threads);
+		else if (subscription.bufferSubscriber != null)
+			connection = new TcpRosSubscriber(host, port, "/rapi-org.roboticsapi.communication.ros", topic,
+					subscription.type, subscription.bufferSubscriber, threads);
+		else
+			connection = new TcpRosSubscriber(host, port, "/rapi-org.roboticsapi.communication.ros", topic,
+					subscription.type, subscription.subscriber, threads);
+		connections.put(publisher + " for " + topic, connection);
+	}
+
 	/**
 	 * Handles the removal of a publisher for a topic this node is subscribed to
 	 */
@@ -389,6 +1225,40 @@ public class RosNode {
 		}
 	}
 
+	/**
+	 * Sets the maximum size of UDPROS datagrams (including the UDPROS header) for
+	 * subsequent publications and subscriptions. Larger messages are split into
+	 * multiple datagrams.
+	 * 
+	 * @param maxDatagramSize maximum datagram size in bytes
+	 */
+	public void setMaxDatagramSize(int maxDatagramSize) {
+		this.maxDatagramSize = maxDatagramSize;
+	}
+
+	/**
+	 * Sets the size of the shared memory ring for subsequent publications, which
+	 * limits the size of messages sent through shared memory to half of it
+	 * 
+	 * @param shmCapacity size of the ring in bytes
+	 */
+	public void setShmCapacity(int shmCapacity) {
+		this.shmCapacity = shmCapacity;
+	}
+
+	/**
+	 * Decides whether subsequent subscriptions to publishers in the same JVM are
+	 * served directly, or through the network transports (the default). Direct
+	 * subscribers are called in the thread sending the message, bypassing the
+	 * queue size and policy of the publication, so a slow callback delays the
+	 * publisher.
+	 * 
+	 * @param intraProcess true to call subscribers directly from the publisher
+	 */
+	public void setIntraProcess(boolean intraProcess) {
+		this.intraProcess = intraProcess;
+	}
+
 	/**
 	 * Resolves the host from the defined host map
 	 */
@@ -424,7 +1294,25 @@ public class RosNode {
 		} catch (ConcurrentModificationException e) {
 		}
 
+		for (ServiceProvider provider : serviceProviders.values()) {
+			try {
+				provider.stop();
+			} catch (IOException e) {
+			}
+		}
+
+		for (String key : parameterCache.keySet()) {
+			try {
+				master.execute("unsubscribeParam", Arrays.asList(callerId, nodeUri, key));
+			} catch (IOException e) {
+			}
+		}
+		parameterCache.clear();
+
+		localNodes.remove(nodeUri);
+		tcpSelector.stop();
 		server.stop();
+		rpcPool.close();
 	}
 
 }
@@ -0,0 +1,63 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros;
+
+/**
+ * Statistics of the XMLRPC server of a {@link RosNode} or {@link RosMaster}
+ */
+public interface ServerStatistics {
+	/**
+	 * Retrieves the number of open client connections
+	 * 
+	 * @return number of connections
+	 */
+	int getOpenConnections();
+
+	/**
+	 * Retrieves the number of requests waiting for a worker
+	 * 
+	 * @return current queue length
+	 */
+	int getQueuedRequests();
+
+	/**
+	 * Retrieves the largest number of requests that waited for a worker
+	 * 
+	 * @return maximum queue length
+	 */
+	int getMaxQueuedRequests();
+
+	/**
+	 * Retrieves the number of requests currently being handled
+	 * 
+	 * @return number of busy workers
+	 */
+	int getActiveRequests();
+
+	/**
+	 * Retrieves the number of requests handled
+	 * 
+	 * @return number of handled requests
+	 */
+	long getHandledRequests();
+
+	/**
+	 * Retrieves the number of requests rejected because the queue was full or the
+	 * request was too large
+	 * 
+	 * @return number of rejected requests
+	 */
+	long getRejectedRequests();
+
+	/**
+	 * Retrieves the average time requests waited for a worker
+	 * 
+	 * @return average queue latency in nanoseconds
+	 */
+	long getAverageQueueNanos();
+}
@@ -0,0 +1,68 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Thread factories for the I/O threads of {@link RosNode} and {@link RosMaster}
+ */
+public class Threads {
+
+	private static final ThreadFactory PLATFORM = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			return new Thread(r);
+		}
+	};
+
+	private static ThreadFactory virtual;
+
+	/**
+	 * Retrieves a factory creating a platform thread for each task
+	 * 
+	 * @return factory for platform threads
+	 */
+	public static ThreadFactory platform() {
+		return PLATFORM;
+	}
+
+	/**
+	 * Retrieves a factory creating a virtual thread for each task, so blocking
+	 * I/O does not occupy an OS thread. On JDKs without virtual threads, platform
+	 * threads are used instead.
+	 * 
+	 * @return factory for virtual threads if supported, platform threads
+	 *         otherwise
+	 */
+	public static synchronized ThreadFactory virtual() {
+		if (virtual == null) {
+			try {
+				Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+				Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+				builder = ofVirtual.getMethod("name", String.class, long.class).invoke(builder, "jros-", 0L);
+				virtual = (ThreadFactory) ofVirtual.getMethod("factory").invoke(builder);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				Logger.getGlobal().info("Virtual threads not supported, using platform threads");
+				virtual = PLATFORM;
+			}
+		}
+		return virtual;
+	}
+
+	/**
+	 * Checks whether virtual threads are supported by the running JDK
+	 * 
+	 * @return true if {@link #virtual()} creates virtual threads
+	 */
+	public static boolean isVirtualSupported() {
+		return virtual() != PLATFORM;
+	}
+
+}
@@ -46,18 +46,33 @@ public class ArrayElementDescriptor<T> extends ElementDescriptor<T> {
 	}
 
 	/**
-	 * Retrieves the position of the desired array element by skipping all preceding
+	 * Retrieves the descriptor of the array containing the element
+	 */
+	ElementDescriptor<?> getParent() {
+		return parent;
+	}
+
+	/**
+	 * Retrieves the index of the element within the array
+	 */
+	int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Finds the position of the desired array element by skipping all preceding
 	 * elements
 	 */
 	@Override
-	public int getPosition(byte[] data, int start) {
-		int pos = parent.getPosition(data, start);
-		if (parentType instanceof ROSarray)
-			return ((ROSarray) parentType).skipToIndex(index, data, pos);
-		else if (parentType instanceof ROSfixedArray)
-			return ((ROSfixedArray) parentType).skipToIndex(index, data, pos);
-		else
-			return -1;
+	void compile(OffsetPlan plan) {
+		parent.compile(plan);
+		if (parentType instanceof ROSarray) {
+			plan.index((ROSarray) parentType, index);
+		} else {
+			ROSType<?> prototype = ((ROSfixedArray) parentType).getPrototype();
+			for (int i = 0; i < index; i++)
+				plan.skip(prototype);
+		}
 	}
 
 }
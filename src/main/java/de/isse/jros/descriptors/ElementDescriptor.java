@@ -20,6 +20,7 @@ import de.isse.jros.types.ROSstruct;
  */
 public abstract class ElementDescriptor<T> {
 	private ROSType<T> type;
+	private volatile OffsetPlan plan;
 
 	/**
 	 * Type of the field this descriptor points to
@@ -58,13 +59,30 @@ public abstract class ElementDescriptor<T> {
 	}
 
 	/**
-	 * Finds the position of this field in a ROS binary message
+	 * Finds the position of this field in a ROS binary message. The path to the
+	 * field is compiled into an offset plan on first use, so that only
+	 * variable-length fields are skipped.
 	 * 
 	 * @param data  ROS binary message
 	 * @param start start position of the surrounding type in the binary message
 	 * @return position of the field this descriptor points to
 	 */
-	public abstract int getPosition(byte[] data, int start);
+	public int getPosition(byte[] data, int start) {
+		OffsetPlan plan = this.plan;
+		if (plan == null) {
+			plan = new OffsetPlan();
+			compile(plan);
+			this.plan = plan;
+		}
+		return plan.getPosition(data, start);
+	}
+
+	/**
+	 * Adds the steps to find this field to an offset plan
+	 * 
+	 * @param plan plan to add the steps to
+	 */
+	abstract void compile(OffsetPlan plan);
 
 	/**
 	 * Finds the position of this field in a ROS binary message
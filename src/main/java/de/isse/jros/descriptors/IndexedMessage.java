@@ -0,0 +1,163 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.descriptors;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import de.isse.jros.types.ROSType;
+import de.isse.jros.types.ROSarray;
+import de.isse.jros.types.ROSfixedArray;
+import de.isse.jros.types.ROSstruct;
+
+/**
+ * ROS binary message that remembers the positions of its elements, for reading
+ * many fields of the same message. The layout is parsed lazily, level by
+ * level: the first access into a struct or array records the start positions
+ * of all its fields or elements, so that further accesses do not skip the
+ * preceding variable-length elements again.
+ *
+ * Writes through this class that may change the size of an element (strings
+ * and array sizes) discard the recorded positions; {@link #invalidate()} must
+ * be called after modifying the message in other ways.
+ */
+public class IndexedMessage {
+	private byte[] data;
+	/** Start positions of fields or elements, by container type and position */
+	private Map<ROSType<?>, Map<Integer, int[]>> layouts = new IdentityHashMap<ROSType<?>, Map<Integer, int[]>>();
+
+	/**
+	 * Creates an indexed view of a message
+	 * 
+	 * @param data ROS binary message
+	 */
+	public IndexedMessage(byte[] data) {
+		this.data = data;
+	}
+
+	/**
+	 * Retrieves the underlying ROS binary message
+	 * 
+	 * @return ROS binary message
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+	 * Discards all recorded positions, e.g. after the message was modified
+	 * without using this class
+	 */
+	public void invalidate() {
+		layouts.clear();
+	}
+
+	/**
+	 * Retrieves the value of an element
+	 * 
+	 * @param <T>     type of the element
+	 * @param element descriptor of the element (relative to the message root)
+	 * @return value of the element
+	 */
+	public <T> T read(ElementDescriptor<T> element) {
+		return element.getType().read(data, getPosition(element));
+	}
+
+	/**
+	 * Updates the value of an element
+	 * 
+	 * @param <T>     type of the element
+	 * @param element descriptor of the element (relative to the message root)
+	 * @param value   new value of the element
+	 */
+	public <T> void write(ElementDescriptor<T> element, T value) {
+		element.getType().write(data, getPosition(element), value);
+		if (element.getType().getFixedSize() < 0)
+			invalidate();
+	}
+
+	/**
+	 * Finds the position of an element
+	 * 
+	 * @param element descriptor of the element (relative to the message root)
+	 * @return position of the element, or -1 if an array index is out of bounds
+	 */
+	public int getPosition(ElementDescriptor<?> element) {
+		if (element instanceof RootElementDescriptor) {
+			return 0;
+		} else if (element instanceof StructElementDescriptor) {
+			StructElementDescriptor<?> field = (StructElementDescriptor<?>) element;
+			int start = getPosition(field.getParent());
+			if (start < 0)
+				return -1;
+			return layout(field.getParent().getType(), start)[field.getFieldIndex()];
+		} else if (element instanceof ArrayElementDescriptor) {
+			ArrayElementDescriptor<?> item = (ArrayElementDescriptor<?>) element;
+			ROSType<?> array = item.getParent().getType();
+			int index = item.getIndex();
+			int start = getPosition(item.getParent());
+			if (start < 0)
+				return -1;
+			int size = element.getType().getFixedSize();
+			if (array instanceof ROSarray) {
+				if (index >= ((ROSarray) array).read(data, start))
+					return -1;
+				if (size >= 0)
+					return start + 4 + index * size;
+			} else if (size >= 0) {
+				return start + index * size;
+			}
+			return layout(array, start)[index];
+		} else {
+			return element.getPosition(data);
+		}
+	}
+
+	/**
+	 * Retrieves (or records) the start positions of the fields of a struct or the
+	 * elements of an array
+	 */
+	private int[] layout(ROSType<?> container, int position) {
+		Map<Integer, int[]> byPosition = layouts.get(container);
+		if (byPosition == null)
+			layouts.put(container, byPosition = new HashMap<Integer, int[]>());
+		int[] ret = byPosition.get(position);
+		if (ret != null)
+			return ret;
+
+		int pos = position;
+		if (container instanceof ROSstruct) {
+			ROSstruct struct = (ROSstruct) container;
+			ret = new int[struct.getFieldNames().size()];
+			int i = 0;
+			for (String field : struct.getFieldNames()) {
+				ret[i++] = pos;
+				pos = struct.getFieldType(field).skip(data, pos);
+			}
+		} else if (container instanceof ROSarray) {
+			ROSType<?> prototype = ((ROSarray) container).getPrototype();
+			ret = new int[((ROSarray) container).read(data, pos)];
+			pos += 4;
+			for (int i = 0; i < ret.length; i++) {
+				ret[i] = pos;
+				pos = prototype.skip(data, pos);
+			}
+		} else {
+			ROSType<?> prototype = ((ROSfixedArray) container).getPrototype();
+			ret = new int[((ROSfixedArray) container).getSize()];
+			for (int i = 0; i < ret.length; i++) {
+				ret[i] = pos;
+				pos = prototype.skip(data, pos);
+			}
+		}
+		byPosition.put(position, ret);
+		return ret;
+	}
+
+}
@@ -0,0 +1,89 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.descriptors;
+
+import java.util.Arrays;
+
+import de.isse.jros.types.ROSType;
+import de.isse.jros.types.ROSarray;
+import de.isse.jros.types.ROSstruct;
+
+/**
+ * Precompiled steps to find an element in a ROS binary message. Fixed-size
+ * parts are merged into constant offsets, so that only variable-length fields
+ * (strings and variable size arrays) are skipped when finding the element.
+ */
+class OffsetPlan {
+	/** Constant offset added before each dynamic step */
+	private int[] offsets = new int[4];
+	/** Type to skip (or array to index) in each dynamic step */
+	private ROSType<?>[] types = new ROSType<?>[4];
+	/** Array index of each dynamic step, or -1 to skip the whole type */
+	private int[] indices = new int[4];
+	private int steps;
+	/** Constant offset after the last dynamic step */
+	private int offset;
+
+	/**
+	 * Adds a step skipping an element of the given type
+	 */
+	void skip(ROSType<?> type) {
+		int size = type.getFixedSize();
+		if (size >= 0) {
+			offset += size;
+		} else if (type instanceof ROSstruct) {
+			// skip the fixed-size fields of a variable-length struct individually
+			ROSstruct struct = (ROSstruct) type;
+			for (String field : struct.getFieldNames())
+				skip(struct.getFieldType(field));
+		} else {
+			step(type, -1);
+		}
+	}
+
+	/**
+	 * Adds a step moving to the element with the given index in a variable size
+	 * array
+	 */
+	void index(ROSarray array, int index) {
+		step(array, index);
+	}
+
+	private void step(ROSType<?> type, int index) {
+		if (steps == types.length) {
+			offsets = Arrays.copyOf(offsets, steps * 2);
+			types = Arrays.copyOf(types, steps * 2);
+			indices = Arrays.copyOf(indices, steps * 2);
+		}
+		offsets[steps] = offset;
+		types[steps] = type;
+		indices[steps] = index;
+		steps++;
+		offset = 0;
+	}
+
+	/**
+	 * Finds the position of the element in a ROS binary message
+	 * 
+	 * @param data  ROS binary message
+	 * @param start start position of the root type in the binary message
+	 * @return position of the element
+	 */
+	int getPosition(byte[] data, int start) {
+		int pos = start;
+		for (int i = 0; i < steps; i++) {
+			pos += offsets[i];
+			if (indices[i] < 0)
+				pos = types[i].skip(data, pos);
+			else
+				pos = ((ROSarray) types[i]).skipToIndex(indices[i], data, pos);
+		}
+		return pos + offset;
+	}
+
+}
@@ -29,8 +29,7 @@ public class RootElementDescriptor<T> extends ElementDescriptor<T> {
 	 * The root element starts at the given start
 	 */
 	@Override
-	public int getPosition(byte[] data, int start) {
-		return start;
+	void compile(OffsetPlan plan) {
 	}
 
 }
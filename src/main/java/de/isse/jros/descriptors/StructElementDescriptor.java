@@ -18,6 +18,7 @@ import de.isse.jros.types.ROSstruct;
 public class StructElementDescriptor<T> extends ElementDescriptor<T> {
 	private ElementDescriptor<?> parent;
 	private String field;
+	private int fieldIndex;
 
 	/**
 	 * Creates a struct element descriptor for a field of the struct
@@ -33,22 +34,39 @@ public class StructElementDescriptor<T> extends ElementDescriptor<T> {
 		if (parent.getType() instanceof ROSstruct) {
 			if (((ROSstruct) parent.getType()).getFieldType(field) == null)
 				throw new IllegalArgumentException("Struct element " + field + " does not exist.");
+			this.fieldIndex = ((ROSstruct) parent.getType()).getFieldNames().indexOf(field);
 		} else {
 			throw new IllegalArgumentException("Parent must be a struct type.");
 		}
 	}
 
 	/**
-	 * Retrieves the position of the desired struct field by skipping all preceding
+	 * Retrieves the descriptor of the struct containing the field
+	 */
+	ElementDescriptor<?> getParent() {
+		return parent;
+	}
+
+	/**
+	 * Retrieves the index of the field within the struct
+	 */
+	int getFieldIndex() {
+		return fieldIndex;
+	}
+
+	/**
+	 * Finds the position of the desired struct field by skipping all preceding
 	 * fields
 	 */
 	@Override
-	public int getPosition(byte[] data, int start) {
-		int pos = parent.getPosition(data, start);
-		if (parent.getType() instanceof ROSstruct)
-			return ((ROSstruct) parent.getType()).skipToField(field, data, pos);
-		else
-			return -1;
+	void compile(OffsetPlan plan) {
+		parent.compile(plan);
+		ROSstruct struct = (ROSstruct) parent.getType();
+		for (String name : struct.getFieldNames()) {
+			if (name.equals(field))
+				return;
+			plan.skip(struct.getFieldType(name));
+		}
 	}
 
 }
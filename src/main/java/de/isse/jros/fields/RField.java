@@ -37,12 +37,15 @@ public abstract class RField {
 	}
 
 	private RField parent = null;
+	private ElementDescriptor<?> descriptor = null;
+	private ElementDescriptor<?> parentDescriptor = null;
 
 	/**
 	 * Sets the container this field appears in
 	 */
 	protected void setParent(RField parent) {
 		this.parent = parent;
+		this.descriptor = null;
 	}
 
 	/**
@@ -51,13 +54,21 @@ public abstract class RField {
 	public abstract ROSType<?> getType();
 
 	/**
-	 * Retrieves the descriptor of the field
+	 * Retrieves the descriptor of the field. The descriptor is reused (keeping its
+	 * compiled offsets) as long as the containers of the field do not change.
 	 */
 	public ElementDescriptor<?> getDescriptor() {
-		if (parent == null)
-			return new RootElementDescriptor<>(getType());
-		else
-			return parent.findDescriptor(this);
+		if (parent == null) {
+			if (descriptor == null)
+				descriptor = new RootElementDescriptor<>(getType());
+		} else {
+			ElementDescriptor<?> container = parent.getDescriptor();
+			if (descriptor == null || container != parentDescriptor) {
+				descriptor = parent.findDescriptor(this);
+				parentDescriptor = container;
+			}
+		}
+		return descriptor;
 	}
 
 	/**
@@ -0,0 +1,79 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal;
+
+/**
+ * Pool of reusable byte arrays in power-of-two size classes
+ */
+public class BufferPool {
+	/** Smallest size class (64 bytes) */
+	private static final int MIN_CLASS = 6;
+	/** Largest size class (1 GB), larger buffers are not pooled */
+	private static final int MAX_CLASS = 30;
+
+	private final byte[][][] free = new byte[MAX_CLASS + 1][][];
+	private final int[] count = new int[MAX_CLASS + 1];
+	private final int maxPerClass;
+
+	/**
+	 * Creates a new buffer pool
+	 * 
+	 * @param maxPerClass maximum number of idle buffers kept per size class
+	 */
+	public BufferPool(int maxPerClass) {
+		this.maxPerClass = maxPerClass;
+	}
+
+	/**
+	 * Retrieves a buffer of at least the given size, which should be returned
+	 * using {@link #release(byte[])} when no longer used
+	 * 
+	 * @param size minimum size of the buffer
+	 * @return buffer from the pool, or a newly allocated buffer if none is
+	 *         available
+	 */
+	public byte[] acquire(int size) {
+		int sizeClass = sizeClass(size);
+		if (sizeClass > MAX_CLASS)
+			return new byte[size];
+		synchronized (this) {
+			if (count[sizeClass] > 0) {
+				byte[] ret = free[sizeClass][--count[sizeClass]];
+				free[sizeClass][count[sizeClass]] = null;
+				return ret;
+			}
+		}
+		return new byte[1 << sizeClass];
+	}
+
+	/**
+	 * Returns a buffer to the pool
+	 * 
+	 * @param buffer buffer retrieved by {@link #acquire(int)}
+	 */
+	public void release(byte[] buffer) {
+		int sizeClass = sizeClass(buffer.length);
+		if (sizeClass > MAX_CLASS || buffer.length != 1 << sizeClass)
+			return;
+		synchronized (this) {
+			if (free[sizeClass] == null)
+				free[sizeClass] = new byte[maxPerClass][];
+			if (count[sizeClass] < maxPerClass)
+				free[sizeClass][count[sizeClass]++] = buffer;
+		}
+	}
+
+	/**
+	 * Calculates the size class of a buffer size (i.e. the exponent of the
+	 * smallest power of two the size fits into)
+	 */
+	private static int sizeClass(int size) {
+		return Math.max(MIN_CLASS, 32 - Integer.numberOfLeadingZeros(size - 1));
+	}
+
+}
@@ -0,0 +1,196 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.isse.jros.RosNode.DispatchStatistics;
+import de.isse.jros.RosNode.QueuePolicy;
+import de.isse.jros.RosNode.Subscriber;
+
+/**
+ * Hands received messages of a topic to an executor, calling the subscriber
+ * for one message at a time in the order received
+ */
+public class Dispatcher implements Subscriber, DispatchStatistics {
+	/** Maximum number of messages handled before yielding the executor thread */
+	private static final int BATCH = 64;
+
+	private final Subscriber subscriber;
+	private final Executor executor;
+	private final QueuePolicy policy;
+	private final byte[][] messages;
+	private final long[] enqueued;
+	private int head, size;
+	private boolean scheduled, stopped;
+
+	private long dispatched, dropped, queueNanos, callbackNanos;
+	private int maxQueueDepth;
+
+	private final Runnable drain = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * Creates a dispatcher
+	 * 
+	 * @param subscriber callback to call for each message
+	 * @param executor   executor to run the callback in
+	 * @param queueSize  maximum number of messages waiting for the callback
+	 * @param policy     policy to apply when the queue is full
+	 */
+	public Dispatcher(Subscriber subscriber, Executor executor, int queueSize, QueuePolicy policy) {
+		if (queueSize < 1)
+			throw new IllegalArgumentException("Queue size must be positive");
+		this.subscriber = subscriber;
+		this.executor = executor;
+		this.policy = policy;
+		this.messages = new byte[queueSize][];
+		this.enqueued = new long[queueSize];
+	}
+
+	@Override
+	public void received(byte[] message) {
+		synchronized (this) {
+			if (stopped)
+				return;
+			if (size == messages.length) {
+				if (policy == QueuePolicy.DROP_NEWEST) {
+					dropped++;
+					return;
+				} else if (policy == QueuePolicy.DROP_OLDEST) {
+					messages[head] = null;
+					head = (head + 1) % messages.length;
+					size--;
+					dropped++;
+				} else {
+					while (size == messages.length && !stopped) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							return;
+						}
+					}
+					if (stopped)
+						return;
+				}
+			}
+			int tail = (head + size) % messages.length;
+			messages[tail] = message;
+			enqueued[tail] = System.nanoTime();
+			size++;
+			if (size > maxQueueDepth)
+				maxQueueDepth = size;
+			if (scheduled)
+				return;
+			scheduled = true;
+		}
+		schedule();
+	}
+
+	/**
+	 * Submits the drain task, running it in the current thread if the executor
+	 * rejects it
+	 */
+	private void schedule() {
+		try {
+			executor.execute(drain);
+		} catch (RejectedExecutionException e) {
+			drain();
+		}
+	}
+
+	/**
+	 * Calls the subscriber for the queued messages, resubmitting itself after a
+	 * batch to give other tasks of the executor a chance to run
+	 */
+	private void drain() {
+		while (true) {
+			for (int i = 0; i < BATCH; i++) {
+				byte[] message;
+				long start = System.nanoTime();
+				synchronized (this) {
+					if (size == 0 || stopped) {
+						scheduled = false;
+						return;
+					}
+					message = messages[head];
+					queueNanos += start - enqueued[head];
+					messages[head] = null;
+					head = (head + 1) % messages.length;
+					size--;
+					notifyAll();
+				}
+				try {
+					subscriber.received(message);
+				} catch (RuntimeException e) {
+					Logger.getGlobal().log(Level.WARNING, "Subscriber failed", e);
+				}
+				long end = System.nanoTime();
+				synchronized (this) {
+					callbackNanos += end - start;
+					dispatched++;
+				}
+			}
+			try {
+				executor.execute(drain);
+				return;
+			} catch (RejectedExecutionException e) {
+			}
+		}
+	}
+
+	/**
+	 * Stops dispatching, discarding queued messages
+	 */
+	public synchronized void stop() {
+		stopped = true;
+		for (int i = 0; i < messages.length; i++)
+			messages[i] = null;
+		size = 0;
+		notifyAll();
+	}
+
+	@Override
+	public synchronized int getQueueDepth() {
+		return size;
+	}
+
+	@Override
+	public synchronized int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	@Override
+	public synchronized long getDispatchedMessages() {
+		return dispatched;
+	}
+
+	@Override
+	public synchronized long getDroppedMessages() {
+		return dropped;
+	}
+
+	@Override
+	public synchronized long getAverageQueueNanos() {
+		return dispatched == 0 ? 0 : queueNanos / dispatched;
+	}
+
+	@Override
+	public synchronized long getAverageCallbackNanos() {
+		return dispatched == 0 ? 0 : callbackNanos / dispatched;
+	}
+
+}
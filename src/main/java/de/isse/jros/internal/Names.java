@@ -0,0 +1,52 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal;
+
+/**
+ * Helper for ROS graph resource names
+ */
+public class Names {
+
+	/**
+	 * Retrieves the namespace of a node
+	 * 
+	 * @param callerId fully qualified name of the node
+	 * @return namespace of the node, ending with a slash
+	 */
+	public static String namespace(String callerId) {
+		int slash = callerId.lastIndexOf('/');
+		return slash <= 0 ? "/" : callerId.substring(0, slash + 1);
+	}
+
+	/**
+	 * Resolves a name relative to the namespace of a node, and removes trailing
+	 * slashes
+	 * 
+	 * @param callerId fully qualified name of the node
+	 * @param name     global (starting with a slash) or relative name
+	 * @return fully qualified name
+	 */
+	public static String resolve(String callerId, String name) {
+		String ret = name.startsWith("/") ? name : namespace(callerId) + name;
+		while (ret.length() > 1 && ret.endsWith("/"))
+			ret = ret.substring(0, ret.length() - 1);
+		return ret;
+	}
+
+	/**
+	 * Checks whether a name is equal to or within a namespace
+	 * 
+	 * @param name      fully qualified name
+	 * @param namespace fully qualified namespace
+	 * @return true if the name is within the namespace
+	 */
+	public static boolean isWithin(String name, String namespace) {
+		return namespace.equals("/") || name.equals(namespace) || name.startsWith(namespace + "/");
+	}
+
+}
@@ -0,0 +1,58 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal;
+
+import java.util.Arrays;
+
+import de.isse.jros.RosNode.MessageLease;
+
+/**
+ * Message lent to a callback in a buffer that is reused for all messages of a
+ * connection
+ */
+public class PooledMessage implements MessageLease {
+	private byte[] buffer;
+	private int length;
+
+	/**
+	 * Lends a buffer to the callback
+	 * 
+	 * @param buffer buffer containing the message
+	 * @param length length of the message
+	 */
+	public void lend(byte[] buffer, int length) {
+		this.buffer = buffer;
+		this.length = length;
+	}
+
+	/**
+	 * Ends the lease after the callback returned
+	 */
+	public void end() {
+		this.buffer = null;
+		this.length = 0;
+	}
+
+	@Override
+	public byte[] getBuffer() {
+		if (buffer == null)
+			throw new IllegalStateException("Lease has already been returned");
+		return buffer;
+	}
+
+	@Override
+	public int getLength() {
+		return length;
+	}
+
+	@Override
+	public byte[] retain() {
+		return Arrays.copyOf(getBuffer(), length);
+	}
+
+}
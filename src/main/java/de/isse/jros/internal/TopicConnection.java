@@ -0,0 +1,25 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal;
+
+import java.io.IOException;
+
+/**
+ * Connection of a subscription to a single publisher, independent of the
+ * transport used
+ */
+public interface TopicConnection {
+
+	/**
+	 * Ends the subscription
+	 * 
+	 * @throws IOException if an I/O error occurs
+	 */
+	void stop() throws IOException;
+
+}
@@ -0,0 +1,184 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.intraprocess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.isse.jros.MessageHelper;
+import de.isse.jros.RosNode.BufferSubscriber;
+import de.isse.jros.RosNode.PooledSubscriber;
+import de.isse.jros.RosNode.Subscriber;
+import de.isse.jros.internal.PooledMessage;
+import de.isse.jros.internal.TopicConnection;
+import de.isse.jros.types.ROSstruct;
+
+/**
+ * Class handling the publication of a topic to subscribers in the same JVM,
+ * delivering messages synchronously without a socket
+ */
+public class IntraProcessPublisher {
+	private List<Connection> connections = new CopyOnWriteArrayList<Connection>();
+	private String topic;
+	private String type, md5sum;
+	private Supplier<ByteBuffer> latched;
+
+	/**
+	 * Creates a publication
+	 * 
+	 * @param topic     topic of the publication
+	 * @param prototype message type of the publication
+	 * @param latched   source of the message to repeat on new connections (shared
+	 *                  with the other transports of the publication), returning
+	 *                  null if there is none
+	 */
+	public IntraProcessPublisher(String topic, ROSstruct prototype, Supplier<ByteBuffer> latched) {
+		this.topic = topic;
+		this.type = prototype.getName();
+		this.md5sum = MessageHelper.getStructMD5(prototype);
+		this.latched = latched;
+	}
+
+	/**
+	 * Connects a subscriber receiving each message in a new array
+	 * 
+	 * @param message    message type of the subscription
+	 * @param subscriber callback to handle received messages
+	 * @return connection to the subscriber
+	 * @throws IOException if the subscriber expects a different message type
+	 */
+	public TopicConnection addSubscriber(ROSstruct message, final Subscriber subscriber) throws IOException {
+		return add(message, new Connection() {
+			@Override
+			void deliver(byte[] buffer, int len) {
+				subscriber.received(Arrays.copyOf(buffer, len));
+			}
+		});
+	}
+
+	/**
+	 * Connects a subscriber receiving each message as a lease of the published
+	 * buffer
+	 * 
+	 * @param message    message type of the subscription
+	 * @param subscriber callback to handle received messages
+	 * @return connection to the subscriber
+	 * @throws IOException if the subscriber expects a different message type
+	 */
+	public TopicConnection addPooledSubscriber(ROSstruct message, final PooledSubscriber subscriber)
+			throws IOException {
+		return add(message, new Connection() {
+			@Override
+			void deliver(byte[] buffer, int len) {
+				PooledMessage lease = new PooledMessage();
+				lease.lend(buffer, len);
+				try {
+					subscriber.received(lease);
+				} finally {
+					lease.end();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Connects a subscriber receiving each message as a read-only view of the
+	 * published buffer
+	 * 
+	 * @param message    message type of the subscription
+	 * @param subscriber callback to handle received messages
+	 * @return connection to the subscriber
+	 * @throws IOException if the subscriber expects a different message type
+	 */
+	public TopicConnection addBufferSubscriber(ROSstruct message, final BufferSubscriber subscriber)
+			throws IOException {
+		return add(message, new Connection() {
+			@Override
+			void deliver(byte[] buffer, int len) {
+				subscriber.received(ByteBuffer.wrap(buffer, 0, len).slice().asReadOnlyBuffer()
+						.order(ByteOrder.LITTLE_ENDIAN));
+			}
+		});
+	}
+
+	/**
+	 * Checks the message type and adds the connection, repeating the latched
+	 * message (copied once for the new subscriber)
+	 */
+	private TopicConnection add(ROSstruct prototype, Connection connection) throws IOException {
+		String md5 = MessageHelper.getStructMD5(prototype);
+		if (!type.equals(prototype.getName()) || !md5sum.equals(md5)) {
+			throw new IOException("Local subscriber wants topic " + topic + " to have datatype/md5sum ["
+					+ prototype.getName() + "/" + md5 + "], but our version has [" + type + "/" + md5sum
+					+ "]. Dropping connection.");
+		}
+		connections.add(connection);
+		ByteBuffer message = latched.get();
+		if (message != null) {
+			byte[] copy = new byte[message.remaining()];
+			message.get(copy);
+			connection.received(copy, copy.length);
+		}
+		return connection;
+	}
+
+	/**
+	 * Publishes a new message, calling all local subscribers in the current thread
+	 * (without keeping the message, so the buffer may be reused afterwards)
+	 * 
+	 * @param buffer message buffer (starting at position 0)
+	 * @param len    length in buffer
+	 */
+	public void setMessage(byte[] buffer, int len) {
+		for (Connection connection : connections)
+			connection.received(buffer, len);
+	}
+
+	/**
+	 * Stops publication
+	 */
+	public void stop() {
+		connections.clear();
+	}
+
+	/**
+	 * Connection to a local subscriber
+	 */
+	private abstract class Connection implements TopicConnection {
+
+		/**
+		 * Hands the message to the subscriber
+		 */
+		abstract void deliver(byte[] buffer, int len);
+
+		/**
+		 * Delivers a message, keeping exceptions of the callback away from the
+		 * publisher
+		 */
+		void received(byte[] buffer, int len) {
+			try {
+				deliver(buffer, len);
+			} catch (RuntimeException e) {
+				Logger.getGlobal().log(Level.WARNING, "Local subscriber of " + topic + " failed", e);
+			}
+		}
+
+		@Override
+		public void stop() {
+			connections.remove(this);
+		}
+	}
+
+}
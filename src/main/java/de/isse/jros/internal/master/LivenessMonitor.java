@@ -0,0 +1,194 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.master;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import de.isse.jros.internal.xmlrpc.HttpStatusException;
+import de.isse.jros.internal.xmlrpc.RpcClient;
+import de.isse.jros.internal.xmlrpc.RpcConnectionPool;
+
+/**
+ * Periodically probes the registered nodes with a getPid call over the slave
+ * API. All nodes are probed in parallel; nodes that do not answer a number of
+ * consecutive probes are reported as dead together, once per probing round.
+ * Any answer (even a fault or an HTTP error status) counts as a sign of life;
+ * only failures to connect or to read a response count as missed probes.
+ */
+public class LivenessMonitor {
+	/** Default time (in milliseconds) between probing rounds */
+	public static final long DEFAULT_INTERVAL = 10000;
+	/** Default number of consecutive missed probes before a node is dead */
+	public static final int DEFAULT_MISSED_PROBES = 2;
+	/** Number of probes sent in parallel */
+	public static final int DEFAULT_THREADS = 8;
+	/** Time (in milliseconds) to wait for a node to accept a connection */
+	public static final int CONNECT_TIMEOUT = 1000;
+	/** Time (in milliseconds) to wait for a node to answer */
+	public static final int READ_TIMEOUT = 2000;
+
+	private final String callerId;
+	private final Registry registry;
+	private final Listener listener;
+	private final ScheduledThreadPoolExecutor executor;
+	private final RpcConnectionPool pool = new RpcConnectionPool(RpcConnectionPool.DEFAULT_MAX_PER_HOST,
+			RpcConnectionPool.DEFAULT_IDLE_TIMEOUT, CONNECT_TIMEOUT, READ_TIMEOUT);
+	/** Consecutive missed probes, by caller id and XMLRPC URI */
+	private final Map<List<String>, Integer> missed = new HashMap<List<String>, Integer>();
+	private ScheduledFuture<?> rounds;
+	private int missedProbes = DEFAULT_MISSED_PROBES;
+
+	/**
+	 * Callback for nodes found dead
+	 */
+	public interface Listener {
+		/**
+		 * Handle nodes that did not answer the last probes
+		 * 
+		 * @param nodes XMLRPC URIs of the dead nodes, by caller id
+		 */
+		void dead(Map<String, String> nodes);
+	}
+
+	/**
+	 * Creates a monitor, probing every {@value #DEFAULT_INTERVAL} milliseconds
+	 * 
+	 * @param callerId caller id sent with the probes
+	 * @param registry registry providing the nodes to probe
+	 * @param listener callback for nodes found dead
+	 * @param threads  factory for the threads sending probes
+	 */
+	public LivenessMonitor(String callerId, Registry registry, Listener listener, ThreadFactory threads) {
+		this.callerId = callerId;
+		this.registry = registry;
+		this.listener = listener;
+		this.executor = new ScheduledThreadPoolExecutor(DEFAULT_THREADS, threads);
+		this.executor.setKeepAliveTime(60, TimeUnit.SECONDS);
+		this.executor.allowCoreThreadTimeOut(true);
+		setInterval(DEFAULT_INTERVAL, DEFAULT_MISSED_PROBES);
+	}
+
+	/**
+	 * Changes the probing schedule
+	 * 
+	 * @param interval     time (in milliseconds) between probing rounds, or 0 to
+	 *                     stop probing
+	 * @param missedProbes number of consecutive missed probes before a node is
+	 *                     considered dead
+	 */
+	public synchronized void setInterval(long interval, int missedProbes) {
+		if (interval < 0 || missedProbes < 1)
+			throw new IllegalArgumentException("Invalid probing schedule");
+		this.missedProbes = missedProbes;
+		if (rounds != null)
+			rounds.cancel(false);
+		rounds = null;
+		if (interval > 0) {
+			try {
+				rounds = executor.scheduleWithFixedDelay(new Runnable() {
+					@Override
+					public void run() {
+						probe();
+					}
+				}, interval, interval, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+			}
+		}
+	}
+
+	/**
+	 * Probes all registered nodes once and reports the dead ones
+	 */
+	private void probe() {
+		Map<String, String> nodes = registry.getNodeApis();
+		List<Future<Boolean>> probes = new ArrayList<Future<Boolean>>();
+		try {
+			for (final String uri : nodes.values()) {
+				probes.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						return isAlive(uri);
+					}
+				}));
+			}
+		} catch (RejectedExecutionException e) {
+			return;
+		}
+
+		boolean[] alive = new boolean[probes.size()];
+		for (int i = 0; i < alive.length; i++) {
+			try {
+				alive[i] = probes.get(i).get();
+			} catch (InterruptedException e) {
+				return;
+			} catch (ExecutionException e) {
+			}
+		}
+
+		Map<String, String> dead = new LinkedHashMap<String, String>();
+		synchronized (this) {
+			Map<List<String>, Integer> previous = new HashMap<List<String>, Integer>(missed);
+			missed.clear();
+			int i = 0;
+			for (Map.Entry<String, String> node : nodes.entrySet()) {
+				if (alive[i++])
+					continue;
+				List<String> key = Arrays.asList(node.getKey(), node.getValue());
+				Integer count = previous.get(key);
+				count = count == null ? 1 : count + 1;
+				if (count >= missedProbes)
+					dead.put(node.getKey(), node.getValue());
+				else
+					missed.put(key, count);
+			}
+		}
+		if (!dead.isEmpty()) {
+			Logger.getGlobal().info("Removing unresponsive nodes " + dead.keySet());
+			listener.dead(dead);
+		}
+	}
+
+	private boolean isAlive(String uri) {
+		try {
+			URI node = new URI(uri);
+			new RpcClient(node.getHost(), node.getPort(), pool).execute("getPid", Arrays.asList(callerId));
+			return true;
+		} catch (IllegalArgumentException | HttpStatusException e) {
+			// answered with a fault or an HTTP error (e.g. 503 when overloaded)
+			return true;
+		} catch (IOException | URISyntaxException | RuntimeException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Stops probing
+	 */
+	public synchronized void stop() {
+		executor.shutdownNow();
+		pool.close();
+	}
+
+}
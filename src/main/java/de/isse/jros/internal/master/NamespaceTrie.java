@@ -0,0 +1,114 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.master;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Set of graph resource names organized by namespace, to find all names within
+ * a namespace without scanning all names. Lookups may run concurrently with a
+ * single modifying thread.
+ */
+class NamespaceTrie {
+	private final Node root = new Node(null, "");
+
+	/**
+	 * Namespace or name
+	 */
+	private static class Node {
+		private final Node parent;
+		private final String segment;
+		private final Map<String, Node> children = new ConcurrentHashMap<String, Node>();
+		/** Full name if this node is part of the set, or null */
+		private volatile String name;
+
+		Node(Node parent, String segment) {
+			this.parent = parent;
+			this.segment = segment;
+		}
+	}
+
+	/**
+	 * Adds a name
+	 * 
+	 * @param name fully qualified name
+	 */
+	void add(String name) {
+		Node node = root;
+		for (String segment : segments(name)) {
+			Node child = node.children.get(segment);
+			if (child == null)
+				node.children.put(segment, child = new Node(node, segment));
+			node = child;
+		}
+		node.name = name;
+	}
+
+	/**
+	 * Removes a name, pruning namespaces that became empty
+	 * 
+	 * @param name fully qualified name
+	 */
+	void remove(String name) {
+		Node node = find(name);
+		if (node == null)
+			return;
+		node.name = null;
+		while (node.parent != null && node.name == null && node.children.isEmpty()) {
+			node.parent.children.remove(node.segment);
+			node = node.parent;
+		}
+	}
+
+	/**
+	 * Collects the names within a namespace
+	 * 
+	 * @param namespace namespace to search, or an empty string (or "/") for all
+	 *                  names
+	 * @param ret       list to add the names to
+	 */
+	void collect(String namespace, List<String> ret) {
+		Node node = find(namespace);
+		if (node == null)
+			return;
+		for (Node child : node.children.values())
+			collectAll(child, ret);
+	}
+
+	private static void collectAll(Node node, List<String> ret) {
+		String name = node.name;
+		if (name != null)
+			ret.add(name);
+		for (Node child : node.children.values())
+			collectAll(child, ret);
+	}
+
+	private Node find(String name) {
+		Node node = root;
+		for (String segment : segments(name)) {
+			node = node.children.get(segment);
+			if (node == null)
+				return null;
+		}
+		return node;
+	}
+
+	private static String[] segments(String name) {
+		int start = 0, end = name.length();
+		while (start < end && name.charAt(start) == '/')
+			start++;
+		while (end > start && name.charAt(end - 1) == '/')
+			end--;
+		if (start == end)
+			return new String[0];
+		return name.substring(start, end).split("/+");
+	}
+
+}
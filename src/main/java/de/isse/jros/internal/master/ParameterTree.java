@@ -0,0 +1,167 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.master;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hierarchical parameter storage of the master. Namespaces are stored as maps,
+ * so setting or retrieving a namespace sets or retrieves all parameters within
+ * it. Keys are fully qualified names.
+ */
+public class ParameterTree {
+	private Map<String, Object> root = new LinkedHashMap<String, Object>();
+
+	/**
+	 * Retrieves a parameter or namespace
+	 * 
+	 * @param key fully qualified key
+	 * @return value of the parameter, a map for a namespace, or null if the key
+	 *         is not set
+	 */
+	public synchronized Object get(String key) {
+		return copy(find(key));
+	}
+
+	/**
+	 * Checks whether a parameter or namespace is set
+	 * 
+	 * @param key fully qualified key
+	 * @return true if the key is set
+	 */
+	public synchronized boolean has(String key) {
+		return find(key) != null;
+	}
+
+	/**
+	 * Sets a parameter, or all parameters of a namespace if the value is a map
+	 * 
+	 * @param key   fully qualified key
+	 * @param value new value
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void set(String key, Object value) {
+		String[] segments = segments(key);
+		if (segments.length == 0) {
+			if (!(value instanceof Map<?, ?>))
+				throw new IllegalArgumentException("Cannot set root of parameter tree to a non-map value");
+			root = (Map<String, Object>) copy(value);
+			return;
+		}
+		Map<String, Object> node = root;
+		for (int i = 0; i < segments.length - 1; i++) {
+			Object child = node.get(segments[i]);
+			if (!(child instanceof Map<?, ?>))
+				node.put(segments[i], child = new LinkedHashMap<String, Object>());
+			node = (Map<String, Object>) child;
+		}
+		node.put(segments[segments.length - 1], copy(value));
+	}
+
+	/**
+	 * Deletes a parameter or namespace
+	 * 
+	 * @param key fully qualified key
+	 * @return true if the key was set
+	 */
+	public synchronized boolean delete(String key) {
+		String[] segments = segments(key);
+		if (segments.length == 0) {
+			root = new LinkedHashMap<String, Object>();
+			return true;
+		}
+		Object node = root;
+		for (int i = 0; i < segments.length - 1; i++) {
+			node = ((Map<?, ?>) node).get(segments[i]);
+			if (!(node instanceof Map<?, ?>))
+				return false;
+		}
+		return ((Map<?, ?>) node).remove(segments[segments.length - 1]) != null;
+	}
+
+	/**
+	 * Searches a key upwards from a namespace
+	 * 
+	 * @param namespace namespace to start the search in
+	 * @param key       relative key to search
+	 * @return fully qualified key of the closest parameter whose first segment
+	 *         matches, or null if no such parameter exists
+	 */
+	public synchronized String search(String namespace, String key) {
+		String first = key.contains("/") ? key.substring(0, key.indexOf('/')) : key;
+		String ns = namespace.endsWith("/") ? namespace : namespace + "/";
+		while (true) {
+			if (has(ns + first))
+				return ns + key;
+			if (ns.equals("/"))
+				return null;
+			ns = ns.substring(0, ns.lastIndexOf('/', ns.length() - 2) + 1);
+		}
+	}
+
+	/**
+	 * Retrieves the keys of all parameters (excluding namespaces)
+	 * 
+	 * @return fully qualified keys
+	 */
+	public synchronized List<String> getNames() {
+		List<String> ret = new ArrayList<String>();
+		collect("", root, ret);
+		return ret;
+	}
+
+	private Object find(String key) {
+		Object node = root;
+		for (String segment : segments(key)) {
+			if (!(node instanceof Map<?, ?>))
+				return null;
+			node = ((Map<?, ?>) node).get(segment);
+			if (node == null)
+				return null;
+		}
+		return node;
+	}
+
+	private static void collect(String prefix, Map<?, ?> node, List<String> ret) {
+		for (Map.Entry<?, ?> entry : node.entrySet()) {
+			String key = prefix + "/" + entry.getKey();
+			if (entry.getValue() instanceof Map<?, ?>)
+				collect(key, (Map<?, ?>) entry.getValue(), ret);
+			else
+				ret.add(key);
+		}
+	}
+
+	/**
+	 * Copies namespaces, so that values handed in or out are not modified by
+	 * later changes
+	 */
+	private static Object copy(Object value) {
+		if (!(value instanceof Map<?, ?>))
+			return value;
+		Map<String, Object> ret = new LinkedHashMap<String, Object>();
+		for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+			ret.put(String.valueOf(entry.getKey()), copy(entry.getValue()));
+		return ret;
+	}
+
+	private static String[] segments(String key) {
+		int start = 0, end = key.length();
+		while (start < end && key.charAt(start) == '/')
+			start++;
+		while (end > start && key.charAt(end - 1) == '/')
+			end--;
+		if (start == end)
+			return new String[0];
+		return key.substring(start, end).split("/+");
+	}
+
+}
@@ -0,0 +1,391 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.master;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registrations of nodes, publishers, subscribers and services kept by the
+ * master. Modifications are serialized, lookups run concurrently without
+ * locking.
+ */
+public class Registry {
+	private final Map<String, String> topicTypes = new ConcurrentHashMap<String, String>();
+	private final Map<String, CopyOnWriteArrayList<String>> publishers = new ConcurrentHashMap<String, CopyOnWriteArrayList<String>>();
+	private final Map<String, CopyOnWriteArrayList<String>> subscribers = new ConcurrentHashMap<String, CopyOnWriteArrayList<String>>();
+	private final NamespaceTrie publishedTopics = new NamespaceTrie();
+	private final Map<String, Node> nodes = new ConcurrentHashMap<String, Node>();
+	private final Map<String, Service> services = new ConcurrentHashMap<String, Service>();
+
+	/**
+	 * Registrations of a node, by caller id
+	 */
+	private static class Node {
+		private final String api;
+		private final Set<String> publications = ConcurrentHashMap.newKeySet();
+		private final Set<String> subscriptions = ConcurrentHashMap.newKeySet();
+		private final Set<String> services = ConcurrentHashMap.newKeySet();
+
+		Node(String api) {
+			this.api = api;
+		}
+	}
+
+	/**
+	 * Provider of a service
+	 */
+	private static class Service {
+		private final String callerId;
+		private final String api;
+		private final String callerApi;
+
+		Service(String callerId, String api, String callerApi) {
+			this.callerId = callerId;
+			this.api = api;
+			this.callerApi = callerApi;
+		}
+	}
+
+	/**
+	 * Registers a publisher of a topic
+	 * 
+	 * @param callerId  caller id of the node
+	 * @param topic     fully qualified name of the topic
+	 * @param topicType message type of the topic
+	 * @param callerApi XMLRPC URI of the node
+	 * @return false if the topic is known with a different type
+	 */
+	public synchronized boolean registerPublisher(String callerId, String topic, String topicType,
+			String callerApi) {
+		if (!checkType(topic, topicType))
+			return false;
+		if (add(publishers, topic, callerApi))
+			publishedTopics.add(topic);
+		node(callerId, callerApi).publications.add(topic);
+		return true;
+	}
+
+	/**
+	 * Registers a subscriber of a topic
+	 * 
+	 * @param callerId  caller id of the node
+	 * @param topic     fully qualified name of the topic
+	 * @param topicType message type of the topic
+	 * @param callerApi XMLRPC URI of the node
+	 * @return false if the topic is known with a different type
+	 */
+	public synchronized boolean registerSubscriber(String callerId, String topic, String topicType,
+			String callerApi) {
+		if (!checkType(topic, topicType))
+			return false;
+		add(subscribers, topic, callerApi);
+		node(callerId, callerApi).subscriptions.add(topic);
+		return true;
+	}
+
+	/**
+	 * Unregisters a publisher of a topic
+	 * 
+	 * @param callerId  caller id of the node
+	 * @param topic     fully qualified name of the topic
+	 * @param callerApi XMLRPC URI of the node
+	 * @return true if the publisher was registered
+	 */
+	public synchronized boolean unregisterPublisher(String callerId, String topic, String callerApi) {
+		if (!remove(publishers, topic, callerApi))
+			return false;
+		if (!publishers.containsKey(topic))
+			publishedTopics.remove(topic);
+		Node node = nodes.get(callerId);
+		if (node != null && node.api.equals(callerApi))
+			node.publications.remove(topic);
+		return true;
+	}
+
+	/**
+	 * Unregisters a subscriber of a topic
+	 * 
+	 * @param callerId  caller id of the node
+	 * @param topic     fully qualified name of the topic
+	 * @param callerApi XMLRPC URI of the node
+	 * @return true if the subscriber was registered
+	 */
+	public synchronized boolean unregisterSubscriber(String callerId, String topic, String callerApi) {
+		if (!remove(subscribers, topic, callerApi))
+			return false;
+		Node node = nodes.get(callerId);
+		if (node != null && node.api.equals(callerApi))
+			node.subscriptions.remove(topic);
+		return true;
+	}
+
+	/**
+	 * Registers the provider of a service, replacing a previous provider
+	 * 
+	 * @param callerId   caller id of the node
+	 * @param service    fully qualified name of the service
+	 * @param serviceApi ROSRPC URI of the service
+	 * @param callerApi  XMLRPC URI of the node
+	 */
+	public synchronized void registerService(String callerId, String service, String serviceApi, String callerApi) {
+		Service previous = services.put(service, new Service(callerId, serviceApi, callerApi));
+		if (previous != null && !previous.callerId.equals(callerId)) {
+			Node node = nodes.get(previous.callerId);
+			if (node != null)
+				node.services.remove(service);
+		}
+		node(callerId, callerApi).services.add(service);
+	}
+
+	/**
+	 * Unregisters the provider of a service
+	 * 
+	 * @param callerId   caller id of the node
+	 * @param service    fully qualified name of the service
+	 * @param serviceApi ROSRPC URI of the service
+	 * @return true if the service was registered with the given URI
+	 */
+	public synchronized boolean unregisterService(String callerId, String service, String serviceApi) {
+		Service registered = services.get(service);
+		if (registered == null || !registered.api.equals(serviceApi))
+			return false;
+		services.remove(service);
+		Node node = nodes.get(registered.callerId);
+		if (node != null)
+			node.services.remove(service);
+		return true;
+	}
+
+	/**
+	 * Removes a node and all its registrations
+	 * 
+	 * @param callerId caller id of the node
+	 * @return topics the node published
+	 */
+	public synchronized List<String> unregisterNode(String callerId) {
+		Node node = nodes.get(callerId);
+		return node == null ? Collections.<String>emptyList() : unregisterNode(callerId, node.api);
+	}
+
+	/**
+	 * Removes a node and all its registrations, unless it registered again with
+	 * a different XMLRPC URI in the meantime
+	 * 
+	 * @param callerId  caller id of the node
+	 * @param callerApi XMLRPC URI of the node
+	 * @return topics the node published
+	 */
+	public synchronized List<String> unregisterNode(String callerId, String callerApi) {
+		Node node = nodes.get(callerId);
+		if (node == null || !node.api.equals(callerApi))
+			return Collections.emptyList();
+		nodes.remove(callerId);
+		List<String> ret = new ArrayList<String>(node.publications);
+		for (String topic : node.publications) {
+			remove(publishers, topic, node.api);
+			if (!publishers.containsKey(topic))
+				publishedTopics.remove(topic);
+		}
+		for (String topic : node.subscriptions)
+			remove(subscribers, topic, node.api);
+		for (String service : node.services)
+			services.remove(service);
+		return ret;
+	}
+
+	/**
+	 * Retrieves the XMLRPC URI of a node
+	 * 
+	 * @param callerId caller id of the node
+	 * @return XMLRPC URI, or null if the node is unknown
+	 */
+	public String lookupNode(String callerId) {
+		Node node = nodes.get(callerId);
+		return node == null ? null : node.api;
+	}
+
+	/**
+	 * Retrieves the ROSRPC URI of a service
+	 * 
+	 * @param service fully qualified name of the service
+	 * @return ROSRPC URI, or null if the service is unknown
+	 */
+	public String lookupService(String service) {
+		Service registered = services.get(service);
+		return registered == null ? null : registered.api;
+	}
+
+	/**
+	 * Retrieves the providers of all services
+	 * 
+	 * @return XMLRPC URIs of the providing nodes by service
+	 */
+	public Map<String, List<String>> getServices() {
+		Map<String, List<String>> ret = new LinkedHashMap<String, List<String>>();
+		for (Map.Entry<String, Service> entry : services.entrySet())
+			ret.put(entry.getKey(), new ArrayList<String>(Collections.singletonList(entry.getValue().callerApi)));
+		return ret;
+	}
+
+	/**
+	 * Retrieves the caller ids of all known nodes
+	 * 
+	 * @return caller ids
+	 */
+	public List<String> getNodes() {
+		return new ArrayList<String>(nodes.keySet());
+	}
+
+	/**
+	 * Retrieves the XMLRPC URIs of all known nodes
+	 * 
+	 * @return XMLRPC URIs by caller id
+	 */
+	public Map<String, String> getNodeApis() {
+		Map<String, String> ret = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, Node> entry : nodes.entrySet())
+			ret.put(entry.getKey(), entry.getValue().api);
+		return ret;
+	}
+
+	/**
+	 * Retrieves the type of a topic
+	 * 
+	 * @param topic fully qualified name of the topic
+	 * @return message type, or null if the topic is unknown
+	 */
+	public String getTopicType(String topic) {
+		return topicTypes.get(topic);
+	}
+
+	/**
+	 * Retrieves the types of all known topics
+	 * 
+	 * @return message types by topic
+	 */
+	public Map<String, String> getTopicTypes() {
+		return new LinkedHashMap<String, String>(topicTypes);
+	}
+
+	/**
+	 * Retrieves the publishers of a topic
+	 * 
+	 * @param topic fully qualified name of the topic
+	 * @return XMLRPC URIs of the publishing nodes
+	 */
+	public List<String> getPublishers(String topic) {
+		return snapshot(publishers.get(topic));
+	}
+
+	/**
+	 * Retrieves the subscribers of a topic
+	 * 
+	 * @param topic fully qualified name of the topic
+	 * @return XMLRPC URIs of the subscribing nodes
+	 */
+	public List<String> getSubscribers(String topic) {
+		return snapshot(subscribers.get(topic));
+	}
+
+	/**
+	 * Retrieves the publishers of all topics
+	 * 
+	 * @return XMLRPC URIs of the publishing nodes by topic
+	 */
+	public Map<String, List<String>> getPublishers() {
+		return snapshot(publishers);
+	}
+
+	/**
+	 * Retrieves the subscribers of all topics
+	 * 
+	 * @return XMLRPC URIs of the subscribing nodes by topic
+	 */
+	public Map<String, List<String>> getSubscribers() {
+		return snapshot(subscribers);
+	}
+
+	/**
+	 * Retrieves the topics with at least one publisher within a namespace
+	 * 
+	 * @param namespace namespace to search, or an empty string for all topics
+	 * @return fully qualified names of the topics
+	 */
+	public List<String> getPublishedTopics(String namespace) {
+		List<String> ret = new ArrayList<String>();
+		publishedTopics.collect(namespace, ret);
+		return ret;
+	}
+
+	private boolean checkType(String topic, String topicType) {
+		String known = topicTypes.get(topic);
+		if (known == null)
+			topicTypes.put(topic, topicType);
+		return known == null || known.equals(topicType);
+	}
+
+	private Node node(String callerId, String callerApi) {
+		Node node = nodes.get(callerId);
+		if (node == null || !node.api.equals(callerApi))
+			nodes.put(callerId, node = new Node(callerApi));
+		return node;
+	}
+
+	/**
+	 * Adds a registration
+	 * 
+	 * @return true if the registration is the first one of the topic
+	 */
+	private static boolean add(Map<String, CopyOnWriteArrayList<String>> registrations, String topic, String api) {
+		CopyOnWriteArrayList<String> list = registrations.get(topic);
+		if (list == null) {
+			registrations.put(topic, list = new CopyOnWriteArrayList<String>());
+			list.add(api);
+			return true;
+		}
+		list.addIfAbsent(api);
+		return false;
+	}
+
+	/**
+	 * Removes a registration, forgetting the topic type once the topic has no
+	 * more publishers or subscribers
+	 * 
+	 * @return true if the registration existed
+	 */
+	private boolean remove(Map<String, CopyOnWriteArrayList<String>> registrations, String topic, String api) {
+		CopyOnWriteArrayList<String> list = registrations.get(topic);
+		if (list == null || !list.remove(api))
+			return false;
+		if (list.isEmpty()) {
+			registrations.remove(topic);
+			if (!publishers.containsKey(topic) && !subscribers.containsKey(topic))
+				topicTypes.remove(topic);
+		}
+		return true;
+	}
+
+	private static List<String> snapshot(List<String> list) {
+		return list == null ? new ArrayList<String>() : new ArrayList<String>(list);
+	}
+
+	private static Map<String, List<String>> snapshot(Map<String, CopyOnWriteArrayList<String>> registrations) {
+		Map<String, List<String>> ret = new LinkedHashMap<String, List<String>>();
+		for (Map.Entry<String, CopyOnWriteArrayList<String>> entry : registrations.entrySet())
+			ret.put(entry.getKey(), new ArrayList<String>(entry.getValue()));
+		return ret;
+	}
+
+}
@@ -0,0 +1,211 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.master;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import de.isse.jros.internal.xmlrpc.RpcClient;
+import de.isse.jros.internal.xmlrpc.RpcConnectionPool;
+
+/**
+ * Sends publisherUpdate and paramUpdate notifications to nodes in the
+ * background. Each node is notified by one task at a time, different nodes in
+ * parallel. Updates of a topic or parameter that have not been sent yet are
+ * replaced by newer ones, so a node only receives the latest state. Failed
+ * notifications are retried with exponential backoff.
+ */
+public class UpdateNotifier {
+	/** Default number of notifications sent in parallel */
+	public static final int DEFAULT_THREADS = 8;
+	/** Time (in milliseconds) to wait for a node to accept a connection */
+	public static final int CONNECT_TIMEOUT = 2000;
+	/** Time (in milliseconds) to wait for a node to answer */
+	public static final int READ_TIMEOUT = 5000;
+	/** Number of retries before the pending updates of a node are dropped */
+	public static final int MAX_RETRIES = 5;
+	/** Delay (in milliseconds) before the first retry, doubled for each retry */
+	private static final long INITIAL_BACKOFF = 100;
+	/** Maximum delay (in milliseconds) between retries */
+	private static final long MAX_BACKOFF = 5000;
+
+	private final String callerId;
+	private final ScheduledThreadPoolExecutor executor;
+	private final RpcConnectionPool pool = new RpcConnectionPool(RpcConnectionPool.DEFAULT_MAX_PER_HOST,
+			RpcConnectionPool.DEFAULT_IDLE_TIMEOUT, CONNECT_TIMEOUT, READ_TIMEOUT);
+	private final Map<String, Target> targets = new HashMap<String, Target>();
+
+	/**
+	 * Pending notifications of a single node, by method and topic or parameter
+	 */
+	private class Target implements Runnable {
+		private final String uri;
+		private final Map<String, List<?>> pending = new LinkedHashMap<String, List<?>>();
+		private boolean scheduled;
+		private int failures;
+
+		Target(String uri) {
+			this.uri = uri;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				String key;
+				List<?> update;
+				synchronized (UpdateNotifier.this) {
+					Iterator<Map.Entry<String, List<?>>> it = pending.entrySet().iterator();
+					if (!it.hasNext()) {
+						scheduled = false;
+						targets.remove(uri);
+						return;
+					}
+					Map.Entry<String, List<?>> entry = it.next();
+					it.remove();
+					key = entry.getKey();
+					update = entry.getValue();
+				}
+				try {
+					URI node = new URI(uri);
+					new RpcClient(node.getHost(), node.getPort(), pool).execute((String) update.get(0),
+							Arrays.asList(callerId, update.get(1), update.get(2)));
+					synchronized (UpdateNotifier.this) {
+						failures = 0;
+					}
+				} catch (IOException | URISyntaxException | RuntimeException e) {
+					synchronized (UpdateNotifier.this) {
+						if (e instanceof URISyntaxException || ++failures > MAX_RETRIES) {
+							Logger.getGlobal().warning("Dropping updates for " + uri + ": " + e);
+							pending.clear();
+							failures = 0;
+							continue;
+						}
+						// keep a newer update that arrived in the meantime
+						if (!pending.containsKey(key))
+							pending.put(key, update);
+						long delay = Math.min(INITIAL_BACKOFF << (failures - 1), MAX_BACKOFF);
+						if (!schedule(this, delay))
+							scheduled = false;
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a notifier
+	 * 
+	 * @param callerId caller id sent with the notifications
+	 * @param threads  factory for the threads sending notifications
+	 */
+	public UpdateNotifier(String callerId, ThreadFactory threads) {
+		this.callerId = callerId;
+		this.executor = new ScheduledThreadPoolExecutor(DEFAULT_THREADS, threads);
+		this.executor.setKeepAliveTime(60, TimeUnit.SECONDS);
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Schedules a publisherUpdate notification, replacing a pending notification
+	 * for the same subscriber and topic
+	 * 
+	 * @param subscriber XMLRPC URI of the subscriber
+	 * @param topic      topic whose publishers changed
+	 * @param publishers current publishers of the topic
+	 */
+	public void publisherUpdate(String subscriber, String topic, List<String> publishers) {
+		schedule(subscriber, "publisherUpdate", topic, publishers);
+	}
+
+	/**
+	 * Schedules a paramUpdate notification, replacing a pending notification for
+	 * the same node and parameter
+	 * 
+	 * @param subscriber XMLRPC URI of the node subscribed to the parameter
+	 * @param key        subscribed parameter key
+	 * @param value      new value of the parameter, or an empty map if it was
+	 *                   deleted
+	 */
+	public void paramUpdate(String subscriber, String key, Object value) {
+		schedule(subscriber, "paramUpdate", key, value);
+	}
+
+	private synchronized void schedule(String uri, String method, String key, Object value) {
+		Target target = targets.get(uri);
+		if (target == null)
+			targets.put(uri, target = new Target(uri));
+		target.pending.put(method + " " + key, Arrays.asList(method, key, value));
+		if (!target.scheduled)
+			target.scheduled = schedule(target, 0);
+	}
+
+	/**
+	 * Discards a pending notification, e.g. because the node unsubscribed
+	 * 
+	 * @param uri    XMLRPC URI of the node
+	 * @param method notification method (publisherUpdate or paramUpdate)
+	 * @param key    topic or parameter of the notification
+	 */
+	public synchronized void cancel(String uri, String method, String key) {
+		Target target = targets.get(uri);
+		if (target != null)
+			target.pending.remove(method + " " + key);
+	}
+
+	/**
+	 * Discards all pending notifications of a node, e.g. because it is dead
+	 * 
+	 * @param uri XMLRPC URI of the node
+	 */
+	public synchronized void cancel(String uri) {
+		Target target = targets.get(uri);
+		if (target != null)
+			target.pending.clear();
+	}
+
+	/**
+	 * Checks whether notifications are waiting to be sent
+	 * 
+	 * @return true if no notification is pending
+	 */
+	public synchronized boolean isIdle() {
+		return targets.isEmpty();
+	}
+
+	private boolean schedule(Target target, long delay) {
+		try {
+			executor.schedule(target, delay, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Stops sending notifications, discarding pending ones
+	 */
+	public synchronized void stop() {
+		executor.shutdownNow();
+		targets.clear();
+		pool.close();
+	}
+
+}
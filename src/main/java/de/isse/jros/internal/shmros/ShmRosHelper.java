@@ -0,0 +1,74 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.shmros;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteOrder;
+
+/**
+ * Helper class for the shared memory transport. Messages are written into a
+ * ring buffer in a memory-mapped file, preceded by a header:
+ *
+ * <pre>
+ *  0: long  end of the frame currently being written (absolute position)
+ *  8: long  end of the last completely written frame (absolute position)
+ * 16: long  start of the last completely written frame, -1 if none
+ * 24: int   capacity of the ring
+ * 28: int   1 if the publication was stopped
+ * </pre>
+ *
+ * Each frame consists of the message length (int) followed by the message,
+ * padded to 8 bytes. A length of -1 marks that the next frame starts at the
+ * beginning of the ring.
+ */
+public class ShmRosHelper {
+
+	/** Default capacity of the ring buffer */
+	public static final int DEFAULT_CAPACITY = 16 << 20;
+
+	static final int WRITING = 0;
+	static final int PUBLISHED = 8;
+	static final int LAST_FRAME = 16;
+	static final int CAPACITY = 24;
+	static final int CLOSED = 28;
+	static final int HEADER_SIZE = 64;
+	static final int WRAP = -1;
+
+	/** Atomic access to the positions in the header */
+	static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+	/** Atomic access to the flags in the header */
+	static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+	private static String hostName;
+
+	/**
+	 * Retrieves the name of this host, used to decide whether publisher and
+	 * subscriber can share memory
+	 */
+	public static synchronized String getHostName() {
+		if (hostName == null) {
+			try {
+				hostName = InetAddress.getLocalHost().getHostName();
+			} catch (UnknownHostException e) {
+				hostName = "localhost";
+			}
+		}
+		return hostName;
+	}
+
+	/**
+	 * Computes the space a frame for a message occupies in the ring
+	 */
+	static int frameSize(int len) {
+		return (len + 4 + 7) & ~7;
+	}
+
+}
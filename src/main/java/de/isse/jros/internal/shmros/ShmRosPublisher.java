@@ -0,0 +1,173 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.shmros;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import de.isse.jros.MessageHelper;
+import de.isse.jros.internal.tcpros.TcpRosHelper;
+import de.isse.jros.types.ROSstruct;
+
+/**
+ * Class handling the shared memory publication for a defined topic. The ring
+ * file is created when the first subscriber connects.
+ */
+public class ShmRosPublisher {
+	private byte[] header;
+	private String type, md5sum;
+	private Supplier<ByteBuffer> latched;
+	private int capacity;
+	private Path path;
+	private MappedByteBuffer ring;
+
+	/**
+	 * Creates a publication
+	 * 
+	 * @param callerId  caller id of the publication
+	 * @param topic     topic of the publication
+	 * @param prototype message type of the publication
+	 * @param latching  flag whether messages should be repeated on new
+	 *                  connections
+	 * @param latched   source of the message to repeat on new connections (shared
+	 *                  with the other transports of the publication), returning
+	 *                  null if there is none
+	 * @param capacity  size of the ring buffer, limiting the message size to half
+	 *                  of it
+	 * @throws IOException if an I/O error occurs
+	 */
+	public ShmRosPublisher(String callerId, String topic, ROSstruct prototype, boolean latching,
+			Supplier<ByteBuffer> latched, int capacity) throws IOException {
+		this.header = TcpRosHelper.createConnectionHeader(prototype, callerId, latching, topic);
+		this.type = prototype.getName();
+		this.md5sum = MessageHelper.getStructMD5(prototype);
+		this.latched = latched;
+		this.capacity = capacity & ~7;
+	}
+
+	/**
+	 * Retrieves the connection header of this publication
+	 */
+	public byte[] getConnectionHeader() {
+		return header;
+	}
+
+	/**
+	 * Adds a subscriber that requested the topic
+	 * 
+	 * @param reqHeader connection header of the subscriber
+	 * @return path of the ring file to read the messages from
+	 * @throws IOException if the subscriber requests a different message type, or
+	 *                     if an I/O error occurs
+	 */
+	public synchronized String addSubscriber(Map<String, String> reqHeader) throws IOException {
+		if ((!type.equals(reqHeader.get("type")) && !"*".equals(reqHeader.get("type")))
+				|| (!md5sum.equals(reqHeader.get("md5sum")) && !"*".equals(reqHeader.get("md5sum")))) {
+			throw new IOException("Client [" + reqHeader.get("callerid") + "] wants topic " + reqHeader.get("topic")
+					+ " to have datatype/md5sum [" + reqHeader.get("type") + "/" + reqHeader.get("md5sum")
+					+ "], but our version has [" + type + "/" + md5sum + "]. Dropping connection.");
+		}
+		if (ring == null) {
+			File shm = new File("/dev/shm");
+			path = shm.isDirectory() ? Files.createTempFile(shm.toPath(), "jros-", ".ring")
+					: Files.createTempFile("jros-", ".ring");
+			path.toFile().deleteOnExit();
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				ring = channel.map(FileChannel.MapMode.READ_WRITE, 0, ShmRosHelper.HEADER_SIZE + capacity);
+			}
+			ring.order(ByteOrder.nativeOrder());
+			ring.putInt(ShmRosHelper.CAPACITY, capacity);
+			ShmRosHelper.LONG.setVolatile(ring, ShmRosHelper.LAST_FRAME, -1L);
+			ByteBuffer message = latched.get();
+			if (message != null)
+				write(message);
+		}
+		return path.toString();
+	}
+
+	/**
+	 * Publishes a new message (ignored until the first subscriber connects)
+	 * 
+	 * @param buffer message buffer
+	 * @param start  start position in buffer
+	 * @param len    length in buffer
+	 */
+	public synchronized void setMessage(byte[] buffer, int start, int len) {
+		if (ring != null)
+			write(ByteBuffer.wrap(buffer, start, len));
+	}
+
+	/**
+	 * Appends a frame to the ring. Readers detect frames that were overwritten
+	 * while they read them by comparing their position to the frame currently
+	 * being written.
+	 */
+	private void write(ByteBuffer message) {
+		int len = message.remaining();
+		int size = ShmRosHelper.frameSize(len);
+		if (size > capacity / 2) {
+			Logger.getGlobal().warning("Message of " + len + " bytes too large for shared memory ring");
+			return;
+		}
+		long pos = (long) ShmRosHelper.LONG.getVolatile(ring, ShmRosHelper.PUBLISHED);
+		int offset = (int) (pos % capacity);
+		long frame = pos;
+		if (offset + size > capacity)
+			frame = pos + capacity - offset;
+		ShmRosHelper.LONG.setVolatile(ring, ShmRosHelper.WRITING, frame + size);
+		if (frame != pos)
+			ring.putInt(ShmRosHelper.HEADER_SIZE + offset, ShmRosHelper.WRAP);
+		int index = ShmRosHelper.HEADER_SIZE + (int) (frame % capacity);
+		ring.putInt(index, len);
+		ring.position(index + 4);
+		ring.put(message.duplicate());
+		ShmRosHelper.LONG.setRelease(ring, ShmRosHelper.LAST_FRAME, frame);
+		ShmRosHelper.LONG.setRelease(ring, ShmRosHelper.PUBLISHED, frame + size);
+	}
+
+	/**
+	 * Stops publication, signalling the subscribers and removing the ring file
+	 */
+	public synchronized void stop() {
+		if (ring != null) {
+			ShmRosHelper.INT.setVolatile(ring, ShmRosHelper.CLOSED, 1);
+			try {
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+			}
+			ring = null;
+		}
+	}
+
+	/**
+	 * Opens the ring file of a publication
+	 * 
+	 * @param path path of the ring file
+	 * @return read-only mapping of the ring file
+	 * @throws IOException if the file cannot be mapped
+	 */
+	static MappedByteBuffer open(String path) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			MappedByteBuffer ring = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			ring.order(ByteOrder.nativeOrder());
+			return ring;
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.shmros;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import de.isse.jros.MessageHelper;
+import de.isse.jros.RosNode.Subscriber;
+import de.isse.jros.internal.TopicConnection;
+import de.isse.jros.internal.tcpros.TcpRosHelper;
+import de.isse.jros.types.ROSstruct;
+
+/**
+ * Class handling shared memory subscription for a given topic, polling the ring
+ * of the publisher for new messages
+ */
+public class ShmRosSubscriber implements TopicConnection {
+
+	/** Number of empty polls before the receive thread starts sleeping */
+	private static final int SPIN_POLLS = 100;
+	/** Longest sleep between two polls */
+	private static final long MAX_PARK_NANOS = 1000000;
+
+	private ByteBuffer ring;
+	private int capacity;
+	private volatile boolean running = true;
+
+	/**
+	 * Creates a new subscription, reading from the ring file of the publisher
+	 * 
+	 * @param path       path of the ring file
+	 * @param header     connection header of the publisher
+	 * @param topic      topic of publication
+	 * @param message    message type of publication
+	 * @param subscriber callback to handle received messages
+	 * @param threads    factory for the receive thread
+	 * @throws IOException if the publisher provides a different message type, or
+	 *                     if the ring file cannot be opened
+	 */
+	public ShmRosSubscriber(String path, byte[] header, String topic, ROSstruct message, final Subscriber subscriber,
+			ThreadFactory threads) throws IOException {
+		Map<String, String> pubHeader = TcpRosHelper.parseConnectionHeader(header);
+		String md5 = MessageHelper.getStructMD5(message);
+		if (!md5.equals(pubHeader.get("md5sum"))) {
+			throw new IOException("Publisher provides topic " + topic + " to have datatype/md5sum ["
+					+ pubHeader.get("type") + "/" + pubHeader.get("md5sum") + "], but our version has ["
+					+ message.getName() + "/" + md5 + "]. Dropping connection.");
+		}
+		ring = ShmRosPublisher.open(path);
+		capacity = ring.getInt(ShmRosHelper.CAPACITY);
+		if (capacity <= 0 || ring.capacity() < ShmRosHelper.HEADER_SIZE + capacity)
+			throw new IOException("Invalid shared memory ring " + path);
+
+		final long start;
+		long last = (long) ShmRosHelper.LONG.getAcquire(ring, ShmRosHelper.LAST_FRAME);
+		if ("1".equals(pubHeader.get("latching")) && last >= 0)
+			start = last;
+		else
+			start = (long) ShmRosHelper.LONG.getAcquire(ring, ShmRosHelper.PUBLISHED);
+
+		Thread thread = threads.newThread(new Runnable() {
+			@Override
+			public void run() {
+				receive(start, subscriber);
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Polls the ring for new frames, skipping to the latest frame when the
+	 * publisher has overwritten frames not yet read
+	 */
+	private void receive(long pos, Subscriber subscriber) {
+		ByteBuffer view = ring.duplicate();
+		int idle = 0;
+		while (running) {
+			long published = (long) ShmRosHelper.LONG.getAcquire(ring, ShmRosHelper.PUBLISHED);
+			if (published == pos) {
+				if ((int) ShmRosHelper.INT.getVolatile(ring, ShmRosHelper.CLOSED) != 0)
+					return;
+				if (idle < SPIN_POLLS) {
+					idle++;
+					Thread.onSpinWait();
+				} else {
+					LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(idle++ - SPIN_POLLS, 10)));
+				}
+				continue;
+			}
+			idle = 0;
+			if (published - pos > capacity) {
+				pos = skip(pos);
+				continue;
+			}
+
+			int offset = (int) (pos % capacity);
+			int len = ring.getInt(ShmRosHelper.HEADER_SIZE + offset);
+			byte[] msg = null;
+			if (len >= 0 && len <= capacity / 2) {
+				msg = new byte[len];
+				view.position(ShmRosHelper.HEADER_SIZE + offset + 4);
+				view.get(msg);
+			}
+			VarHandle.acquireFence();
+			long writing = (long) ShmRosHelper.LONG.getVolatile(ring, ShmRosHelper.WRITING);
+			if (writing - pos > capacity) {
+				pos = skip(pos);
+			} else if (len == ShmRosHelper.WRAP) {
+				pos += capacity - offset;
+			} else if (msg != null) {
+				pos += ShmRosHelper.frameSize(len);
+				subscriber.received(msg);
+			} else {
+				Logger.getGlobal().warning("Invalid frame in shared memory ring, dropping subscription");
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Skips to the last completely written frame, dropping the frames in between
+	 */
+	private long skip(long pos) {
+		return Math.max(pos, (long) ShmRosHelper.LONG.getAcquire(ring, ShmRosHelper.LAST_FRAME));
+	}
+
+	@Override
+	public void stop() throws IOException {
+		running = false;
+	}
+
+}
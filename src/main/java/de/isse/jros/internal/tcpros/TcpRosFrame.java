@@ -0,0 +1,69 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.tcpros;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Immutable TCPROS frame (4-byte length prefix and payload), shared between all
+ * connections of a publication without copying the payload
+ */
+class TcpRosFrame {
+	private final ByteBuffer prefix;
+	private final ByteBuffer payload;
+
+	/**
+	 * Creates a frame wrapping (not copying) the given payload
+	 * 
+	 * @param data  array containing the payload
+	 * @param start start position of the payload
+	 * @param len   length of the payload
+	 */
+	TcpRosFrame(byte[] data, int start, int len) {
+		ByteBuffer prefix = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, len);
+		this.prefix = prefix.asReadOnlyBuffer();
+		this.payload = ByteBuffer.wrap(data, start, len).slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Creates a frame wrapping (not copying) the given payload
+	 * 
+	 * @param data payload
+	 */
+	TcpRosFrame(byte[] data) {
+		this(data, 0, data.length);
+	}
+
+	/**
+	 * Retrieves the length of the payload
+	 */
+	int getLength() {
+		return payload.capacity();
+	}
+
+	/**
+	 * Creates an independent read-only view of the payload
+	 * 
+	 * @return payload buffer
+	 */
+	ByteBuffer getPayload() {
+		return payload.duplicate();
+	}
+
+	/**
+	 * Creates independent views of prefix and payload for a gathering write on
+	 * one connection
+	 * 
+	 * @return buffers to write
+	 */
+	ByteBuffer[] buffers() {
+		return new ByteBuffer[] { prefix.duplicate(), payload.duplicate() };
+	}
+
+}
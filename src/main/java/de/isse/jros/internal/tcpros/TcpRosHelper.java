@@ -34,12 +34,7 @@ public class TcpRosHelper {
 	 * @throws IOException if an I/O error occurs
 	 */
 	public static void sendConnectionHeader(OutputStream os, byte[] header) throws IOException {
-		DataOutputStream dos = new DataOutputStream(os);
-		byte[] data = new byte[4];
-		ROSint32.TYPE.write(data, 0, header.length);
-		dos.write(data, 0, 4);
-		dos.write(header, 0, header.length);
-		dos.flush();
+		sendMessage(os, header);
 	}
 
 	/**
@@ -76,12 +71,10 @@ public class TcpRosHelper {
 	 * @throws IOException if an I/O error occurs
 	 */
 	public static void sendMessage(OutputStream os, byte[] message) throws IOException {
-		DataOutputStream dos = new DataOutputStream(os);
-		byte[] data = new byte[4];
-		ROSint32.TYPE.write(data, 0, message.length);
-		dos.write(data, 0, 4);
-		dos.write(message, 0, message.length);
-		dos.flush();
+		int len = message.length;
+		os.write(new byte[] { (byte) len, (byte) (len >>> 8), (byte) (len >>> 16), (byte) (len >>> 24) });
+		os.write(message, 0, len);
+		os.flush();
 	}
 
 	/**
@@ -110,6 +103,52 @@ public class TcpRosHelper {
 		return ba.toByteArray();
 	}
 
+	/**
+	 * Creates a connection header for a service call
+	 * 
+	 * @param callerId   caller ID of the service client
+	 * @param service    name of the service
+	 * @param md5sum     md5 checksum of the service type
+	 * @param persistent flag whether the connection should be kept open for
+	 *                   further calls
+	 * @return connection header for the service call
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static byte[] createServiceHeader(String callerId, String service, String md5sum, boolean persistent)
+			throws IOException {
+		ByteArrayOutputStream ba = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(ba);
+		dos.write(serializeString("callerid=" + callerId));
+		dos.write(serializeString("md5sum=" + md5sum));
+		dos.write(serializeString("persistent=" + (persistent ? "1" : "0")));
+		dos.write(serializeString("service=" + service));
+		dos.close();
+		return ba.toByteArray();
+	}
+
+	/**
+	 * Creates a connection header for a service provider
+	 * 
+	 * @param callerId caller ID of the service provider
+	 * @param type     service type
+	 * @param request  request message type of the service
+	 * @param response response message type of the service
+	 * @return connection header for the service provider
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static byte[] createServiceProviderHeader(String callerId, String type, ROSstruct request,
+			ROSstruct response) throws IOException {
+		ByteArrayOutputStream ba = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(ba);
+		dos.write(serializeString("callerid=" + callerId));
+		dos.write(serializeString("md5sum=" + MessageHelper.getServiceMD5(request, response)));
+		dos.write(serializeString("request_type=" + request.getName()));
+		dos.write(serializeString("response_type=" + response.getName()));
+		dos.write(serializeString("type=" + type));
+		dos.close();
+		return ba.toByteArray();
+	}
+
 	/**
 	 * Serializes a string
 	 * 
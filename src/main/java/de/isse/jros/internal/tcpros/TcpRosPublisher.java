@@ -7,34 +7,49 @@
 
 package de.isse.jros.internal.tcpros;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.ArrayList;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import de.isse.jros.MessageHelper;
+import de.isse.jros.RosNode.QueuePolicy;
 import de.isse.jros.types.ROSstruct;
 
 /**
- * Class handling the TCPROS publication for a defined topic
+ * Class handling the TCPROS publication for a defined topic. All connections
+ * are served non-blocking by a {@link TcpRosSelector} that may be shared
+ * between several publications.
  */
 public class TcpRosPublisher {
-	private ServerSocket ss;
-	private List<Socket> clients = new ArrayList<Socket>();
-	private byte[] header;
-	private byte[] message;
+	/** Maximum accepted size of a subscriber connection header */
+	private static final int MAX_HEADER_SIZE = 1 << 20;
+
+	private TcpRosSelector selector;
+	private boolean ownSelector;
+	private ServerSocketChannel ss;
+	private List<Connection> clients = new CopyOnWriteArrayList<Connection>();
+	private TcpRosFrame header;
+	private TcpRosFrame message;
 	private boolean latching;
+	private int queueSize;
+	private QueuePolicy policy;
 	private String type, md5sum;
 
 	/**
-	 * Creates a publication
+	 * Creates a publication using its own selector thread, only sending the
+	 * latest message to each subscriber
 	 * 
 	 * @param port      local port to use for this TCPROS publisher
 	 * @param callerId  caller id of the publication
@@ -45,111 +60,93 @@ public class TcpRosPublisher {
 	 */
 	public TcpRosPublisher(int port, String callerId, String topic, ROSstruct prototype, boolean latching)
 			throws IOException {
+		this(port, callerId, topic, prototype, latching, 1, QueuePolicy.DROP_OLDEST, null);
+	}
+
+	/**
+	 * Creates a publication
+	 * 
+	 * @param port      local port to use for this TCPROS publisher
+	 * @param callerId  caller id of the publication
+	 * @param topic     topic of the publication
+	 * @param prototype message type of the publication
+	 * @param latching  flag whether messages should be repeated on new connections
+	 * @param queueSize number of messages queued for each subscriber
+	 * @param policy    policy to apply when the queue of a subscriber is full
+	 * @param selector  selector serving the connections, or null to use an own
+	 *                  selector thread
+	 * @throws IOException if an I/O error occurs
+	 */
+	public TcpRosPublisher(int port, String callerId, String topic, ROSstruct prototype, boolean latching,
+			int queueSize, QueuePolicy policy, TcpRosSelector selector) throws IOException {
+		if (queueSize < 1)
+			throw new IllegalArgumentException("Queue size must be positive");
 		this.latching = latching;
-		this.header = TcpRosHelper.createConnectionHeader(prototype, callerId, latching, topic);
-		this.message = new byte[0];
-		this.ss = new ServerSocket(port);
+		this.queueSize = queueSize;
+		this.policy = policy;
+		this.header = new TcpRosFrame(TcpRosHelper.createConnectionHeader(prototype, callerId, latching, topic));
+		this.message = new TcpRosFrame(new byte[0]);
+		this.ss = ServerSocketChannel.open();
+		this.ss.bind(new InetSocketAddress(port));
 		this.type = prototype.getName();
 		this.md5sum = MessageHelper.getStructMD5(prototype);
+		this.ownSelector = selector == null;
+		this.selector = ownSelector ? new TcpRosSelector() : selector;
 	}
 
 	/**
 	 * Retrieves the (server) port of this TCPROS connection
 	 */
 	public int getPort() {
-		return ss.getLocalPort();
+		return ss.socket().getLocalPort();
 	}
 
 	/**
 	 * Starts publication
 	 */
 	public void start() {
-		Thread thread = new Thread(new Runnable() {
+		if (ownSelector)
+			selector.start();
+		selector.execute(new Runnable() {
 			@Override
 			public void run() {
-				while (ss != null) {
-					try {
-						final Socket s = ss.accept();
-						Thread thread = new Thread(new Runnable() {
-							@Override
-							public void run() {
-								handle(s);
+				try {
+					selector.register(ss, SelectionKey.OP_ACCEPT, new TcpRosSelector.Handler() {
+						@Override
+						public void ready(SelectionKey key) throws IOException {
+							accept();
+						}
+
+						@Override
+						public void close() {
+							try {
+								ss.close();
+							} catch (IOException e) {
 							}
-						});
-						thread.setDaemon(true);
-						thread.start();
-					} catch (IOException e) {
-					}
-				}
-				message = null;
-				synchronized (this) {
-					notifyAll();
-					for (Socket s : clients) {
-						try {
-							s.close();
-						} catch (IOException e) {
 						}
-					}
+					});
+				} catch (IOException e) {
 				}
 			}
 		});
-		thread.setDaemon(true);
-		thread.start();
 	}
 
 	/**
-	 * Handles incoming connection requests from subscribers
-	 * 
-	 * @param s socket containing the connection request
+	 * Accepts a pending connection request from a subscriber (called in the
+	 * selector thread)
 	 */
-	public void handle(Socket s) {
-		byte[] lastMsg = null;
-		if (!latching)
-			lastMsg = message;
-		clients.add(s);
-		try {
-			InputStream is = new BufferedInputStream(s.getInputStream());
-			OutputStream os = new BufferedOutputStream(s.getOutputStream());
-			Map<String, String> reqHeader = TcpRosHelper.receiveConnectionHeader(is);
-			if ((!reqHeader.get("type").equals(type) && !reqHeader.get("type").equals("*"))
-					|| (!reqHeader.get("md5sum").equals(md5sum) && !reqHeader.get("md5sum").equals("*"))) {
-				TcpRosHelper.sendConnectionHeader(os,
-						TcpRosHelper.createErrorHeader("Client [" + reqHeader.get("callerid") + "] wants topic "
-								+ reqHeader.get("topic") + " to have datatype/md5sum [" + reqHeader.get("type") + "/"
-								+ reqHeader.get("md5sum") + "], but our version has [" + type + "/" + md5sum
-								+ "]. Dropping connection."));
-				os.flush();
-				s.close();
-			} else {
-				TcpRosHelper.sendConnectionHeader(os, header);
-				while (message != null) {
-					if (message != lastMsg) {
-						try {
-							if (message.length > 0)
-								TcpRosHelper.sendMessage(os, message);
-							lastMsg = message;
-						} catch (IOException e) {
-							break;
-						}
-					}
-					synchronized (this) {
-						if (message == null)
-							break;
-						try {
-							wait(1000);
-						} catch (InterruptedException e) {
-						}
-					}
-				}
-			}
-			clients.remove(s);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	private void accept() throws IOException {
+		SocketChannel channel = ss.accept();
+		if (channel == null)
+			return;
+		channel.socket().setTcpNoDelay(true);
+		Connection connection = new Connection(channel);
+		connection.key = selector.register(channel, SelectionKey.OP_READ, connection);
 	}
 
 	/**
-	 * Publishes a new message
+	 * Publishes a new message (copying the message once, so the buffer may be
+	 * reused afterwards)
 	 * 
 	 * @param buffer message buffer
 	 * @param start  start position in buffer
@@ -157,11 +154,54 @@ public class TcpRosPublisher {
 	 * @throws IOException if an I/O error occurs
 	 */
 	public void setMessage(byte[] buffer, int start, int len) throws IOException {
-		byte[] msg = Arrays.copyOfRange(buffer, start, start + len);
-		this.message = msg;
+		setSharedMessage(Arrays.copyOfRange(buffer, start, start + len), 0, len);
+	}
+
+	/**
+	 * Publishes a new message without copying it. The same buffer is sent to all
+	 * subscribers, so it must not be modified after calling this method.
+	 * 
+	 * @param buffer message buffer
+	 * @param start  start position in buffer
+	 * @param len    length in buffer
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void setSharedMessage(byte[] buffer, int start, int len) throws IOException {
+		TcpRosFrame msg = new TcpRosFrame(buffer, start, len);
+		Connection[] targets;
 		synchronized (this) {
-			notifyAll();
+			this.message = msg;
+			targets = clients.toArray(new Connection[0]);
 		}
+		for (Connection client : targets)
+			client.offer(msg);
+		selector.wakeup();
+	}
+
+	/**
+	 * Retrieves the latest message of a latching publication, so that other
+	 * transports can repeat it on new connections without keeping a copy
+	 * 
+	 * @return read-only view of the latest message, or null if the publication is
+	 *         not latching or no message was published yet
+	 */
+	public synchronized ByteBuffer getLatchedMessage() {
+		if (!latching || message.getLength() == 0)
+			return null;
+		return message.getPayload();
+	}
+
+	/**
+	 * Retrieves the number of messages dropped for each connected subscriber
+	 * since it connected
+	 * 
+	 * @return Assignment of dropped message counts to subscriber caller IDs
+	 */
+	public Map<String, Long> getDroppedMessages() {
+		Map<String, Long> ret = new HashMap<String, Long>();
+		for (Connection client : clients)
+			ret.merge(client.callerId, client.getDropped(), Long::sum);
+		return ret;
 	}
 
 	/**
@@ -171,7 +211,183 @@ public class TcpRosPublisher {
 	 */
 	public void stop() throws IOException {
 		ss.close();
-		ss = null;
+		selector.execute(new Runnable() {
+			@Override
+			public void run() {
+				for (Connection client : clients)
+					client.close();
+			}
+		});
+		if (ownSelector)
+			selector.stop();
+	}
+
+	/**
+	 * Non-blocking connection to a single subscriber
+	 */
+	private class Connection implements TcpRosSelector.Handler {
+		private SocketChannel channel;
+		private SelectionKey key;
+		private ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		private ByteBuffer request;
+		private boolean connected;
+		private String callerId;
+		private ByteBuffer[] out;
+		private ArrayDeque<TcpRosFrame> queue = new ArrayDeque<TcpRosFrame>();
+		private long dropped;
+		private boolean closed, closeAfterFlush;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public void ready(SelectionKey key) throws IOException {
+			if (key.isReadable())
+				read();
+			if (key.isValid() && key.isWritable())
+				write();
+		}
+
+		/**
+		 * Reads the connection header, and afterwards detects the subscriber closing
+		 * the connection
+		 */
+		private void read() throws IOException {
+			if (connected) {
+				length.clear();
+				if (channel.read(length) < 0)
+					close();
+				return;
+			}
+			if (request == null) {
+				if (channel.read(length) < 0)
+					throw new IOException("Connection closed during handshake");
+				if (length.hasRemaining())
+					return;
+				int len = length.getInt(0);
+				if (len < 0 || len > MAX_HEADER_SIZE)
+					throw new IOException("Invalid connection header length " + len);
+				request = ByteBuffer.allocate(len);
+			}
+			if (channel.read(request) < 0)
+				throw new IOException("Connection closed during handshake");
+			if (!request.hasRemaining())
+				handshake(TcpRosHelper.parseConnectionHeader(request.array()));
+		}
+
+		/**
+		 * Answers the connection header of the subscriber
+		 */
+		private void handshake(Map<String, String> reqHeader) throws IOException {
+			connected = true;
+			callerId = String.valueOf(reqHeader.get("callerid"));
+			if ((!type.equals(reqHeader.get("type")) && !"*".equals(reqHeader.get("type")))
+					|| (!md5sum.equals(reqHeader.get("md5sum")) && !"*".equals(reqHeader.get("md5sum")))) {
+				out = new TcpRosFrame(TcpRosHelper.createErrorHeader("Client [" + reqHeader.get("callerid") + "] wants topic "
+						+ reqHeader.get("topic") + " to have datatype/md5sum [" + reqHeader.get("type") + "/"
+						+ reqHeader.get("md5sum") + "], but our version has [" + type + "/" + md5sum
+						+ "]. Dropping connection.")).buffers();
+				closeAfterFlush = true;
+				key.interestOps(SelectionKey.OP_WRITE);
+				return;
+			}
+			out = header.buffers();
+			synchronized (TcpRosPublisher.this) {
+				synchronized (this) {
+					if (latching && message.getLength() > 0)
+						queue.add(message);
+				}
+				clients.add(this);
+			}
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+
+		/**
+		 * Sends pending data until the socket buffer is full
+		 */
+		private void write() throws IOException {
+			while (true) {
+				if (out != null) {
+					channel.write(out);
+					if (out[out.length - 1].hasRemaining())
+						return;
+					out = null;
+				}
+				synchronized (this) {
+					TcpRosFrame next = queue.poll();
+					if (next != null) {
+						out = next.buffers();
+						notifyAll();
+					} else if (closeAfterFlush) {
+						close();
+						return;
+					} else {
+						key.interestOps(SelectionKey.OP_READ);
+						return;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Queues a message for this connection, applying the queue policy if the
+		 * queue is full
+		 */
+		synchronized void offer(TcpRosFrame message) throws InterruptedIOException {
+			if (message.getLength() == 0 || closed)
+				return;
+			if (queue.size() >= queueSize) {
+				switch (policy) {
+				case DROP_OLDEST:
+					queue.poll();
+					dropped++;
+					break;
+				case DROP_NEWEST:
+					dropped++;
+					return;
+				case BLOCK:
+					selector.wakeup();
+					while (queue.size() >= queueSize && !closed) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							throw new InterruptedIOException();
+						}
+					}
+					if (closed)
+						return;
+					break;
+				}
+			}
+			queue.add(message);
+			try {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			} catch (CancelledKeyException e) {
+			}
+		}
+
+		/**
+		 * Retrieves the number of messages dropped for this connection
+		 */
+		synchronized long getDropped() {
+			return dropped;
+		}
+
+		@Override
+		public void close() {
+			synchronized (this) {
+				closed = true;
+				notifyAll();
+			}
+			clients.remove(this);
+			if (key != null)
+				key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+			}
+		}
 	}
 
 }
@@ -0,0 +1,169 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.tcpros;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.isse.jros.Threads;
+
+/**
+ * Single selector thread serving the non-blocking connections of one or more
+ * TCPROS publishers
+ */
+public class TcpRosSelector {
+
+	/**
+	 * Handler attached to a channel registered with the selector
+	 */
+	interface Handler {
+		/**
+		 * Handles a channel that is ready for I/O (called in the selector thread)
+		 * 
+		 * @param key selection key of the channel
+		 * @throws IOException if an I/O error occurs
+		 */
+		void ready(SelectionKey key) throws IOException;
+
+		/**
+		 * Closes the channel after an error or when the selector is stopped
+		 */
+		void close();
+	}
+
+	private Selector selector;
+	private Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private volatile boolean stopped = true;
+	private ThreadFactory threads;
+
+	/**
+	 * Creates a new selector
+	 * 
+	 * @throws IOException if an I/O error occurs
+	 */
+	public TcpRosSelector() throws IOException {
+		this(Threads.platform());
+	}
+
+	/**
+	 * Creates a new selector
+	 * 
+	 * @param threads factory for the selector thread
+	 * @throws IOException if an I/O error occurs
+	 */
+	public TcpRosSelector(ThreadFactory threads) throws IOException {
+		selector = Selector.open();
+		this.threads = threads;
+	}
+
+	/**
+	 * Starts the selector thread
+	 */
+	public void start() {
+		stopped = false;
+		Thread thread = threads.newThread(new Runnable() {
+			@Override
+			public void run() {
+				while (!stopped) {
+					try {
+						selector.select();
+					} catch (IOException e) {
+						break;
+					}
+					Runnable task;
+					while ((task = tasks.poll()) != null) {
+						try {
+							task.run();
+						} catch (RuntimeException e) {
+							Logger.getGlobal().log(Level.WARNING, "TCPROS selector task failed", e);
+						}
+					}
+					for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext();) {
+						SelectionKey key = it.next();
+						it.remove();
+						Handler handler = (Handler) key.attachment();
+						try {
+							if (key.isValid())
+								handler.ready(key);
+						} catch (IOException | CancelledKeyException e) {
+							handler.close();
+						} catch (RuntimeException e) {
+							// only drop the failing connection, the thread serves all publications
+							Logger.getGlobal().log(Level.WARNING, "TCPROS connection failed", e);
+							handler.close();
+						}
+					}
+				}
+				for (SelectionKey key : selector.keys())
+					((Handler) key.attachment()).close();
+				try {
+					selector.close();
+				} catch (IOException e) {
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Registers a channel with the selector (must be called in the selector
+	 * thread)
+	 * 
+	 * @param channel channel to register
+	 * @param ops     interest set
+	 * @param handler handler for the channel
+	 * @return selection key of the channel
+	 * @throws IOException if an I/O error occurs
+	 */
+	SelectionKey register(SelectableChannel channel, int ops, Handler handler) throws IOException {
+		try {
+			channel.configureBlocking(false);
+			return channel.register(selector, ops, handler);
+		} catch (ClosedChannelException e) {
+			handler.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Executes a task in the selector thread
+	 * 
+	 * @param task task to execute
+	 */
+	void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Wakes up the selector thread to apply changed interest sets
+	 */
+	void wakeup() {
+		selector.wakeup();
+	}
+
+	/**
+	 * Stops the selector thread and closes all registered channels
+	 */
+	public void stop() {
+		stopped = true;
+		selector.wakeup();
+	}
+
+}
@@ -0,0 +1,119 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.tcpros;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Class handling a ROSRPC connection to a service provider. Calls on the same
+ * connection are serialized; a persistent connection is reused for all calls
+ * until it is closed or fails.
+ */
+public class TcpRosServiceClient {
+
+	private Socket socket;
+	private DataInputStream dis;
+	private OutputStream os;
+	private boolean persistent;
+	private byte[] lmsg = new byte[4];
+
+	/**
+	 * Connects to a service provider
+	 * 
+	 * @param host       host name of the service provider
+	 * @param port       port of the service provider
+	 * @param callerId   caller id of the client
+	 * @param service    name of the service
+	 * @param md5sum     md5 checksum of the service type
+	 * @param persistent flag whether the connection should be kept open for
+	 *                   further calls
+	 * @throws IOException if an I/O error occurs or the provider refuses the
+	 *                     connection
+	 */
+	public TcpRosServiceClient(String host, int port, String callerId, String service, String md5sum,
+			boolean persistent) throws IOException {
+		this.persistent = persistent;
+		this.socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		dis = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		os = new BufferedOutputStream(socket.getOutputStream());
+
+		TcpRosHelper.sendConnectionHeader(os,
+				TcpRosHelper.createServiceHeader(callerId, service, md5sum, persistent));
+		Map<String, String> header = TcpRosHelper.receiveConnectionHeader(dis);
+		if (header.containsKey("error")) {
+			socket.close();
+			throw new IOException(header.get("error"));
+		}
+		if (!md5sum.equals("*") && !md5sum.equals(header.get("md5sum"))) {
+			socket.close();
+			throw new IOException("Service " + service + " at " + host + ":" + port + " has md5sum ["
+					+ header.get("md5sum") + "], but our version has [" + md5sum + "]. Dropping connection.");
+		}
+	}
+
+	/**
+	 * Calls the service. A non-persistent connection is closed afterwards.
+	 * 
+	 * @param request request message (in ROS binary format)
+	 * @return response message (in ROS binary format)
+	 * @throws IOException              if an I/O error occurs
+	 * @throws IllegalArgumentException if the service provider failed to handle
+	 *                                  the request
+	 */
+	public synchronized byte[] call(byte[] request) throws IOException {
+		try {
+			TcpRosHelper.sendMessage(os, request);
+			int ok = dis.read();
+			if (ok < 0)
+				throw new IOException("Connection closed by service provider");
+			dis.readFully(lmsg, 0, 4);
+			int len = (lmsg[0] & 0xff) | (lmsg[1] & 0xff) << 8 | (lmsg[2] & 0xff) << 16 | (lmsg[3] & 0xff) << 24;
+			if (len < 0)
+				throw new IOException("Unexepected response length " + len);
+			byte[] response = new byte[len];
+			dis.readFully(response, 0, len);
+			if (ok == 0)
+				throw new IllegalArgumentException(
+						"Service call failed: " + new String(response, StandardCharsets.UTF_8));
+			return response;
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		} finally {
+			if (!persistent)
+				socket.close();
+		}
+	}
+
+	/**
+	 * Checks whether the connection can be used for further calls
+	 * 
+	 * @return true if the connection is open
+	 */
+	public boolean isOpen() {
+		return !socket.isClosed();
+	}
+
+	/**
+	 * Closes the connection
+	 * 
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void close() throws IOException {
+		socket.close();
+	}
+
+}
@@ -0,0 +1,205 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.tcpros;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import de.isse.jros.MessageHelper;
+import de.isse.jros.RosNode.ServiceHandler;
+import de.isse.jros.types.ROSstruct;
+
+/**
+ * Class providing a service over ROSRPC. Each client connection is served by a
+ * worker thread for its lifetime, so that persistent connections answer calls
+ * without a hand-off between threads. A number of workers is kept alive so
+ * that non-persistent calls do not pay for creating a thread, and connections
+ * beyond the maximum number of workers are closed right away.
+ */
+public class TcpRosServiceServer {
+	/** Default number of worker threads kept alive */
+	public static final int DEFAULT_WORKERS = 4;
+	/** Default maximum number of worker threads (and thus open connections) */
+	public static final int DEFAULT_MAX_WORKERS = 64;
+
+	private ServerSocket ss;
+	private ThreadFactory threads;
+	private ThreadPoolExecutor workers;
+	private Set<Socket> connections = ConcurrentHashMap.newKeySet();
+	private byte[] header;
+	private String md5sum;
+	private String service;
+	private ServiceHandler handler;
+
+	/**
+	 * Creates a service provider
+	 * 
+	 * @param port       local port to use, or 0 for any free port
+	 * @param callerId   caller id of the service provider
+	 * @param service    name of the service
+	 * @param type       service type
+	 * @param request    request message type of the service
+	 * @param response   response message type of the service
+	 * @param handler    callback answering the calls
+	 * @param workers    number of worker threads kept alive
+	 * @param maxWorkers maximum number of worker threads, limiting the number of
+	 *                   connections served at the same time
+	 * @param threads    factory for the accepting and worker threads
+	 * @throws IOException if an I/O error occurs
+	 */
+	public TcpRosServiceServer(int port, String callerId, String service, String type, ROSstruct request,
+			ROSstruct response, ServiceHandler handler, int workers, int maxWorkers, ThreadFactory threads)
+			throws IOException {
+		if (workers < 1 || maxWorkers < workers)
+			throw new IllegalArgumentException("Invalid number of workers");
+		this.service = service;
+		this.handler = handler;
+		this.threads = threads;
+		this.header = TcpRosHelper.createServiceProviderHeader(callerId, type, request, response);
+		this.md5sum = MessageHelper.getServiceMD5(request, response);
+		this.workers = new ThreadPoolExecutor(workers, maxWorkers, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), threads);
+		this.ss = new ServerSocket(port);
+	}
+
+	/**
+	 * Retrieves the (server) port of this service
+	 */
+	public int getPort() {
+		return ss.getLocalPort();
+	}
+
+	/**
+	 * Starts accepting service calls
+	 */
+	public void start() {
+		Thread thread = threads.newThread(new Runnable() {
+			@Override
+			public void run() {
+				while (!ss.isClosed()) {
+					final Socket socket;
+					try {
+						socket = ss.accept();
+					} catch (IOException e) {
+						continue;
+					}
+					connections.add(socket);
+					try {
+						workers.execute(new Runnable() {
+							@Override
+							public void run() {
+								try {
+									serve(socket);
+								} catch (IOException e) {
+								} finally {
+									close(socket);
+								}
+							}
+						});
+					} catch (RejectedExecutionException e) {
+						// all workers busy (or stopped)
+						if (!ss.isClosed())
+							Logger.getGlobal().warning("Too many connections to service " + service + ", closing "
+									+ socket.getRemoteSocketAddress());
+						close(socket);
+					}
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Closes a client connection
+	 */
+	private void close(Socket socket) {
+		connections.remove(socket);
+		try {
+			socket.close();
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * Exchanges the connection headers with a client and answers its calls
+	 */
+	private void serve(Socket socket) throws IOException {
+		socket.setTcpNoDelay(true);
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		OutputStream os = new BufferedOutputStream(socket.getOutputStream());
+
+		Map<String, String> reqHeader = TcpRosHelper.receiveConnectionHeader(dis);
+		String md5 = reqHeader.get("md5sum");
+		if (!md5sum.equals(md5) && !"*".equals(md5)) {
+			TcpRosHelper.sendConnectionHeader(os, TcpRosHelper.createErrorHeader("error=Client ["
+					+ reqHeader.get("callerid") + "] wants service " + service + " to have md5sum [" + md5
+					+ "], but our version has [" + md5sum + "]. Dropping connection."));
+			return;
+		}
+		TcpRosHelper.sendConnectionHeader(os, header);
+		if ("1".equals(reqHeader.get("probe")))
+			return;
+		boolean persistent = "1".equals(reqHeader.get("persistent"));
+
+		byte[] lmsg = new byte[4];
+		do {
+			try {
+				dis.readFully(lmsg, 0, 4);
+			} catch (EOFException e) {
+				return;
+			}
+			int len = (lmsg[0] & 0xff) | (lmsg[1] & 0xff) << 8 | (lmsg[2] & 0xff) << 16 | (lmsg[3] & 0xff) << 24;
+			if (len < 0)
+				throw new IOException("Unexepected request length " + len + " for service " + service);
+			byte[] request = new byte[len];
+			dis.readFully(request, 0, len);
+
+			byte[] response;
+			boolean ok;
+			try {
+				response = handler.call(request);
+				ok = true;
+			} catch (Exception e) {
+				response = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+				ok = false;
+			}
+			os.write(ok ? 1 : 0);
+			TcpRosHelper.sendMessage(os, response);
+		} while (persistent);
+	}
+
+	/**
+	 * Stops the service, closing all client connections
+	 * 
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void stop() throws IOException {
+		ss.close();
+		for (Socket socket : connections)
+			socket.close();
+		workers.shutdown();
+	}
+
+}
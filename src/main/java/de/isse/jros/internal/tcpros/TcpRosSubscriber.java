@@ -8,27 +8,42 @@
 package de.isse.jros.internal.tcpros;
 
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
 import java.util.Map;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import de.isse.jros.MessageHelper;
+import de.isse.jros.RosNode.BufferSubscriber;
+import de.isse.jros.RosNode.PooledSubscriber;
 import de.isse.jros.RosNode.Subscriber;
+import de.isse.jros.internal.BufferPool;
+import de.isse.jros.internal.PooledMessage;
+import de.isse.jros.internal.TopicConnection;
 import de.isse.jros.types.ROSType;
-import de.isse.jros.types.ROSint32;
 import de.isse.jros.types.ROSstruct;
 
 /**
  * Class handling TCPROS subscription for a given topic
  */
-public class TcpRosSubscriber {
+public class TcpRosSubscriber implements TopicConnection {
+
+	/** Initial size of the direct receive buffer */
+	private static final int DIRECT_BUFFER_SIZE = 1 << 16;
 
 	private DataInputStream dis;
+	private SocketChannel channel;
 	private Socket socket;
+	private ThreadFactory threads;
 
 	/**
 	 * Creates a new subscription
@@ -39,11 +54,121 @@ public class TcpRosSubscriber {
 	 * @param topic      topic of publication
 	 * @param message    message type of publication
 	 * @param subscriber callback to handle received messages
+	 * @param threads    factory for the receive thread
+	 * @throws IOException if an I/O error occurs
+	 */
+	public TcpRosSubscriber(String host, int port, String callerId, final String topic, final ROSstruct message,
+			final Subscriber subscriber, ThreadFactory threads) throws IOException {
+		this.threads = threads;
+		connect(host, port, callerId, topic, message);
+		start(new Runnable() {
+			@Override
+			public void run() {
+				byte[] lmsg = new byte[4];
+				try {
+					while (true) {
+						int len = readLength(lmsg, topic);
+						byte[] msg = new byte[len];
+						dis.readFully(msg, 0, len);
+						subscriber.received(msg);
+					}
+				} catch (IOException e) {
+				}
+			}
+		});
+	}
+
+	/**
+	 * Creates a new subscription that receives messages into pooled buffers
+	 * 
+	 * @param host       host name of the publisher
+	 * @param port       port of the publisher
+	 * @param callerId   caller id
+	 * @param topic      topic of publication
+	 * @param message    message type of publication
+	 * @param subscriber callback to handle received messages
+	 * @param pool       pool to take the receive buffers from
+	 * @param threads    factory for the receive thread
 	 * @throws IOException if an I/O error occurs
 	 */
 	public TcpRosSubscriber(String host, int port, String callerId, final String topic, final ROSstruct message,
-			final Subscriber subscriber) throws IOException {
-		this.socket = new Socket(host, port);
+			final PooledSubscriber subscriber, final BufferPool pool, ThreadFactory threads) throws IOException {
+		this.threads = threads;
+		connect(host, port, callerId, topic, message);
+		start(new Runnable() {
+			@Override
+			public void run() {
+				byte[] lmsg = new byte[4];
+				PooledMessage lease = new PooledMessage();
+				try {
+					while (true) {
+						int len = readLength(lmsg, topic);
+						byte[] buffer = pool.acquire(len);
+						try {
+							dis.readFully(buffer, 0, len);
+							lease.lend(buffer, len);
+							subscriber.received(lease);
+						} finally {
+							lease.end();
+							pool.release(buffer);
+						}
+					}
+				} catch (IOException e) {
+				}
+			}
+		});
+	}
+
+	/**
+	 * Creates a new subscription that reads messages from the socket channel into
+	 * a direct buffer
+	 * 
+	 * @param host       host name of the publisher
+	 * @param port       port of the publisher
+	 * @param callerId   caller id
+	 * @param topic      topic of publication
+	 * @param message    message type of publication
+	 * @param subscriber callback to handle received messages
+	 * @param threads    factory for the receive thread
+	 * @throws IOException if an I/O error occurs
+	 */
+	public TcpRosSubscriber(String host, int port, String callerId, final String topic, final ROSstruct message,
+			final BufferSubscriber subscriber, ThreadFactory threads) throws IOException {
+		this.threads = threads;
+		connect(host, port, callerId, topic, message);
+		start(new Runnable() {
+			@Override
+			public void run() {
+				ByteBuffer lmsg = ByteBuffer.allocateDirect(4).order(ByteOrder.LITTLE_ENDIAN);
+				ByteBuffer buffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+				try {
+					while (true) {
+						lmsg.clear();
+						readFully(lmsg);
+						int len = lmsg.getInt(0);
+						if (len <= 0)
+							throw new IllegalArgumentException(
+									"Unexepected message length " + len + " in topic " + topic);
+						if (buffer.capacity() < len)
+							buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(len - 1) << 1);
+						buffer.clear().limit(len);
+						readFully(buffer);
+						buffer.flip();
+						subscriber.received(buffer.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN));
+					}
+				} catch (IOException e) {
+				}
+			}
+		});
+	}
+
+	/**
+	 * Connects to the publisher and exchanges the connection headers
+	 */
+	private void connect(String host, int port, String callerId, String topic, ROSstruct message)
+			throws IOException {
+		this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+		this.socket = channel.socket();
 		InputStream is = socket.getInputStream();
 		OutputStream os = socket.getOutputStream();
 
@@ -62,44 +187,53 @@ public class TcpRosSubscriber {
 					+ "], but our version has [" + message.getName() + "/" + md5 + "]. Dropping connection.");
 		}
 		dis = new DataInputStream(is);
+	}
 
-		Thread thread = new Thread(new Runnable() {
+	/**
+	 * Starts the thread receiving messages, closing the socket when the receive
+	 * loop ends
+	 */
+	private void start(final Runnable receiver) {
+		Thread thread = threads.newThread(new Runnable() {
 			@Override
 			public void run() {
-				while (true) {
-					byte[] msg = null, lmsg = new byte[4];
+				try {
+					receiver.run();
+				} finally {
 					try {
-						for (int pos = 0; pos < 4; pos += dis.read(lmsg, pos, 4 - pos))
-							;
-						int len = ROSint32.TYPE.read(lmsg, 0).intValue();
-						if (len <= 0)
-							throw new IllegalArgumentException(
-									"Unexepected message length " + len + " in topic " + topic);
-						msg = new byte[len];
-						for (int pos = 0; pos < len; pos += dis.read(msg, pos, len - pos))
-							;
-						subscriber.received(msg);
+						socket.close();
 					} catch (IOException e) {
-						break;
+						e.printStackTrace();
 					}
 				}
-				try {
-					socket.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
 			}
 		});
 		thread.setDaemon(true);
 		thread.start();
+	}
 
+	/**
+	 * Fills the given buffer from the socket channel
+	 */
+	private void readFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0)
+				throw new EOFException();
+		}
 	}
 
 	/**
-	 * Ends the subscription
-	 * 
-	 * @throws IOException if an I/O error occurs
+	 * Reads the length prefix of the next message
 	 */
+	private int readLength(byte[] lmsg, String topic) throws IOException {
+		dis.readFully(lmsg, 0, 4);
+		int len = (lmsg[0] & 0xff) | (lmsg[1] & 0xff) << 8 | (lmsg[2] & 0xff) << 16 | (lmsg[3] & 0xff) << 24;
+		if (len <= 0)
+			throw new IllegalArgumentException("Unexepected message length " + len + " in topic " + topic);
+		return len;
+	}
+
+	@Override
 	public void stop() throws IOException {
 		socket.close();
 	}
@@ -0,0 +1,42 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.udpros;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helper class for UDPROS protocol
+ */
+public class UdpRosHelper {
+
+	/** Size of the header preceding each datagram */
+	public static final int HEADER_SIZE = 8;
+	/** Default maximum size of a datagram (including header) */
+	public static final int DEFAULT_MAX_DATAGRAM_SIZE = 1500;
+	/** First datagram of a message, block number holds the number of blocks */
+	static final int OP_DATA0 = 0;
+	/** Subsequent datagram of a message, block number holds the block index */
+	static final int OP_DATAN = 1;
+
+	/**
+	 * Writes a datagram header
+	 * 
+	 * @param buffer       (little-endian) buffer to write the header to
+	 * @param connectionId ID of the connection
+	 * @param opCode       operation code (DATA0 or DATAN)
+	 * @param messageId    ID of the message the datagram belongs to
+	 * @param block        number of blocks (DATA0) or block index (DATAN)
+	 */
+	static void writeHeader(ByteBuffer buffer, int connectionId, int opCode, int messageId, int block) {
+		buffer.putInt(connectionId);
+		buffer.put((byte) opCode);
+		buffer.put((byte) messageId);
+		buffer.putShort((short) block);
+	}
+
+}
@@ -0,0 +1,191 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.udpros;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import de.isse.jros.MessageHelper;
+import de.isse.jros.internal.tcpros.TcpRosHelper;
+import de.isse.jros.types.ROSstruct;
+
+/**
+ * Class handling the UDPROS publication for a defined topic
+ */
+public class UdpRosPublisher {
+	private static final AtomicInteger connectionIds = new AtomicInteger();
+
+	private List<Destination> destinations = new CopyOnWriteArrayList<Destination>();
+	private byte[] header;
+	private Supplier<ByteBuffer> latched;
+	private int maxDatagramSize;
+	private String type, md5sum;
+	private int messageId;
+
+	/**
+	 * Creates a publication
+	 * 
+	 * @param callerId        caller id of the publication
+	 * @param topic           topic of the publication
+	 * @param prototype       message type of the publication
+	 * @param latching        flag whether messages should be repeated on new
+	 *                        connections
+	 * @param latched         source of the message to repeat on new connections
+	 *                        (shared with the other transports of the
+	 *                        publication), returning null if there is none
+	 * @param maxDatagramSize maximum size of the datagrams to send
+	 * @throws IOException if an I/O error occurs
+	 */
+	public UdpRosPublisher(String callerId, String topic, ROSstruct prototype, boolean latching,
+			Supplier<ByteBuffer> latched, int maxDatagramSize) throws IOException {
+		this.latched = latched;
+		this.maxDatagramSize = maxDatagramSize;
+		this.header = TcpRosHelper.createConnectionHeader(prototype, callerId, latching, topic);
+		this.type = prototype.getName();
+		this.md5sum = MessageHelper.getStructMD5(prototype);
+	}
+
+	/**
+	 * Retrieves the connection header of this publication
+	 */
+	public byte[] getConnectionHeader() {
+		return header;
+	}
+
+	/**
+	 * Adds a subscriber that requested the topic
+	 * 
+	 * @param reqHeader       connection header of the subscriber
+	 * @param host            host to send the datagrams to
+	 * @param port            port to send the datagrams to
+	 * @param maxDatagramSize maximum datagram size requested by the subscriber
+	 * @return the connection parameters [connection id, max datagram size, source
+	 *         port]
+	 * @throws IOException if the subscriber requests a different message type, or
+	 *                     if an I/O error occurs
+	 */
+	public int[] addSubscriber(Map<String, String> reqHeader, String host, int port, int maxDatagramSize)
+			throws IOException {
+		if ((!type.equals(reqHeader.get("type")) && !"*".equals(reqHeader.get("type")))
+				|| (!md5sum.equals(reqHeader.get("md5sum")) && !"*".equals(reqHeader.get("md5sum")))) {
+			throw new IOException("Client [" + reqHeader.get("callerid") + "] wants topic " + reqHeader.get("topic")
+					+ " to have datatype/md5sum [" + reqHeader.get("type") + "/" + reqHeader.get("md5sum")
+					+ "], but our version has [" + type + "/" + md5sum + "]. Dropping connection.");
+		}
+		int size = Math.min(maxDatagramSize, this.maxDatagramSize);
+		if (size < UdpRosHelper.HEADER_SIZE + 4)
+			throw new IOException("Datagram size " + maxDatagramSize + " too small");
+		Destination destination = new Destination(connectionIds.incrementAndGet(), host, port, size);
+		synchronized (this) {
+			destinations.add(destination);
+			ByteBuffer message = latched.get();
+			if (message != null)
+				send(destination, message);
+		}
+		return new int[] { destination.connectionId, size, destination.channel.socket().getLocalPort() };
+	}
+
+	/**
+	 * Publishes a new message (without keeping it, so the buffer may be reused
+	 * afterwards)
+	 * 
+	 * @param buffer message buffer
+	 * @param start  start position in buffer
+	 * @param len    length in buffer
+	 */
+	public synchronized void setMessage(byte[] buffer, int start, int len) {
+		messageId = (messageId + 1) & 0xff;
+		if (destinations.isEmpty())
+			return;
+		ByteBuffer message = ByteBuffer.wrap(buffer, start, len);
+		for (Destination destination : destinations)
+			send(destination, message);
+	}
+
+	/**
+	 * Sends a message to a destination, splitting it into blocks that fit into a
+	 * datagram. Destinations that cannot be reached any more are removed.
+	 */
+	private void send(Destination destination, ByteBuffer message) {
+		ByteBuffer payload = message.duplicate();
+		int len = payload.remaining();
+		ByteBuffer datagram = destination.datagram;
+		int blockSize = datagram.capacity() - UdpRosHelper.HEADER_SIZE;
+		int total = len + 4;
+		int blocks = (total + blockSize - 1) / blockSize;
+		if (blocks > 0xffff) {
+			Logger.getGlobal().warning("Message of " + len + " bytes too large for UDPROS");
+			return;
+		}
+		try {
+			int limit = payload.limit();
+			for (int block = 0; block < blocks; block++) {
+				datagram.clear();
+				if (block == 0)
+					UdpRosHelper.writeHeader(datagram, destination.connectionId, UdpRosHelper.OP_DATA0, messageId,
+							blocks);
+				else
+					UdpRosHelper.writeHeader(datagram, destination.connectionId, UdpRosHelper.OP_DATAN, messageId,
+							block);
+				if (block == 0)
+					datagram.putInt(len);
+				payload.limit(Math.min(limit, payload.position() + datagram.remaining()));
+				datagram.put(payload);
+				payload.limit(limit);
+				datagram.flip();
+				destination.channel.write(datagram);
+			}
+		} catch (IOException e) {
+			Logger.getGlobal().info("Removed UDPROS subscriber " + destination.channel + ": " + e);
+			destinations.remove(destination);
+			destination.close();
+		}
+	}
+
+	/**
+	 * Stops publication
+	 */
+	public void stop() {
+		for (Destination destination : destinations)
+			destination.close();
+		destinations.clear();
+	}
+
+	/**
+	 * Subscriber receiving the datagrams
+	 */
+	private static class Destination {
+		private int connectionId;
+		private DatagramChannel channel;
+		private ByteBuffer datagram;
+
+		Destination(int connectionId, String host, int port, int maxDatagramSize) throws IOException {
+			this.connectionId = connectionId;
+			this.channel = DatagramChannel.open();
+			this.channel.connect(new InetSocketAddress(host, port));
+			this.datagram = ByteBuffer.allocateDirect(maxDatagramSize).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+}
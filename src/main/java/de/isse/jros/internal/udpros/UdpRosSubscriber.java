@@ -0,0 +1,174 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.udpros;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+import de.isse.jros.MessageHelper;
+import de.isse.jros.RosNode.Subscriber;
+import de.isse.jros.internal.TopicConnection;
+import de.isse.jros.internal.tcpros.TcpRosHelper;
+import de.isse.jros.types.ROSstruct;
+
+/**
+ * Class handling UDPROS subscription for a given topic
+ */
+public class UdpRosSubscriber implements TopicConnection {
+
+	/** Requested size of the socket receive buffer */
+	private static final int RECEIVE_BUFFER_SIZE = 1 << 20;
+
+	private DatagramChannel channel;
+	private String topic;
+	private ROSstruct message;
+	private Subscriber subscriber;
+	private int maxDatagramSize;
+	private ThreadFactory threads;
+
+	/**
+	 * Creates a new subscription, listening for datagrams on an arbitrary port
+	 * 
+	 * @param topic           topic of publication
+	 * @param message         message type of publication
+	 * @param subscriber      callback to handle received messages
+	 * @param maxDatagramSize maximum size of the datagrams to receive
+	 * @param threads         factory for the receive thread
+	 * @throws IOException if an I/O error occurs
+	 */
+	public UdpRosSubscriber(String topic, ROSstruct message, Subscriber subscriber, int maxDatagramSize,
+			ThreadFactory threads) throws IOException {
+		this.threads = threads;
+		this.topic = topic;
+		this.message = message;
+		this.subscriber = subscriber;
+		this.maxDatagramSize = maxDatagramSize;
+		this.channel = DatagramChannel.open();
+		try {
+			channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+		} catch (IOException e) {
+		}
+		channel.bind(new InetSocketAddress(0));
+	}
+
+	/**
+	 * Retrieves the port the subscription receives datagrams on
+	 */
+	public int getPort() {
+		return channel.socket().getLocalPort();
+	}
+
+	/**
+	 * Creates the connection header to send to the publisher
+	 * 
+	 * @param callerId caller id
+	 * @return connection header of the subscription
+	 * @throws IOException if an I/O error occurs
+	 */
+	public byte[] getConnectionHeader(String callerId) throws IOException {
+		return TcpRosHelper.createConnectionHeader(message, callerId, false, topic);
+	}
+
+	/**
+	 * Starts receiving messages after the publisher accepted the connection
+	 * 
+	 * @param header       connection header of the publisher
+	 * @param connectionId ID of the connection assigned by the publisher
+	 * @throws IOException if the publisher provides a different message type, or
+	 *                     if an I/O error occurs
+	 */
+	public void start(byte[] header, final int connectionId) throws IOException {
+		Map<String, String> pubHeader = TcpRosHelper.parseConnectionHeader(header);
+		String md5 = MessageHelper.getStructMD5(message);
+		if (!md5.equals(pubHeader.get("md5sum"))) {
+			channel.close();
+			throw new IOException("Publisher provides topic " + topic + " to have datatype/md5sum ["
+					+ pubHeader.get("type") + "/" + pubHeader.get("md5sum") + "], but our version has ["
+					+ message.getName() + "/" + md5 + "]. Dropping connection.");
+		}
+
+		Thread thread = threads.newThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					receive(connectionId);
+				} catch (IOException e) {
+				} finally {
+					try {
+						channel.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Receives datagrams and reassembles them into messages. Messages with
+	 * missing or reordered blocks are dropped.
+	 */
+	private void receive(int connectionId) throws IOException {
+		ByteBuffer datagram = ByteBuffer.allocateDirect(maxDatagramSize).order(ByteOrder.LITTLE_ENDIAN);
+		byte[] msg = null;
+		int msgId = -1, blocks = 0, nextBlock = 0, pos = 0;
+		while (true) {
+			datagram.clear();
+			channel.receive(datagram);
+			datagram.flip();
+			if (datagram.remaining() < UdpRosHelper.HEADER_SIZE || datagram.getInt() != connectionId)
+				continue;
+			int opCode = datagram.get() & 0xff;
+			int id = datagram.get() & 0xff;
+			int block = datagram.getShort() & 0xffff;
+
+			if (opCode == UdpRosHelper.OP_DATA0) {
+				if (datagram.remaining() < 4)
+					continue;
+				int len = datagram.getInt();
+				if (len <= 0 || len > (long) block * (maxDatagramSize - UdpRosHelper.HEADER_SIZE)) {
+					msg = null;
+					continue;
+				}
+				msg = new byte[len];
+				msgId = id;
+				blocks = block;
+				nextBlock = 1;
+				pos = 0;
+			} else if (opCode != UdpRosHelper.OP_DATAN || msg == null || id != msgId || block != nextBlock) {
+				msg = null;
+				continue;
+			} else {
+				nextBlock++;
+			}
+
+			int n = Math.min(datagram.remaining(), msg.length - pos);
+			datagram.get(msg, pos, n);
+			pos += n;
+			if (nextBlock == blocks) {
+				if (pos == msg.length)
+					subscriber.received(msg);
+				msg = null;
+			}
+		}
+	}
+
+	@Override
+	public void stop() throws IOException {
+		channel.close();
+	}
+
+}
@@ -0,0 +1,144 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.xmlrpc;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal HTTP/1.1 message framing shared by the XMLRPC client and server
+ */
+class Http {
+	/** Maximum length of the start line and of each header line */
+	private static final int MAX_LINE = 8192;
+
+	/**
+	 * Reads a line (terminated by LF, optionally preceded by CR)
+	 * 
+	 * @param is input stream to read from
+	 * @return line read, or null if the stream ended before the first character
+	 * @throws IOException if an I/O error occurs or the line is too long
+	 */
+	static String readLine(InputStream is) throws IOException {
+		StringBuilder ret = new StringBuilder();
+		while (true) {
+			int ch = is.read();
+			if (ch == -1) {
+				if (ret.length() == 0)
+					return null;
+				throw new EOFException();
+			}
+			if (ch == '\n')
+				break;
+			if (ret.length() >= MAX_LINE)
+				throw new IOException("HTTP line too long");
+			ret.append((char) ch);
+		}
+		int len = ret.length();
+		if (len > 0 && ret.charAt(len - 1) == '\r')
+			ret.setLength(len - 1);
+		return ret.toString();
+	}
+
+	/**
+	 * Reads the header lines up to the empty line
+	 * 
+	 * @param is input stream to read from
+	 * @return headers with lower case names
+	 * @throws IOException if an I/O error occurs
+	 */
+	static Map<String, String> readHeaders(InputStream is) throws IOException {
+		Map<String, String> headers = new HashMap<String, String>();
+		while (true) {
+			String line = readLine(is);
+			if (line == null)
+				throw new EOFException();
+			if (line.trim().isEmpty())
+				return headers;
+			String[] parts = line.split(":", 2);
+			if (parts.length == 2)
+				headers.put(parts[0].trim().toLowerCase(), parts[1].trim());
+		}
+	}
+
+	/**
+	 * Reads a body framed by the Content-Length header
+	 * 
+	 * @param is      input stream to read from
+	 * @param headers headers of the message
+	 * @param maxSize maximum accepted body size
+	 * @return body of the message
+	 * @throws IOException if an I/O error occurs or the body is too large
+	 */
+	static byte[] readBody(InputStream is, Map<String, String> headers, int maxSize) throws IOException {
+		String length = headers.get("content-length");
+		if (length == null)
+			throw new IOException("Missing Content-Length");
+		int len = Integer.parseInt(length);
+		if (len < 0 || len > maxSize)
+			throw new IOException("Invalid Content-Length " + len);
+		byte[] data = new byte[len];
+		for (int pos = 0; pos < len;) {
+			int read = is.read(data, pos, len - pos);
+			if (read < 0)
+				throw new EOFException();
+			pos += read;
+		}
+		return data;
+	}
+
+	/**
+	 * Decides whether the connection may be reused after a message
+	 * 
+	 * @param version HTTP version of the message
+	 * @param headers headers of the message
+	 * @return true if the connection stays open
+	 */
+	static boolean isKeepAlive(String version, Map<String, String> headers) {
+		String connection = headers.get("connection");
+		if (version.endsWith("/1.0"))
+			return "keep-alive".equalsIgnoreCase(connection);
+		return !"close".equalsIgnoreCase(connection);
+	}
+
+	/**
+	 * Writes the header lines and the body of a message
+	 * 
+	 * @param os        output stream to write to
+	 * @param startLine request or status line
+	 * @param headers   header lines (without Content-Length)
+	 * @param body      buffer containing the body of the message
+	 * @param length    length of the body
+	 * @throws IOException if an I/O error occurs
+	 */
+	static void write(OutputStream os, String startLine, String headers, byte[] body, int length)
+			throws IOException {
+		os.write(head(startLine, headers, length));
+		os.write(body, 0, length);
+		os.flush();
+	}
+
+	/**
+	 * Formats the header lines of a message
+	 * 
+	 * @param startLine     request or status line
+	 * @param headers       header lines (without Content-Length)
+	 * @param contentLength length of the body in bytes
+	 * @return header lines including the empty line separating the body
+	 */
+	static byte[] head(String startLine, String headers, int contentLength) {
+		return (startLine + "\r\n" + headers + "Content-Length: " + contentLength + "\r\n\r\n")
+				.getBytes(StandardCharsets.US_ASCII);
+	}
+
+}
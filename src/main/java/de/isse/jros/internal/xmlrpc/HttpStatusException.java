@@ -0,0 +1,46 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.xmlrpc;
+
+import java.io.IOException;
+
+/**
+ * HTTP response of an XMLRPC server with a status other than 200 OK
+ */
+public class HttpStatusException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final int status;
+
+	/**
+	 * Creates an exception for a status line
+	 * 
+	 * @param statusLine status line of the response
+	 */
+	public HttpStatusException(String statusLine) {
+		super(statusLine);
+		String[] parts = statusLine.split(" ", 3);
+		int status = -1;
+		try {
+			if (parts.length > 1)
+				status = Integer.parseInt(parts[1]);
+		} catch (NumberFormatException e) {
+		}
+		this.status = status;
+	}
+
+	/**
+	 * Retrieves the HTTP status code of the response
+	 * 
+	 * @return status code, or -1 if the status line could not be parsed
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+}
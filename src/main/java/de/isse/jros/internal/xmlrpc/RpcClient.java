@@ -7,33 +7,50 @@
 
 package de.isse.jros.internal.xmlrpc;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import de.isse.jros.internal.xmlrpc.RpcConnectionPool.Connection;
+
 /**
  * Simple XMLRPC client
  */
 public class RpcClient {
+	/** Maximum size of a response */
+	private static final int MAX_RESPONSE_SIZE = 64 << 20;
 
 	private int port;
 	private String host;
+	private RpcConnectionPool pool;
 
 	/**
-	 * Creates a new XMLRPC client
+	 * Creates a new XMLRPC client, using a new connection for each request
 	 * 
 	 * @param host host name of the communication partner
 	 * @param port port of the communication partner
 	 */
 	public RpcClient(String host, int port) {
+		this(host, port, null);
+	}
+
+	/**
+	 * Creates a new XMLRPC client, keeping connections open in the given pool
+	 * 
+	 * @param host host name of the communication partner
+	 * @param port port of the communication partner
+	 * @param pool pool of keep-alive connections, or null to use a new
+	 *             connection for each request
+	 */
+	public RpcClient(String host, int port, RpcConnectionPool pool) {
 		this.host = host;
 		this.port = port;
+		this.pool = pool;
 	}
 
 	/**
@@ -42,42 +59,84 @@ public class RpcClient {
 	 * @param method request method
 	 * @param params request parameters
 	 * @return XMLRPC response
-	 * @throws IOException if an I/O error occurs
+	 * @throws HttpStatusException if the server answers with an HTTP error
+	 * @throws IOException         if an I/O error occurs
 	 */
 	public Object execute(String method, List<?> params) throws IOException {
-		Socket socket = new Socket(host, port);
-		String request = XmlRpc.formatRequest(method, params);
-		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-		bw.write("POST / HTTP/1.0\n");
-		bw.write("User-Agent: RCC-ROS-Bridge\n");
-		bw.write("Content-Type: text/xml\n");
-		bw.write("Host: " + host + "\n");
-		bw.write("Content-Length: " + request.length() + "\n");
-		bw.write("\n");
-		bw.write(request);
-		bw.flush();
-		BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-		String line = br.readLine().trim();
-		if (line.startsWith("HTTP/") && line.contains("200")) {
-			Map<String, String> headers = new HashMap<String, String>();
-			while (true) {
-				line = br.readLine();
-				if (line.trim().isEmpty())
-					break;
-				String[] parts = line.split(":", 2);
-				headers.put(parts[0].toLowerCase(), parts[1].trim());
+		while (true) {
+			Connection connection = acquire();
+			boolean reusable = false;
+			String line = null;
+			try {
+				XmlRpcWriter request = connection.writer;
+				request.writeRequest(method, params);
+				Http.write(connection.out, "POST / HTTP/1.1",
+						"User-Agent: RCC-ROS-Bridge\r\nContent-Type: text/xml\r\nHost: " + host + "\r\n"
+								+ (pool == null ? "Connection: close\r\n" : ""),
+						request.getBuffer(), request.getLength());
+				line = Http.readLine(connection.in);
+				if (line == null)
+					throw new EOFException("Connection closed by " + host + ":" + port);
+				line = line.trim();
+				Map<String, String> headers = Http.readHeaders(connection.in);
+				byte[] data = Http.readBody(connection.in, headers, MAX_RESPONSE_SIZE);
+				if (!line.startsWith("HTTP/"))
+					throw new IOException(line);
+				if (!line.contains(" 200"))
+					throw new HttpStatusException(line);
+				reusable = Http.isKeepAlive(line.split(" ", 2)[0], headers);
+				return XmlRpc.parseResponse(data, 0, data.length);
+			} catch (EOFException | SocketException e) {
+				// the server may have closed the idle connection before the request
+				// arrived, retry on a new connection
+				if (!connection.reused || line != null)
+					throw e;
+			} finally {
+				connection.writer.reset();
+				release(connection, reusable);
 			}
-			int len = Integer.parseInt(headers.get("content-length"));
-			char[] data = new char[len];
-			for (int pos = 0; pos < len; pos += br.read(data, pos, len - pos))
-				;
-			socket.close();
-			return XmlRpc.parseResponse(new String(data));
-		} else {
-			socket.close();
-			throw new IOException(line);
 		}
+	}
 
+	/**
+	 * Executes several XMLRPC requests in a single round trip using
+	 * system.multicall
+	 * 
+	 * @param calls requests to execute, each given as method name followed by the
+	 *              request parameters
+	 * @return responses of the requests in the same order. The response of a
+	 *         request that failed is its fault struct (with faultCode and
+	 *         faultString).
+	 * @throws IOException                   if an I/O error occurs
+	 * @throws UnsupportedOperationException if the server does not support
+	 *                                       system.multicall
+	 * @throws IllegalArgumentException      if the server answers with another
+	 *                                       fault
+	 */
+	public List<Object> multicall(List<? extends List<?>> calls) throws IOException {
+		List<Object> structs = new ArrayList<Object>();
+		for (List<?> call : calls) {
+			Map<String, Object> struct = new HashMap<String, Object>();
+			struct.put("methodName", call.get(0));
+			struct.put("params", call.subList(1, call.size()));
+			structs.add(struct);
+		}
+		List<?> ret;
+		try {
+			ret = (List<?>) execute("system.multicall", Arrays.asList(structs));
+		} catch (XmlRpcFault e) {
+			if (e.isUnknownMethod("system.multicall"))
+				throw new UnsupportedOperationException(e.getMessage(), e);
+			throw e;
+		}
+		if (ret.size() != calls.size())
+			throw new IOException("Expected " + calls.size() + " multicall responses, got " + ret.size());
+		List<Object> responses = new ArrayList<Object>();
+		for (Object response : ret)
+			responses.add(response instanceof List<?> && ((List<?>) response).size() == 1
+					? ((List<?>) response).get(0)
+					: response);
+		return responses;
 	}
 
 	/**
@@ -88,10 +147,31 @@ public class RpcClient {
 	 * @throws IOException if an I/O error occurs
 	 */
 	public String getLocalHost() throws IOException {
-		Socket s = new Socket(host, port);
-		String ret = s.getLocalAddress().getHostAddress();
-		s.close();
-		return ret;
+		Connection connection = acquire();
+		try {
+			return connection.socket.getLocalAddress().getHostAddress();
+		} finally {
+			release(connection, true);
+		}
+	}
+
+	/**
+	 * Retrieves a connection from the pool, or opens a new one without pool
+	 */
+	private Connection acquire() throws IOException {
+		if (pool == null)
+			return new Connection(host, port);
+		return pool.acquire(host, port);
+	}
+
+	/**
+	 * Returns a connection to the pool, or closes it without pool
+	 */
+	private void release(Connection connection, boolean reusable) {
+		if (pool == null)
+			connection.close();
+		else
+			pool.release(connection, reusable);
 	}
 
 }
@@ -0,0 +1,220 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.xmlrpc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Pool of keep-alive connections to XMLRPC servers, shared by the clients of a
+ * node
+ */
+public class RpcConnectionPool {
+	/** Default number of connections per host */
+	public static final int DEFAULT_MAX_PER_HOST = 16;
+	/** Default time after which idle connections are closed */
+	public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+	private final Map<String, Host> hosts = new HashMap<String, Host>();
+	private final int maxPerHost;
+	private final long idleTimeout;
+	private final int connectTimeout, readTimeout;
+	private boolean closed;
+
+	/**
+	 * Connections to a single host
+	 */
+	private static class Host {
+		private ArrayDeque<Connection> idle = new ArrayDeque<Connection>();
+		private int open;
+	}
+
+	/**
+	 * Connection to an XMLRPC server
+	 */
+	static class Connection {
+		final String host;
+		final int port;
+		final Socket socket;
+		final InputStream in;
+		final OutputStream out;
+		final XmlRpcWriter writer = new XmlRpcWriter();
+		boolean reused;
+		long lastUsed;
+
+		Connection(String host, int port) throws IOException {
+			this(host, port, 0, 0);
+		}
+
+		Connection(String host, int port, int connectTimeout, int readTimeout) throws IOException {
+			this.host = host;
+			this.port = port;
+			this.socket = new Socket();
+			try {
+				this.socket.connect(new InetSocketAddress(host, port), connectTimeout);
+				this.socket.setSoTimeout(readTimeout);
+			} catch (IOException e) {
+				socket.close();
+				throw e;
+			}
+			this.socket.setTcpNoDelay(true);
+			this.in = new BufferedInputStream(socket.getInputStream());
+			this.out = new BufferedOutputStream(socket.getOutputStream());
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Creates a connection pool with default limits
+	 */
+	public RpcConnectionPool() {
+		this(DEFAULT_MAX_PER_HOST, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * Creates a connection pool
+	 * 
+	 * @param maxPerHost  maximum number of connections open to a single host,
+	 *                    further requests wait for a connection to be released
+	 * @param idleTimeout time (in milliseconds) after which idle connections are
+	 *                    closed
+	 */
+	public RpcConnectionPool(int maxPerHost, long idleTimeout) {
+		this(maxPerHost, idleTimeout, 0, 0);
+	}
+
+	/**
+	 * Creates a connection pool with timeouts for unresponsive servers
+	 * 
+	 * @param maxPerHost     maximum number of connections open to a single host,
+	 *                       further requests wait for a connection to be released
+	 * @param idleTimeout    time (in milliseconds) after which idle connections
+	 *                       are closed
+	 * @param connectTimeout time (in milliseconds) to wait for a connection to be
+	 *                       established, or 0 to wait indefinitely
+	 * @param readTimeout    time (in milliseconds) to wait for a response, or 0
+	 *                       to wait indefinitely
+	 */
+	public RpcConnectionPool(int maxPerHost, long idleTimeout, int connectTimeout, int readTimeout) {
+		this.maxPerHost = maxPerHost;
+		this.idleTimeout = idleTimeout;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Retrieves an idle connection to the given server, or opens a new one
+	 * 
+	 * @param host host name of the server
+	 * @param port port of the server
+	 * @return connection to use exclusively until it is released
+	 * @throws IOException if an I/O error occurs
+	 */
+	Connection acquire(String host, int port) throws IOException {
+		String key = host + ":" + port;
+		Host h;
+		synchronized (this) {
+			evictIdle(System.currentTimeMillis());
+			h = hosts.get(key);
+			if (h == null)
+				hosts.put(key, h = new Host());
+			while (true) {
+				Connection connection = h.idle.pollLast();
+				if (connection != null) {
+					connection.reused = true;
+					return connection;
+				}
+				if (h.open < maxPerHost)
+					break;
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for a connection to " + key);
+				}
+			}
+			h.open++;
+		}
+		try {
+			return new Connection(host, port, connectTimeout, readTimeout);
+		} catch (IOException | RuntimeException e) {
+			synchronized (this) {
+				h.open--;
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a connection to the pool
+	 * 
+	 * @param connection connection to return
+	 * @param reusable   true if the connection can be used for further requests,
+	 *                   false to close it
+	 */
+	synchronized void release(Connection connection, boolean reusable) {
+		Host h = hosts.get(connection.host + ":" + connection.port);
+		if (reusable && !closed && h != null) {
+			connection.lastUsed = System.currentTimeMillis();
+			h.idle.addLast(connection);
+		} else {
+			connection.close();
+			if (h != null)
+				h.open--;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Closes connections that have been idle for longer than the idle timeout
+	 */
+	private void evictIdle(long now) {
+		for (Host h : hosts.values()) {
+			for (Iterator<Connection> it = h.idle.iterator(); it.hasNext();) {
+				Connection connection = it.next();
+				if (now - connection.lastUsed > idleTimeout) {
+					it.remove();
+					connection.close();
+					h.open--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes all idle connections, and all other connections once they are
+	 * released
+	 */
+	public synchronized void close() {
+		closed = true;
+		for (Host h : hosts.values()) {
+			for (Connection connection : h.idle)
+				connection.close();
+			h.open -= h.idle.size();
+			h.idle.clear();
+		}
+		notifyAll();
+	}
+
+}
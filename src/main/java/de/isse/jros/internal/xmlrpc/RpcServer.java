@@ -7,22 +7,40 @@
 
 package de.isse.jros.internal.xmlrpc;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.EOFException;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.isse.jros.ServerStatistics;
+import de.isse.jros.Threads;
 
 /**
- * Simple XMLRCP server
+ * Simple XMLRCP server, reading requests with a single selector thread and
+ * handling them in a bounded pool of workers
  */
-public class RpcServer {
+public class RpcServer implements ServerStatistics {
 	/**
 	 * Interface to handle XMLRPC requests
 	 */
@@ -37,10 +55,35 @@ public class RpcServer {
 		List<?> execute(String method, List<?> params);
 	}
 
-	private String ip = "127.0.0.1";
+	/** Default number of worker threads */
+	public static final int DEFAULT_WORKERS = 16;
+	/** Default number of requests waiting for a worker */
+	public static final int DEFAULT_QUEUE_SIZE = 1024;
+	/** Default maximum size of a request */
+	public static final int DEFAULT_MAX_REQUEST_SIZE = 64 << 20;
+
+	/** Time (in milliseconds) after which idle keep-alive connections are closed */
+	private static final int KEEP_ALIVE_TIMEOUT = 60000;
+	/** Maximum size of the request line and headers */
+	private static final int MAX_HEAD_SIZE = 64 << 10;
+	/** Response to requests other than POST */
+	private static final byte[] READY = "XMLRPC sever ready.".getBytes(StandardCharsets.US_ASCII);
+
+	/** Local address of the latest connection (resolved in {@link #getUri()}) */
+	private volatile InetAddress localAddress;
 	private ServerInterface si;
-	private ServerSocket ss;
-	private boolean stopped = true;
+	private ServerSocketChannel ss;
+	private Selector selector;
+	private volatile boolean stopped = true;
+	private ThreadFactory threads;
+	private Thread selectorThread;
+	private ThreadPoolExecutor workers;
+	private int maxRequestSize;
+	private Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	private volatile int openConnections;
+	private long handled, rejected, queueNanos;
+	private int maxQueued;
 
 	/**
 	 * Creates a new XMLRPC server
@@ -50,15 +93,54 @@ public class RpcServer {
 	 * @throws IOException if an I/O error occurs
 	 */
 	public RpcServer(int port, ServerInterface si) throws IOException {
-		ss = new ServerSocket(port);
+		this(port, si, Threads.platform());
+	}
+
+	/**
+	 * Creates a new XMLRPC server
+	 * 
+	 * @param port    local port
+	 * @param si      interface to handle requests
+	 * @param threads factory for the threads accepting and handling requests
+	 * @throws IOException if an I/O error occurs
+	 */
+	public RpcServer(int port, ServerInterface si, ThreadFactory threads) throws IOException {
+		this(port, si, threads, DEFAULT_WORKERS, DEFAULT_QUEUE_SIZE, DEFAULT_MAX_REQUEST_SIZE);
+	}
+
+	/**
+	 * Creates a new XMLRPC server
+	 * 
+	 * @param port           local port
+	 * @param si             interface to handle requests
+	 * @param threads        factory for the threads accepting and handling
+	 *                       requests
+	 * @param workers        maximum number of requests handled concurrently
+	 * @param queueSize      number of requests waiting for a worker, further
+	 *                       requests are answered with 503 Service Unavailable
+	 * @param maxRequestSize maximum size of a request body, larger requests are
+	 *                       answered with 413 Payload Too Large
+	 * @throws IOException if an I/O error occurs
+	 */
+	public RpcServer(int port, ServerInterface si, ThreadFactory threads, int workers, int queueSize,
+			int maxRequestSize) throws IOException {
+		ss = ServerSocketChannel.open();
+		ss.bind(new InetSocketAddress(port));
+		ss.configureBlocking(false);
+		selector = Selector.open();
 		this.si = si;
+		this.threads = threads;
+		this.maxRequestSize = maxRequestSize;
+		this.workers = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(queueSize), threads);
+		this.workers.allowCoreThreadTimeOut(true);
 	}
 
 	/**
 	 * Retrieves the local port
 	 */
 	public int getPort() {
-		return ss.getLocalPort();
+		return ss.socket().getLocalPort();
 	}
 
 	/**
@@ -68,29 +150,61 @@ public class RpcServer {
 	 */
 	public void start() throws IOException {
 		stopped = false;
-		Thread thread = new Thread(new Runnable() {
+		ss.register(selector, SelectionKey.OP_ACCEPT);
+		selectorThread = threads.newThread(new Runnable() {
 			@Override
 			public void run() {
+				long lastSweep = System.currentTimeMillis();
 				while (!stopped) {
 					try {
-						final Socket socket = ss.accept();
-						ip = socket.getLocalAddress().getHostName();
-						new Thread(new Runnable() {
-							@Override
-							public void run() {
-								try {
-									parseRequest(socket);
-								} catch (IOException e) {
-								}
-							}
-						}).start();
+						selector.select(1000);
 					} catch (IOException e) {
+						break;
+					}
+					Runnable task;
+					while ((task = tasks.poll()) != null)
+						task.run();
+					for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext();) {
+						SelectionKey key = it.next();
+						it.remove();
+						if (!key.isValid())
+							continue;
+						if (key.channel() == ss) {
+							accept();
+						} else {
+							Connection connection = (Connection) key.attachment();
+							try {
+								if (key.isReadable())
+									connection.read();
+								else if (key.isWritable())
+									connection.write();
+							} catch (IOException e) {
+								connection.close();
+							}
+						}
+					}
+					long now = System.currentTimeMillis();
+					if (now - lastSweep > 1000) {
+						lastSweep = now;
+						for (SelectionKey key : selector.keys()) {
+							if (key.attachment() instanceof Connection)
+								((Connection) key.attachment()).closeIfIdle(now);
+						}
 					}
 				}
+				for (SelectionKey key : selector.keys()) {
+					if (key.attachment() instanceof Connection)
+						((Connection) key.attachment()).close();
+				}
+				try {
+					ss.close();
+					selector.close();
+				} catch (IOException e) {
+				}
 			}
 		});
-		thread.setDaemon(true);
-		thread.start();
+		selectorThread.setDaemon(true);
+		selectorThread.start();
 	}
 
 	/**
@@ -100,70 +214,301 @@ public class RpcServer {
 	 */
 	public void stop() throws IOException {
 		stopped = true;
-		ss.close();
+		workers.shutdown();
+		if (selectorThread == null) {
+			ss.close();
+			selector.close();
+			return;
+		}
+		selector.wakeup();
+		if (Thread.currentThread() != selectorThread) {
+			try {
+				selectorThread.join(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 	/**
-	 * Parses the request received on a socket, handles it and sends the response
-	 * 
-	 * @param socket socket to handle
-	 * @throws IOException if an I/O error occurs
+	 * Accepts a new connection (in the selector thread)
 	 */
-	private void parseRequest(Socket socket) throws IOException {
-		BufferedReader br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-		String line = br.readLine();
-		if (line == null)
-			throw new EOFException();
-		line = line.trim();
-		if (line.startsWith("POST ")) {
-			Map<String, String> headers = new HashMap<String, String>();
-			while (true) {
-				line = br.readLine();
-				if (line.trim().isEmpty())
-					break;
-				String[] parts = line.split(":", 2);
-				headers.put(parts[0].toLowerCase(), parts[1].trim());
+	private void accept() {
+		try {
+			SocketChannel channel = ss.accept();
+			if (channel == null)
+				return;
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			localAddress = channel.socket().getLocalAddress();
+			Connection connection = new Connection(channel);
+			connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+			openConnections++;
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * Client connection, reading requests and writing responses one at a time
+	 */
+	private class Connection {
+		private SocketChannel channel;
+		private SelectionKey key;
+		private ByteBuffer in = ByteBuffer.allocate(4096);
+		private ByteBuffer[] out;
+		private XmlRpcWriter writer = new XmlRpcWriter();
+		private boolean busy, closeAfterWrite, closed;
+		private long lastActive = System.currentTimeMillis();
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Reads available data and processes complete requests
+		 */
+		void read() throws IOException {
+			if (!in.hasRemaining())
+				in = grow(in, in.capacity() * 2);
+			if (channel.read(in) < 0) {
+				close();
+				return;
+			}
+			lastActive = System.currentTimeMillis();
+			process();
+		}
+
+		/**
+		 * Checks the input buffer for a complete request and hands it to a worker
+		 */
+		void process() throws IOException {
+			if (busy || closed)
+				return;
+			int headEnd = findHeadEnd();
+			if (headEnd < 0) {
+				if (in.position() > MAX_HEAD_SIZE)
+					respond("HTTP/1.1 431 Request Header Fields Too Large", "text/plain", new byte[0], 0, false);
+				return;
+			}
+			ByteArrayInputStream head = new ByteArrayInputStream(in.array(), 0, headEnd);
+			String line = Http.readLine(head).trim();
+			Map<String, String> headers = Http.readHeaders(head);
+			String[] parts = line.split(" ");
+			final String version = parts[parts.length - 1].equals("HTTP/1.1") ? "HTTP/1.1" : "HTTP/1.0";
+			final boolean keepAlive = Http.isKeepAlive(version, headers);
+
+			if (!line.startsWith("POST ")) {
+				consume(headEnd);
+				respond(version + " 200 OK", "text/plain", READY, READY.length, keepAlive);
+				return;
+			}
+			String length = headers.get("content-length");
+			int len;
+			try {
+				len = Integer.parseInt(length);
+			} catch (NumberFormatException e) {
+				respond(version + " 411 Length Required", "text/plain", new byte[0], 0, false);
+				return;
+			}
+			if (len < 0 || len > maxRequestSize) {
+				synchronized (RpcServer.this) {
+					rejected++;
+				}
+				respond(version + " 413 Payload Too Large", "text/plain", new byte[0], 0, false);
+				return;
+			}
+			if (in.position() < headEnd + len) {
+				if (in.capacity() < headEnd + len)
+					in = grow(in, headEnd + len);
+				return;
+			}
+			final byte[] request = Arrays.copyOfRange(in.array(), headEnd, headEnd + len);
+			consume(headEnd + len);
+
+			busy = true;
+			key.interestOps(0);
+			final long submitted = System.nanoTime();
+			try {
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						long start = System.nanoTime();
+						String status = version + " 200 OK";
+						try {
+							handleRequest(request, writer);
+						} catch (RuntimeException e) {
+							Logger.getGlobal().log(Level.WARNING, "XMLRPC request failed", e);
+							writer.reset();
+							status = version + " 500 Internal Server Error";
+						}
+						synchronized (RpcServer.this) {
+							handled++;
+							queueNanos += start - submitted;
+						}
+						final String statusLine = status;
+						execute(new Runnable() {
+							@Override
+							public void run() {
+								try {
+									respond(statusLine, "text/xml", writer.getBuffer(), writer.getLength(), keepAlive);
+								} catch (IOException e) {
+									close();
+								}
+							}
+						});
+					}
+				});
+				synchronized (RpcServer.this) {
+					maxQueued = Math.max(maxQueued, workers.getQueue().size());
+				}
+			} catch (RejectedExecutionException e) {
+				synchronized (RpcServer.this) {
+					rejected++;
+				}
+				respond(version + " 503 Service Unavailable", "text/plain", new byte[0], 0, false);
+			}
+		}
+
+		/**
+		 * Starts sending a response
+		 */
+		void respond(String status, String type, byte[] body, int length, boolean keepAlive) throws IOException {
+			if (closed)
+				return;
+			busy = true;
+			closeAfterWrite = !keepAlive;
+			out = new ByteBuffer[] { ByteBuffer.wrap(Http.head(status,
+					"Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\nContent-Type: " + type + "\r\n",
+					length)), ByteBuffer.wrap(body, 0, length) };
+			write();
+		}
+
+		/**
+		 * Writes pending response data, continuing with the next request when done
+		 */
+		void write() throws IOException {
+			channel.write(out);
+			lastActive = System.currentTimeMillis();
+			if (out[0].hasRemaining() || out[1].hasRemaining()) {
+				key.interestOps(SelectionKey.OP_WRITE);
+				return;
+			}
+			out = null;
+			writer.reset();
+			busy = false;
+			if (closeAfterWrite) {
+				close();
+				return;
+			}
+			key.interestOps(SelectionKey.OP_READ);
+			process();
+		}
+
+		/**
+		 * Finds the end of the request head (after the empty line)
+		 */
+		private int findHeadEnd() {
+			byte[] data = in.array();
+			int end = in.position();
+			for (int i = 0; i < end; i++) {
+				if (data[i] != '\n')
+					continue;
+				if (i + 1 < end && data[i + 1] == '\n')
+					return i + 2;
+				if (i + 2 < end && data[i + 1] == '\r' && data[i + 2] == '\n')
+					return i + 3;
+			}
+			return -1;
+		}
+
+		/**
+		 * Removes a processed request from the input buffer
+		 */
+		private void consume(int len) {
+			in.flip();
+			in.position(len);
+			in.compact();
+		}
+
+		void closeIfIdle(long now) {
+			if (!busy && now - lastActive > KEEP_ALIVE_TIMEOUT)
+				close();
+		}
+
+		void close() {
+			if (closed)
+				return;
+			closed = true;
+			openConnections--;
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
 			}
-			int len = Integer.parseInt(headers.get("content-length"));
-			char[] data = new char[len];
-			for (int pos = 0; pos < len; pos += br.read(data, pos, len - pos))
-				;
-			String response = handleRequest(new String(data));
-
-			BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-			bw.write("HTTP/1.0 200 OK\n");
-			bw.write("Connection: close\n");
-			bw.write("Content-Type: text/xml\n");
-			bw.write("Content-length: " + response.length() + "\n");
-			bw.write("\n");
-			bw.write(response);
-			bw.flush();
-			socket.close();
-		} else {
-			BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-			String response = "XMLRPC sever ready.";
-			bw.write("HTTP/1.0 200 OK\n");
-			bw.write("Connection: close\n");
-			bw.write("Content-Type: text/plain\n");
-			bw.write("Content-length: " + response.length() + "\n");
-			bw.write("\n");
-			bw.write(response);
-			bw.flush();
-			socket.close();
 		}
 	}
 
 	/**
-	 * Handles an XMLRPC request string and returns the response
+	 * Enlarges a buffer, keeping its content
+	 */
+	private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+		ByteBuffer ret = ByteBuffer.allocate(capacity);
+		buffer.flip();
+		ret.put(buffer);
+		return ret;
+	}
+
+	/**
+	 * Runs a task in the selector thread
+	 */
+	private void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Handles an XMLRPC request and serializes the response
 	 * 
-	 * @param request XMLRPC request string
-	 * @return XMLRPC response string
+	 * @param request  UTF-8 encoded XMLRPC request
+	 * @param response writer to serialize the response to
 	 */
-	private String handleRequest(String request) {
-		List<?> rq = XmlRpc.parseRequest(request);
+	private void handleRequest(byte[] request, XmlRpcWriter response) {
+		List<?> rq = XmlRpc.parseRequest(request, 0, request.length);
 		String method = rq.remove(0).toString();
-		List<?> ret = si.execute(method, rq);
-		return XmlRpc.formatResponse(ret);
+		if (method.equals("system.multicall") && rq.size() == 1 && rq.get(0) instanceof List<?>)
+			response.writeResponse(multicall((List<?>) rq.get(0)));
+		else
+			response.writeResponse(si.execute(method, rq));
+	}
+
+	/**
+	 * Executes the requests of a system.multicall request
+	 * 
+	 * @param calls structs containing methodName and params of each request
+	 * @return list containing a single-element array with the response, or a fault
+	 *         struct for each request
+	 */
+	private List<Object> multicall(List<?> calls) {
+		List<Object> ret = new ArrayList<Object>();
+		for (Object call : calls) {
+			try {
+				if (!(call instanceof Map<?, ?>))
+					throw new IllegalArgumentException("Multicall request must be a struct");
+				Object method = ((Map<?, ?>) call).get("methodName");
+				Object params = ((Map<?, ?>) call).get("params");
+				if (!(method instanceof String) || !(params instanceof List<?>))
+					throw new IllegalArgumentException("Multicall request needs methodName and params");
+				if (method.equals("system.multicall"))
+					throw new IllegalArgumentException("Recursive system.multicall forbidden");
+				ret.add(Arrays.asList(si.execute((String) method, new ArrayList<Object>((List<?>) params))));
+			} catch (RuntimeException e) {
+				Map<String, Object> fault = new HashMap<String, Object>();
+				fault.put("faultCode", 1);
+				fault.put("faultString", e.toString());
+				ret.add(fault);
+			}
+		}
+		return ret;
 	}
 
 	/**
@@ -172,6 +517,43 @@ public class RpcServer {
 	 * @return URI of the server
 	 */
 	public String getUri() {
-		return "http://" + ip + ":" + getPort() + "/";
+		InetAddress address = localAddress;
+		String host = address == null ? "127.0.0.1" : address.getHostName();
+		return "http://" + host + ":" + getPort() + "/";
+	}
+
+	@Override
+	public int getOpenConnections() {
+		return openConnections;
+	}
+
+	@Override
+	public int getQueuedRequests() {
+		return workers.getQueue().size();
+	}
+
+	@Override
+	public synchronized int getMaxQueuedRequests() {
+		return maxQueued;
+	}
+
+	@Override
+	public int getActiveRequests() {
+		return workers.getActiveCount();
+	}
+
+	@Override
+	public synchronized long getHandledRequests() {
+		return handled;
+	}
+
+	@Override
+	public synchronized long getRejectedRequests() {
+		return rejected;
+	}
+
+	@Override
+	public synchronized long getAverageQueueNanos() {
+		return handled == 0 ? 0 : queueNanos / handled;
 	}
 }
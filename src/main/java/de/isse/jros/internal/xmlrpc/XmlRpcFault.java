@@ -0,0 +1,68 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.xmlrpc;
+
+import java.util.Locale;
+
+/**
+ * Fault response of an XMLRPC server
+ */
+public class XmlRpcFault extends IllegalArgumentException {
+	private static final long serialVersionUID = 1L;
+
+	/** Fault code for unknown methods (XMLRPC fault code interoperability) */
+	public static final int METHOD_NOT_FOUND = -32601;
+
+	private final Object faultCode;
+	private final String faultString;
+
+	/**
+	 * Creates a fault
+	 * 
+	 * @param faultCode   fault code given by the server
+	 * @param faultString fault string given by the server
+	 */
+	public XmlRpcFault(Object faultCode, String faultString) {
+		super("XMLRPC fault " + faultCode + ": " + faultString);
+		this.faultCode = faultCode;
+		this.faultString = faultString;
+	}
+
+	/**
+	 * Retrieves the fault code given by the server
+	 */
+	public Object getFaultCode() {
+		return faultCode;
+	}
+
+	/**
+	 * Retrieves the fault string given by the server
+	 */
+	public String getFaultString() {
+		return faultString;
+	}
+
+	/**
+	 * Checks whether the server reported the given method as unknown, either
+	 * through the standard fault code or the message of common servers (e.g.
+	 * 'method "system.multicall" is not supported' of the Python ROS master)
+	 * 
+	 * @param method name of the called method
+	 * @return true if the method is not known to the server
+	 */
+	public boolean isUnknownMethod(String method) {
+		if (faultCode instanceof Integer && (Integer) faultCode == METHOD_NOT_FOUND)
+			return true;
+		if (faultString == null || !faultString.contains(method))
+			return false;
+		String text = faultString.toLowerCase(Locale.ROOT);
+		return text.contains("not supported") || text.contains("not found") || text.contains("no such")
+				|| text.contains("unknown");
+	}
+
+}
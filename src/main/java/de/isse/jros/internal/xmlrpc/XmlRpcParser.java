@@ -0,0 +1,430 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.xmlrpc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-pass XMLRPC parser working directly on the UTF-8 encoded bytes of a
+ * request or response
+ */
+class XmlRpcParser {
+	private static final byte[] METHOD_CALL = tag("methodCall");
+	private static final byte[] METHOD_NAME = tag("methodName");
+	private static final byte[] METHOD_RESPONSE = tag("methodResponse");
+	private static final byte[] PARAMS = tag("params");
+	private static final byte[] PARAM = tag("param");
+	private static final byte[] FAULT = tag("fault");
+	private static final byte[] VALUE = tag("value");
+	private static final byte[] I4 = tag("i4");
+	private static final byte[] INT = tag("int");
+	private static final byte[] I8 = tag("i8");
+	private static final byte[] BOOLEAN = tag("boolean");
+	private static final byte[] DOUBLE = tag("double");
+	private static final byte[] STRING = tag("string");
+	private static final byte[] BASE64 = tag("base64");
+	private static final byte[] DATE_TIME = tag("dateTime.iso8601");
+	private static final byte[] NIL = tag("nil");
+	private static final byte[] ARRAY = tag("array");
+	private static final byte[] DATA = tag("data");
+	private static final byte[] STRUCT = tag("struct");
+	private static final byte[] MEMBER = tag("member");
+	private static final byte[] NAME = tag("name");
+
+	private final byte[] data;
+	private final int end;
+	private int pos;
+
+	/** Name of the last tag read */
+	private int nameStart, nameEnd;
+	/** Flags of the last tag read: closing tag (</tag>), empty tag (<tag/>) */
+	private boolean closing, empty;
+
+	/**
+	 * Creates a parser
+	 * 
+	 * @param data   buffer containing the UTF-8 encoded document
+	 * @param offset start of the document in the buffer
+	 * @param length length of the document
+	 */
+	XmlRpcParser(byte[] data, int offset, int length) {
+		this.data = data;
+		this.pos = offset;
+		this.end = offset + length;
+	}
+
+	private static byte[] tag(String name) {
+		return name.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Parses an XMLRPC request
+	 * 
+	 * @return method name followed by the request parameters
+	 */
+	List<Object> parseRequest() {
+		List<Object> ret = new ArrayList<Object>();
+		expectOpen(METHOD_CALL);
+		expectOpen(METHOD_NAME);
+		ret.add(readText());
+		expectClose(METHOD_NAME);
+		readTag();
+		if (!closing && is(PARAMS)) {
+			if (!empty) {
+				while (true) {
+					readTag();
+					if (closing && is(PARAMS))
+						break;
+					if (closing || !is(PARAM))
+						throw unexpected("<param>");
+					expectOpen(VALUE);
+					ret.add(readValue());
+					expectClose(PARAM);
+				}
+			}
+			readTag();
+		}
+		if (!closing || !is(METHOD_CALL))
+			throw unexpected("</methodCall>");
+		return ret;
+	}
+
+	/**
+	 * Parses an XMLRPC response
+	 * 
+	 * @return response value
+	 * @throws XmlRpcFault if the response is a fault
+	 */
+	Object parseResponse() {
+		expectOpen(METHOD_RESPONSE);
+		readTag();
+		if (!closing && is(PARAMS)) {
+			expectOpen(PARAM);
+			expectOpen(VALUE);
+			Object ret = readValue();
+			expectClose(PARAM);
+			expectClose(PARAMS);
+			return ret;
+		} else if (!closing && is(FAULT)) {
+			expectOpen(VALUE);
+			Object fault = readValue();
+			if (fault instanceof Map<?, ?>) {
+				Map<?, ?> map = (Map<?, ?>) fault;
+				throw new XmlRpcFault(map.get("faultCode"), String.valueOf(map.get("faultString")));
+			}
+			throw new XmlRpcFault(null, String.valueOf(fault));
+		}
+		throw unexpected("<params> or <fault>");
+	}
+
+	/**
+	 * Reads a value after its opening tag, including the closing tag
+	 */
+	private Object readValue() {
+		if (empty)
+			return "";
+		int start = pos;
+		skipText();
+		int textEnd = pos;
+		readTag();
+		if (closing && is(VALUE))
+			return decode(start, textEnd);
+		for (int i = start; i < textEnd; i++) {
+			if (!isWhitespace(data[i]))
+				throw new IllegalArgumentException("Unexpected text before <" + name() + ">");
+		}
+		if (closing)
+			throw unexpected("type or </value>");
+
+		Object ret;
+		if (is(STRUCT)) {
+			ret = readStruct();
+		} else if (is(ARRAY)) {
+			ret = readArray();
+		} else if (is(NIL)) {
+			if (!empty)
+				expectClose(NIL);
+			ret = null;
+		} else {
+			byte[] type = typeTag();
+			int valueStart = pos;
+			if (!empty) {
+				skipText();
+				int valueEnd = pos;
+				expectClose(type);
+				ret = scalar(type, valueStart, valueEnd);
+			} else {
+				ret = scalar(type, valueStart, valueStart);
+			}
+		}
+		expectClose(VALUE);
+		return ret;
+	}
+
+	/**
+	 * Retrieves the constant for the scalar type tag just read
+	 */
+	private byte[] typeTag() {
+		byte[][] types = { STRING, INT, I4, BOOLEAN, DOUBLE, BASE64, DATE_TIME, I8 };
+		for (byte[] type : types) {
+			if (is(type))
+				return type;
+		}
+		throw new IllegalArgumentException("Unsupported type <" + name() + ">");
+	}
+
+	/**
+	 * Converts the content of a scalar value
+	 */
+	private Object scalar(byte[] type, int start, int end) {
+		if (type == STRING)
+			return decode(start, end);
+		if (type == BASE64)
+			return decodeBase64(start, end);
+		String text = decode(start, end).trim();
+		try {
+			if (type == INT || type == I4)
+				return text.isEmpty() ? 0 : Integer.parseInt(text);
+			if (type == I8)
+				return text.isEmpty() ? 0L : Long.parseLong(text);
+			if (type == DOUBLE)
+				return text.isEmpty() ? 0.0 : Double.parseDouble(text);
+			if (type == BOOLEAN) {
+				if (text.equals("1") || text.equalsIgnoreCase("true"))
+					return true;
+				if (text.equals("0") || text.equalsIgnoreCase("false") || text.isEmpty())
+					return false;
+				throw new IllegalArgumentException("Invalid boolean " + text);
+			}
+			return new SimpleDateFormat(text.contains("-") ? "yyyy-MM-dd'T'HH:mm:ss" : "yyyyMMdd'T'HH:mm:ss")
+					.parse(text);
+		} catch (NumberFormatException | ParseException e) {
+			throw new IllegalArgumentException("Invalid <" + new String(type, StandardCharsets.US_ASCII) + "> "
+					+ text);
+		}
+	}
+
+	private byte[] decodeBase64(int start, int end) {
+		ByteBuffer decoded = Base64.getMimeDecoder().decode(ByteBuffer.wrap(data, start, end - start));
+		byte[] ret = new byte[decoded.remaining()];
+		decoded.get(ret);
+		return ret;
+	}
+
+	private List<Object> readArray() {
+		List<Object> ret = new ArrayList<Object>();
+		if (empty)
+			return ret;
+		expectOpen(DATA);
+		if (!empty) {
+			while (true) {
+				readTag();
+				if (closing && is(DATA))
+					break;
+				if (closing || !is(VALUE))
+					throw unexpected("<value>");
+				ret.add(readValue());
+			}
+		}
+		expectClose(ARRAY);
+		return ret;
+	}
+
+	private Map<String, Object> readStruct() {
+		Map<String, Object> ret = new HashMap<String, Object>();
+		if (empty)
+			return ret;
+		while (true) {
+			readTag();
+			if (closing && is(STRUCT))
+				return ret;
+			if (closing || !is(MEMBER))
+				throw unexpected("<member>");
+			expectOpen(NAME);
+			String name = empty ? "" : readText();
+			if (!empty)
+				expectClose(NAME);
+			expectOpen(VALUE);
+			ret.put(name, readValue());
+			expectClose(MEMBER);
+		}
+	}
+
+	/**
+	 * Reads text up to the next tag, resolving entities
+	 */
+	private String readText() {
+		int start = pos;
+		skipText();
+		return decode(start, pos);
+	}
+
+	private void skipText() {
+		while (pos < end && data[pos] != '<')
+			pos++;
+		if (pos == end)
+			throw new IllegalArgumentException("Unexpected end of document");
+	}
+
+	/**
+	 * Reads the next tag, skipping white space, the XML declaration, processing
+	 * instructions and comments
+	 */
+	private void readTag() {
+		while (true) {
+			while (pos < end && isWhitespace(data[pos]))
+				pos++;
+			if (pos >= end)
+				throw new IllegalArgumentException("Unexpected end of document");
+			if (data[pos] != '<')
+				throw new IllegalArgumentException("Unexpected text at offset " + pos);
+			pos++;
+			if (pos < end && data[pos] == '?') {
+				skipPast("?>");
+			} else if (pos < end && data[pos] == '!') {
+				skipPast(pos + 2 < end && data[pos + 1] == '-' && data[pos + 2] == '-' ? "-->" : ">");
+			} else {
+				break;
+			}
+		}
+		closing = pos < end && data[pos] == '/';
+		if (closing)
+			pos++;
+		nameStart = pos;
+		while (pos < end && data[pos] != '>' && data[pos] != '/' && !isWhitespace(data[pos]))
+			pos++;
+		nameEnd = pos;
+		// skip attributes
+		while (pos < end && data[pos] != '>')
+			pos++;
+		if (pos >= end)
+			throw new IllegalArgumentException("Unexpected end of document");
+		empty = data[pos - 1] == '/';
+		pos++;
+	}
+
+	private void skipPast(String terminator) {
+		byte first = (byte) terminator.charAt(0);
+		for (; pos + terminator.length() <= end; pos++) {
+			if (data[pos] != first)
+				continue;
+			int i = 1;
+			while (i < terminator.length() && data[pos + i] == terminator.charAt(i))
+				i++;
+			if (i == terminator.length()) {
+				pos += i;
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Unexpected end of document");
+	}
+
+	private void expectOpen(byte[] name) {
+		readTag();
+		if (closing || !is(name))
+			throw unexpected("<" + new String(name, StandardCharsets.US_ASCII) + ">");
+	}
+
+	private void expectClose(byte[] name) {
+		readTag();
+		if (!closing || !is(name))
+			throw unexpected("</" + new String(name, StandardCharsets.US_ASCII) + ">");
+	}
+
+	/**
+	 * Checks whether the last tag read has the given name
+	 */
+	private boolean is(byte[] name) {
+		if (nameEnd - nameStart != name.length)
+			return false;
+		for (int i = 0; i < name.length; i++) {
+			if (data[nameStart + i] != name[i])
+				return false;
+		}
+		return true;
+	}
+
+	private String name() {
+		return new String(data, nameStart, nameEnd - nameStart, StandardCharsets.UTF_8);
+	}
+
+	private IllegalArgumentException unexpected(String expected) {
+		return new IllegalArgumentException(
+				"Unexpected token <" + (closing ? "/" : "") + name() + ">, expected " + expected);
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+	}
+
+	/**
+	 * Decodes UTF-8 text, resolving character and entity references
+	 */
+	private String decode(int start, int end) {
+		int amp = start;
+		while (amp < end && data[amp] != '&')
+			amp++;
+		if (amp == end)
+			return new String(data, start, end - start, StandardCharsets.UTF_8);
+
+		StringBuilder ret = new StringBuilder(end - start);
+		int pos = start;
+		while (pos < end) {
+			if (amp > pos)
+				ret.append(new String(data, pos, amp - pos, StandardCharsets.UTF_8));
+			if (amp == end)
+				break;
+			int semicolon = amp + 1;
+			while (semicolon < end && data[semicolon] != ';')
+				semicolon++;
+			if (semicolon == end)
+				throw new IllegalArgumentException("Unterminated entity at offset " + amp);
+			String entity = new String(data, amp + 1, semicolon - amp - 1, StandardCharsets.US_ASCII);
+			if (entity.equals("lt"))
+				ret.append('<');
+			else if (entity.equals("gt"))
+				ret.append('>');
+			else if (entity.equals("amp"))
+				ret.append('&');
+			else if (entity.equals("quot"))
+				ret.append('"');
+			else if (entity.equals("apos"))
+				ret.append('\'');
+			else if (entity.startsWith("#x") || entity.startsWith("#X"))
+				ret.appendCodePoint(codePoint(entity.substring(2), 16));
+			else if (entity.startsWith("#"))
+				ret.appendCodePoint(codePoint(entity.substring(1), 10));
+			else
+				throw new IllegalArgumentException("Unknown entity &" + entity + ";");
+			pos = semicolon + 1;
+			amp = pos;
+			while (amp < end && data[amp] != '&')
+				amp++;
+		}
+		return ret.toString();
+	}
+
+	private static int codePoint(String number, int radix) {
+		try {
+			int ret = Integer.parseInt(number, radix);
+			if (Character.isValidCodePoint(ret))
+				return ret;
+		} catch (NumberFormatException e) {
+		}
+		throw new IllegalArgumentException("Invalid character reference " + number);
+	}
+
+}
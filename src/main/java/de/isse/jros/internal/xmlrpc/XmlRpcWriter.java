@@ -0,0 +1,227 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.xmlrpc;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * XMLRPC serializer encoding requests and responses as UTF-8 into a reusable
+ * buffer. A writer is not thread safe, its content stays valid until it is
+ * reset.
+ */
+class XmlRpcWriter {
+	private static final int MAX_RETAINED = 1 << 20;
+
+	private byte[] buffer = new byte[4096];
+	private int length;
+
+	/**
+	 * Discards the content, shrinking the buffer if a large document was written
+	 */
+	void reset() {
+		length = 0;
+		if (buffer.length > MAX_RETAINED)
+			buffer = new byte[4096];
+	}
+
+	/**
+	 * Retrieves the buffer containing the document, starting at position 0
+	 */
+	byte[] getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Retrieves the length of the document in bytes
+	 */
+	int getLength() {
+		return length;
+	}
+
+	/**
+	 * Writes an XMLRPC request
+	 * 
+	 * @param method request method
+	 * @param params request parameters
+	 */
+	void writeRequest(String method, List<?> params) {
+		reset();
+		ascii("<?xml version='1.0'?><methodCall><methodName>");
+		text(method);
+		ascii("</methodName><params>");
+		for (Object p : params) {
+			ascii("<param><value>");
+			value(p);
+			ascii("</value></param>");
+		}
+		ascii("</params></methodCall>");
+	}
+
+	/**
+	 * Writes an XMLRPC response
+	 * 
+	 * @param params response parameters
+	 */
+	void writeResponse(Object params) {
+		reset();
+		ascii("<?xml version='1.0'?><methodResponse><params><param><value>");
+		value(params);
+		ascii("</value></param></params></methodResponse>");
+	}
+
+	/**
+	 * Writes an XMLRPC value (without the surrounding value tags)
+	 */
+	private void value(Object p) {
+		if (p instanceof String) {
+			ascii("<string>");
+			text((String) p);
+			ascii("</string>");
+		} else if (p instanceof Integer) {
+			ascii("<int>");
+			number((Integer) p);
+			ascii("</int>");
+		} else if (p instanceof Long) {
+			ascii("<i8>");
+			number((Long) p);
+			ascii("</i8>");
+		} else if (p instanceof Boolean) {
+			ascii((Boolean) p ? "<boolean>1</boolean>" : "<boolean>0</boolean>");
+		} else if (p instanceof Double || p instanceof Float) {
+			ascii("<double>");
+			ascii(p.toString());
+			ascii("</double>");
+		} else if (p instanceof byte[]) {
+			ascii("<base64>");
+			byte[] encoded = Base64.getEncoder().encode((byte[]) p);
+			ensure(encoded.length);
+			System.arraycopy(encoded, 0, buffer, length, encoded.length);
+			length += encoded.length;
+			ascii("</base64>");
+		} else if (p instanceof Date) {
+			ascii("<dateTime.iso8601>");
+			ascii(new SimpleDateFormat("yyyyMMdd'T'HH:mm:ss").format((Date) p));
+			ascii("</dateTime.iso8601>");
+		} else if (p instanceof List<?>) {
+			ascii("<array><data>");
+			for (Object c : (List<?>) p) {
+				ascii("<value>");
+				value(c);
+				ascii("</value>");
+			}
+			ascii("</data></array>");
+		} else if (p instanceof Map<?, ?>) {
+			ascii("<struct>");
+			for (Map.Entry<?, ?> e : ((Map<?, ?>) p).entrySet()) {
+				ascii("<member><name>");
+				text(String.valueOf(e.getKey()));
+				ascii("</name><value>");
+				value(e.getValue());
+				ascii("</value></member>");
+			}
+			ascii("</struct>");
+		} else if (p != null) {
+			throw new IllegalArgumentException("Unsupported XMLRPC type " + p.getClass().getName());
+		}
+	}
+
+	private void ensure(int len) {
+		if (length + len > buffer.length)
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + len));
+	}
+
+	/**
+	 * Appends markup or other text known to consist of ASCII characters only
+	 */
+	private void ascii(String s) {
+		int len = s.length();
+		ensure(len);
+		for (int i = 0; i < len; i++)
+			buffer[length++] = (byte) s.charAt(i);
+	}
+
+	/**
+	 * Appends a decimal number
+	 */
+	private void number(long value) {
+		ensure(20);
+		if (value < 0) {
+			buffer[length++] = '-';
+		} else {
+			value = -value;
+		}
+		// digits are computed on the negative value to cover Long.MIN_VALUE
+		int start = length;
+		do {
+			buffer[length++] = (byte) ('0' - (value % 10));
+			value /= 10;
+		} while (value != 0);
+		for (int i = start, j = length - 1; i < j; i++, j--) {
+			byte b = buffer[i];
+			buffer[i] = buffer[j];
+			buffer[j] = b;
+		}
+	}
+
+	/**
+	 * Appends text as UTF-8, escaping markup characters
+	 */
+	private void text(String s) {
+		int len = s.length();
+		// worst case: three bytes per char, or five for &amp;
+		ensure(len * 5);
+		byte[] buffer = this.buffer;
+		int pos = length;
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				if (c == '<') {
+					buffer[pos++] = '&';
+					buffer[pos++] = 'l';
+					buffer[pos++] = 't';
+					buffer[pos++] = ';';
+				} else if (c == '>') {
+					buffer[pos++] = '&';
+					buffer[pos++] = 'g';
+					buffer[pos++] = 't';
+					buffer[pos++] = ';';
+				} else if (c == '&') {
+					buffer[pos++] = '&';
+					buffer[pos++] = 'a';
+					buffer[pos++] = 'm';
+					buffer[pos++] = 'p';
+					buffer[pos++] = ';';
+				} else {
+					buffer[pos++] = (byte) c;
+				}
+			} else if (c < 0x800) {
+				buffer[pos++] = (byte) (0xc0 | (c >> 6));
+				buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				buffer[pos++] = (byte) (0xf0 | (cp >> 18));
+				buffer[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+				buffer[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+				buffer[pos++] = (byte) (0x80 | (cp & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				buffer[pos++] = '?';
+			} else {
+				buffer[pos++] = (byte) (0xe0 | (c >> 12));
+				buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		length = pos;
+	}
+
+}
@@ -0,0 +1,261 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.types;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sequential writer creating a ROS binary message for a given struct type. The
+ * (leaf) fields are appended in the order of the type definition, descending
+ * into nested structs and fixed size arrays automatically; variable size arrays
+ * are started with {@link #beginArray(int)}, followed by their elements. Each
+ * value is checked against the expected field type.
+ *
+ * The message is built in a growing buffer, so that no bytes have to be moved
+ * when writing strings or arrays, and the message size need not be known in
+ * advance.
+ */
+public class MessageWriter {
+	/** Default initial buffer size */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/**
+	 * Struct or array currently being written
+	 */
+	private static class Frame {
+		final ROSType<?> type;
+		final String name;
+		final List<String> fields;
+		final int count;
+		int index;
+
+		Frame(ROSType<?> type, String name, int count) {
+			this.type = type;
+			this.name = name;
+			this.fields = type instanceof ROSstruct ? ((ROSstruct) type).getFieldNames() : null;
+			this.count = fields != null ? fields.size() : count;
+		}
+
+		ROSType<?> next() {
+			if (fields != null)
+				return ((ROSstruct) type).getFieldType(fields.get(index));
+			else if (type instanceof ROSarray)
+				return ((ROSarray) type).getPrototype();
+			else
+				return ((ROSfixedArray) type).getPrototype();
+		}
+
+		String nameOf(int index) {
+			return fields != null ? fields.get(index) : String.valueOf(index);
+		}
+	}
+
+	private byte[] data;
+	private int size;
+	private List<Frame> frames = new ArrayList<Frame>();
+
+	/**
+	 * Creates a writer for a message
+	 * 
+	 * @param type message type
+	 */
+	public MessageWriter(ROSstruct type) {
+		this(type, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a writer for a message
+	 * 
+	 * @param type     message type
+	 * @param capacity initial buffer size (in bytes)
+	 */
+	public MessageWriter(ROSstruct type, int capacity) {
+		int fixed = type.getFixedSize();
+		this.data = new byte[fixed >= 0 ? fixed : Math.max(capacity, 16)];
+		frames.add(new Frame(type, null, 0));
+	}
+
+	/**
+	 * Retrieves the type of the next field to write, descending into structs and
+	 * fixed size arrays
+	 * 
+	 * @return type of the next field, or null if the message is complete
+	 */
+	public ROSType<?> getNextType() {
+		while (!frames.isEmpty()) {
+			Frame top = frames.get(frames.size() - 1);
+			if (top.index == top.count) {
+				frames.remove(frames.size() - 1);
+				continue;
+			}
+			ROSType<?> next = top.next();
+			if (next instanceof ROSstruct || next instanceof ROSfixedArray) {
+				int count = next instanceof ROSfixedArray ? ((ROSfixedArray) next).getSize() : 0;
+				frames.add(new Frame(next, top.nameOf(top.index++), count));
+				continue;
+			}
+			return next;
+		}
+		return null;
+	}
+
+	/**
+	 * Retrieves the path of the next field to write (for error messages)
+	 */
+	private String getNextField() {
+		StringBuilder ret = new StringBuilder();
+		for (Frame frame : frames) {
+			if (frame.name != null)
+				ret.append(frame.name).append(".");
+		}
+		Frame top = frames.get(frames.size() - 1);
+		return ret.append(top.nameOf(top.index)).toString();
+	}
+
+	/**
+	 * Checks that the next field has one of the given types, and advances past it
+	 */
+	private ROSType<?> expect(String value, Class<?>... types) {
+		ROSType<?> next = getNextType();
+		if (next == null)
+			throw new IllegalArgumentException("Message is complete, cannot write " + value);
+		for (Class<?> type : types) {
+			if (type.isInstance(next)) {
+				frames.get(frames.size() - 1).index++;
+				return next;
+			}
+		}
+		throw new IllegalArgumentException(
+				"Field " + getNextField() + " has type " + next.getName() + ", cannot write " + value);
+	}
+
+	/**
+	 * Makes room for the given number of bytes at the end of the message
+	 */
+	private void ensureCapacity(int bytes) {
+		if (size + bytes > data.length)
+			data = Arrays.copyOf(data, Math.max(data.length * 2, size + bytes));
+	}
+
+	/**
+	 * Appends a value with a fixed size
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> MessageWriter append(ROSType<?> type, T value) {
+		int bytes = type.getFixedSize();
+		ensureCapacity(bytes);
+		((ROSType<T>) type).write(data, size, value);
+		size += bytes;
+		return this;
+	}
+
+	/**
+	 * Writes the next field, which must be a string
+	 * 
+	 * @param value value of the field
+	 * @return this writer
+	 */
+	public MessageWriter writeString(String value) {
+		expect("a string", ROSstring.class);
+		byte[] bs = value.getBytes(StandardCharsets.UTF_8);
+		ensureCapacity(4 + bs.length);
+		ROSint32.TYPE.write(data, size, (long) bs.length);
+		System.arraycopy(bs, 0, data, size + 4, bs.length);
+		size += 4 + bs.length;
+		return this;
+	}
+
+	/**
+	 * Writes the next field, which must be a bool
+	 * 
+	 * @param value value of the field
+	 * @return this writer
+	 */
+	public MessageWriter writeBoolean(boolean value) {
+		return append(expect("a boolean", ROSbool.class), value);
+	}
+
+	/**
+	 * Writes the next field, which must be an integer type
+	 * 
+	 * @param value value of the field
+	 * @return this writer
+	 */
+	public MessageWriter writeInteger(long value) {
+		return append(expect("an integer", ROSint8.class, ROSint16.class, ROSint32.class, ROSint64.class,
+				ROSuint8.class, ROSuint16.class, ROSuint32.class, ROSuint64.class), value);
+	}
+
+	/**
+	 * Writes the next field, which must be a floating point type
+	 * 
+	 * @param value value of the field
+	 * @return this writer
+	 */
+	public MessageWriter writeFloat(double value) {
+		return append(expect("a float", ROSfloat32.class, ROSfloat64.class), value);
+	}
+
+	/**
+	 * Writes the next field, which must be a time or duration
+	 * 
+	 * @param sec  seconds
+	 * @param nsec nanoseconds
+	 * @return this writer
+	 */
+	public MessageWriter writeTime(int sec, int nsec) {
+		return append(expect("a time", ROStime.class, ROSduration.class), new int[] { sec, nsec });
+	}
+
+	/**
+	 * Starts the next field, which must be a variable size array. The elements
+	 * have to be written next.
+	 * 
+	 * @param length number of elements
+	 * @return this writer
+	 */
+	public MessageWriter beginArray(int length) {
+		if (length < 0)
+			throw new IllegalArgumentException("Invalid array length " + length);
+		ROSType<?> array = expect("an array", ROSarray.class);
+		Frame top = frames.get(frames.size() - 1);
+		append(ROSint32.TYPE, (long) length);
+		frames.add(new Frame(array, top.nameOf(top.index - 1), length));
+		return this;
+	}
+
+	/**
+	 * Retrieves the number of bytes written so far
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Checks whether all fields have been written
+	 */
+	public boolean isComplete() {
+		return getNextType() == null;
+	}
+
+	/**
+	 * Retrieves the written message
+	 * 
+	 * @return ROS binary message (of exactly the written size)
+	 * @throws IllegalArgumentException if not all fields have been written
+	 */
+	public byte[] toByteArray() {
+		if (!isComplete())
+			throw new IllegalArgumentException("Field " + getNextField() + " has not been written");
+		return size == data.length ? data : Arrays.copyOf(data, size);
+	}
+
+}
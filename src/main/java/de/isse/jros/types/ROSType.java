@@ -7,12 +7,26 @@
 
 package de.isse.jros.types;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
 /**
  * Description of a ROS data type (immutable)
  * 
  * @param <T> Corresponding Java type
  */
 public abstract class ROSType<T> {
+	/** Marker for a fixed size that has not been computed yet */
+	static final int UNKNOWN_SIZE = -2;
+
+	/** Little-endian access to 16-bit values in a binary message */
+	static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	/** Little-endian access to 32-bit values in a binary message */
+	static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	/** Little-endian access to 64-bit values in a binary message */
+	static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
 
 	/**
 	 * Retrieves the name of the type
@@ -42,12 +56,9 @@ public abstract class ROSType<T> {
 	 * @param amount number of bytes to move the right part to the left
 	 */
 	protected void moveBytesLeft(byte[] data, int start, int amount) {
-		for (int i = start; i < data.length - amount; i++) {
-			data[i] = data[i + amount];
-		}
-		for (int i = data.length - amount; i < data.length; i++) {
-			data[i] = 0;
-		}
+		if (data.length - amount > start)
+			System.arraycopy(data, start + amount, data, start, data.length - amount - start);
+		Arrays.fill(data, data.length - amount, data.length, (byte) 0);
 	}
 
 	/**
@@ -59,12 +70,9 @@ public abstract class ROSType<T> {
 	 * @param amount number of bytes to move the right part to the right
 	 */
 	protected void moveBytesRight(byte[] data, int start, int amount) {
-		for (int i = data.length - 1; i >= start + amount; i--) {
-			data[i] = data[i - amount];
-		}
-		for (int i = start; i < start + amount; i++) {
-			data[i] = 0;
-		}
+		if (data.length - amount > start)
+			System.arraycopy(data, start, data, start + amount, data.length - amount - start);
+		Arrays.fill(data, start, start + amount, (byte) 0);
 	}
 
 	/**
@@ -75,9 +83,7 @@ public abstract class ROSType<T> {
 	 * @param newData data to copy into the array
 	 */
 	protected void overwriteBytes(byte[] data, int start, byte[] newData) {
-		for (int i = 0; i < newData.length; i++) {
-			data[i + start] = newData[i];
-		}
+		System.arraycopy(newData, 0, data, start, newData.length);
 	}
 
 	/**
@@ -99,6 +105,17 @@ public abstract class ROSType<T> {
 	 */
 	public abstract int skip(byte[] data, int position);
 
+	/**
+	 * Retrieves the size of the binary representation of this type, if it does
+	 * not depend on the value (i.e. the type contains no strings or variable size
+	 * arrays)
+	 * 
+	 * @return size in bytes, or -1 if the size depends on the value
+	 */
+	public int getFixedSize() {
+		return -1;
+	}
+
 	/**
 	 * Writes the given Java value into the ROS message binary representation
 	 * 
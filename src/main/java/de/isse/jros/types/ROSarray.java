@@ -56,6 +56,9 @@ public class ROSarray extends ROSType<Integer> {
 	public int skipToIndex(int index, byte[] data, int position) {
 		int len = read(data, position);
 		position += 4;
+		int element = prototype.getFixedSize();
+		if (element >= 0)
+			return index >= 0 && index < len ? position + index * element : -1;
 		for (int i = 0; i < len; i++) {
 			if (i == index) {
 				return position;
@@ -78,11 +81,16 @@ public class ROSarray extends ROSType<Integer> {
 
 		int end = skip(data, position);
 		int newend = ROSint32.TYPE.skip(data, position);
-		for (int i = 0; i < value; i++) {
-			if (i <= size)
-				newend = prototype.skip(data, newend);
-			else
-				newend = prototype.skip(null, newend);
+		int element = prototype.getFixedSize();
+		if (element >= 0) {
+			newend += value * element;
+		} else {
+			for (int i = 0; i < value; i++) {
+				if (i <= size)
+					newend = prototype.skip(data, newend);
+				else
+					newend = prototype.skip(null, newend);
+			}
 		}
 
 		if (newend > end)
@@ -98,6 +106,9 @@ public class ROSarray extends ROSType<Integer> {
 			return position + 4;
 		int len = read(data, position);
 		position += 4;
+		int element = prototype.getFixedSize();
+		if (element >= 0)
+			return position + len * element;
 		for (int i = 0; i < len; i++)
 			position = prototype.skip(data, position);
 		return position;
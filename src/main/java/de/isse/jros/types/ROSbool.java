@@ -42,6 +42,11 @@ public class ROSbool extends ROSType<Boolean> {
 		data[position] = (byte) (value ? 1 : 0);
 	}
 
+	@Override
+	public int getFixedSize() {
+		return 1;
+	}
+
 	@Override
 	public int skip(byte[] data, int position) {
 		return position + 1;
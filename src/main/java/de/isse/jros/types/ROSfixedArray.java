@@ -15,6 +15,8 @@ public class ROSfixedArray extends ROSType<Void> {
 	private ROSType<?> prototype;
 	/** The array size */
 	int size;
+	/** Cached fixed size, computed on first use */
+	private int fixedSize = UNKNOWN_SIZE;
 
 	@Override
 	public String getName() {
@@ -65,8 +67,21 @@ public class ROSfixedArray extends ROSType<Void> {
 	public void write(byte[] data, int position, Void value) {
 	}
 
+	@Override
+	public int getFixedSize() {
+		int ret = fixedSize;
+		if (ret == UNKNOWN_SIZE) {
+			int element = prototype.getFixedSize();
+			ret = fixedSize = element < 0 ? -1 : element * size;
+		}
+		return ret;
+	}
+
 	@Override
 	public int skip(byte[] data, int position) {
+		int fixed = getFixedSize();
+		if (fixed >= 0)
+			return position + fixed;
 		for (int i = 0; i < getSize(); i++)
 			position = prototype.skip(data, position);
 		return position;
@@ -81,6 +96,9 @@ public class ROSfixedArray extends ROSType<Void> {
 	 * @return position of the element with the given index
 	 */
 	public int skipToIndex(int index, byte[] data, int position) {
+		int element = prototype.getFixedSize();
+		if (element >= 0)
+			return index >= 0 && index < size ? position + index * element : -1;
 		for (int i = 0; i < size; i++) {
 			if (i == index) {
 				return position;
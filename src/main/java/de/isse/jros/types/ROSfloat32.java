@@ -7,8 +7,6 @@
 
 package de.isse.jros.types;
 
-import java.nio.ByteBuffer;
-
 /**
  * A ROS float32 type
  */
@@ -36,7 +34,7 @@ public class ROSfloat32 extends ROSType<Double> {
 
 	@Override
 	public Double read(byte[] data, int position) {
-		return (double) Float.intBitsToFloat(Integer.reverseBytes(ByteBuffer.wrap(data, position, 4).getInt()));
+		return (double) Float.intBitsToFloat((int) INT.get(data, position));
 	}
 
 	/**
@@ -52,7 +50,12 @@ public class ROSfloat32 extends ROSType<Double> {
 
 	@Override
 	public void write(byte[] data, int position, Double value) {
-		ByteBuffer.wrap(data, position, 4).putInt(Integer.reverseBytes(Float.floatToIntBits(value.floatValue())));
+		INT.set(data, position, Float.floatToIntBits(value.floatValue()));
+	}
+
+	@Override
+	public int getFixedSize() {
+		return 4;
 	}
 
 	@Override
@@ -7,8 +7,6 @@
 
 package de.isse.jros.types;
 
-import java.nio.ByteBuffer;
-
 /**
  * A ROS float64 type
  */
@@ -36,12 +34,17 @@ public class ROSfloat64 extends ROSType<Double> {
 
 	@Override
 	public Double read(byte[] data, int position) {
-		return Double.longBitsToDouble(Long.reverseBytes(ByteBuffer.wrap(data, position, 8).getLong()));
+		return Double.longBitsToDouble((long) LONG.get(data, position));
 	}
 
 	@Override
 	public void write(byte[] data, int position, Double value) {
-		ByteBuffer.wrap(data, position, 8).putLong(Long.reverseBytes(Double.doubleToLongBits(value)));
+		LONG.set(data, position, Double.doubleToLongBits(value));
+	}
+
+	@Override
+	public int getFixedSize() {
+		return 8;
 	}
 
 	@Override
@@ -7,8 +7,6 @@
 
 package de.isse.jros.types;
 
-import java.nio.ByteBuffer;
-
 /**
  * A ROS signed int16 type
  */
@@ -36,7 +34,7 @@ public class ROSint16 extends ROSType<Long> {
 
 	@Override
 	public Long read(byte[] data, int position) {
-		return (long) Short.reverseBytes(ByteBuffer.wrap(data, position, 2).getShort());
+		return (long) (short) SHORT.get(data, position);
 	}
 
 	/**
@@ -52,7 +50,12 @@ public class ROSint16 extends ROSType<Long> {
 
 	@Override
 	public void write(byte[] data, int position, Long value) {
-		ByteBuffer.wrap(data, position, 2).putShort(Short.reverseBytes(value.shortValue()));
+		SHORT.set(data, position, value.shortValue());
+	}
+
+	@Override
+	public int getFixedSize() {
+		return 2;
 	}
 
 	@Override
@@ -7,8 +7,6 @@
 
 package de.isse.jros.types;
 
-import java.nio.ByteBuffer;
-
 /**
  * A ROS signed int32 type
  */
@@ -36,7 +34,7 @@ public class ROSint32 extends ROSType<Long> {
 
 	@Override
 	public Long read(byte[] data, int position) {
-		return (long) Integer.reverseBytes(ByteBuffer.wrap(data, position, 4).getInt());
+		return (long) (int) INT.get(data, position);
 	}
 
 	/**
@@ -52,7 +50,12 @@ public class ROSint32 extends ROSType<Long> {
 
 	@Override
 	public void write(byte[] data, int position, Long value) {
-		ByteBuffer.wrap(data, position, 4).putInt(Integer.reverseBytes(value.intValue()));
+		INT.set(data, position, value.intValue());
+	}
+
+	@Override
+	public int getFixedSize() {
+		return 4;
 	}
 
 	@Override
@@ -7,8 +7,6 @@
 
 package de.isse.jros.types;
 
-import java.nio.ByteBuffer;
-
 /**
  * A ROS signed int64 type
  */
@@ -36,7 +34,7 @@ public class ROSint64 extends ROSType<Long> {
 
 	@Override
 	public Long read(byte[] data, int position) {
-		return Long.reverseBytes(ByteBuffer.wrap(data, position, 8).getLong());
+		return (long) LONG.get(data, position);
 	}
 
 	/**
@@ -54,7 +52,12 @@ public class ROSint64 extends ROSType<Long> {
 	public void write(byte[] data, int position, Long value) {
 		if (!(value instanceof Long))
 			throw new IllegalArgumentException();
-		ByteBuffer.wrap(data, position, 8).putLong(Long.reverseBytes(value));
+		LONG.set(data, position, value.longValue());
+	}
+
+	@Override
+	public int getFixedSize() {
+		return 8;
 	}
 
 	@Override
@@ -53,6 +53,11 @@ public class ROSint8 extends ROSType<Long> {
 		data[position] = value.byteValue();
 	}
 
+	@Override
+	public int getFixedSize() {
+		return 1;
+	}
+
 	@Override
 	public int skip(byte[] data, int position) {
 		return position + 1;
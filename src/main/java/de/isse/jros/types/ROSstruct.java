@@ -22,6 +22,8 @@ public class ROSstruct extends ROSType<Void> {
 	private Map<String, ROSType<?>> constants = new LinkedHashMap<String, ROSType<?>>();
 	private Map<String, String> constantValues = new HashMap<String, String>();
 	private Map<String, ROSType<?>> fields = new LinkedHashMap<String, ROSType<?>>();
+	/** Cached fixed size, computed on first use (fields do not change) */
+	private int fixedSize = UNKNOWN_SIZE;
 
 	@Override
 	public String getName() {
@@ -309,8 +311,29 @@ public class ROSstruct extends ROSType<Void> {
 		return;
 	}
 
+	@Override
+	public int getFixedSize() {
+		int ret = fixedSize;
+		if (ret == UNKNOWN_SIZE) {
+			ret = 0;
+			for (ROSType<?> field : fields.values()) {
+				int size = field.getFixedSize();
+				if (size < 0) {
+					ret = -1;
+					break;
+				}
+				ret += size;
+			}
+			fixedSize = ret;
+		}
+		return ret;
+	}
+
 	@Override
 	public int skip(byte[] data, int position) {
+		int size = getFixedSize();
+		if (size >= 0)
+			return position + size;
 		for (ROSType<?> field : fields.values())
 			position = field.skip(data, position);
 		return position;
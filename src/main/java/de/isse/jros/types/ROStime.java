@@ -7,8 +7,6 @@
 
 package de.isse.jros.types;
 
-import java.nio.ByteBuffer;
-
 /**
  * A ROS time type
  */
@@ -37,7 +35,7 @@ public class ROStime extends ROSType<int[]> {
 	 * @return seconds of the duration
 	 */
 	public int readSec(byte[] data, int position) {
-		return Integer.reverseBytes(ByteBuffer.wrap(data, position, 4).getInt());
+		return (int) INT.get(data, position);
 	}
 
 	/**
@@ -48,7 +46,7 @@ public class ROStime extends ROSType<int[]> {
 	 * @return nanoseconds of the duration
 	 */
 	public int readNsec(byte[] data, int position) {
-		return Integer.reverseBytes(ByteBuffer.wrap(data, position + 4, 4).getInt());
+		return (int) INT.get(data, position + 4);
 	}
 
 	@Override
@@ -63,8 +61,13 @@ public class ROStime extends ROSType<int[]> {
 
 	@Override
 	public void write(byte[] data, int position, int[] value) {
-		ByteBuffer.wrap(data, position, 4).putInt(Integer.reverseBytes(value[0]));
-		ByteBuffer.wrap(data, position + 4, 4).putInt(Integer.reverseBytes(value[1]));
+		INT.set(data, position, value[0]);
+		INT.set(data, position + 4, value[1]);
+	}
+
+	@Override
+	public int getFixedSize() {
+		return 8;
 	}
 
 	@Override
@@ -7,8 +7,6 @@
 
 package de.isse.jros.types;
 
-import java.nio.ByteBuffer;
-
 /**
  * A ROS unsigned int16 type
  */
@@ -36,7 +34,7 @@ public class ROSuint16 extends ROSType<Long> {
 
 	@Override
 	public Long read(byte[] data, int position) {
-		int s = Short.reverseBytes(ByteBuffer.wrap(data, position, 2).getShort());
+		int s = (short) SHORT.get(data, position);
 		if (s < 0)
 			s += 1L << 16;
 		return (long) s;
@@ -55,7 +53,12 @@ public class ROSuint16 extends ROSType<Long> {
 
 	@Override
 	public void write(byte[] data, int position, Long value) {
-		ByteBuffer.wrap(data, position, 2).putShort(Short.reverseBytes(value.shortValue()));
+		SHORT.set(data, position, value.shortValue());
+	}
+
+	@Override
+	public int getFixedSize() {
+		return 2;
 	}
 
 	@Override
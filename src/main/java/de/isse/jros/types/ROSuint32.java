@@ -7,8 +7,6 @@
 
 package de.isse.jros.types;
 
-import java.nio.ByteBuffer;
-
 /**
  * A ROS unsigned int32 type
  */
@@ -36,7 +34,7 @@ public class ROSuint32 extends ROSType<Long> {
 
 	@Override
 	public Long read(byte[] data, int position) {
-		long value = Integer.reverseBytes(ByteBuffer.wrap(data, position, 4).getInt());
+		long value = (int) INT.get(data, position);
 		if (value < 0)
 			value += 1L << 32;
 		return value;
@@ -55,7 +53,12 @@ public class ROSuint32 extends ROSType<Long> {
 
 	@Override
 	public void write(byte[] data, int position, Long value) {
-		ByteBuffer.wrap(data, position, 4).putInt(Integer.reverseBytes(value.intValue()));
+		INT.set(data, position, value.intValue());
+	}
+
+	@Override
+	public int getFixedSize() {
+		return 4;
 	}
 
 	@Override
@@ -7,8 +7,6 @@
 
 package de.isse.jros.types;
 
-import java.nio.ByteBuffer;
-
 /**
  * A ROS unsigned int16 type
  */
@@ -36,7 +34,7 @@ public class ROSuint64 extends ROSType<Long> {
 
 	@Override
 	public Long read(byte[] data, int position) {
-		return Long.reverseBytes(ByteBuffer.wrap(data, position, 8).getLong());
+		return (long) LONG.get(data, position);
 	}
 
 	/**
@@ -52,7 +50,12 @@ public class ROSuint64 extends ROSType<Long> {
 
 	@Override
 	public void write(byte[] data, int position, Long value) {
-		ByteBuffer.wrap(data, position, 8).putLong(Long.reverseBytes(value));
+		LONG.set(data, position, value.longValue());
+	}
+
+	@Override
+	public int getFixedSize() {
+		return 8;
 	}
 
 	@Override
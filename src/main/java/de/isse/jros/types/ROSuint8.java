@@ -56,6 +56,11 @@ public class ROSuint8 extends ROSType<Long> {
 		data[position] = value.byteValue();
 	}
 
+	@Override
+	public int getFixedSize() {
+		return 1;
+	}
+
 	@Override
 	public int skip(byte[] data, int position) {
 		return position + 1;
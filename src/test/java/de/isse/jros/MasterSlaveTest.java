@@ -8,17 +8,47 @@
 package de.isse.jros;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
+import de.isse.jros.RosNode.BufferSubscriber;
+import de.isse.jros.RosNode.DispatchStatistics;
+import de.isse.jros.RosNode.MessageLease;
+import de.isse.jros.RosNode.PooledSubscriber;
 import de.isse.jros.RosNode.Publishing;
+import de.isse.jros.RosNode.QueuePolicy;
+import de.isse.jros.RosNode.ServiceClient;
+import de.isse.jros.RosNode.ServiceHandler;
+import de.isse.jros.RosNode.ServiceProvider;
 import de.isse.jros.RosNode.Subscriber;
+import de.isse.jros.RosNode.Transport;
+import de.isse.jros.internal.xmlrpc.RpcClient;
 import de.isse.jros.messages.StdMsgs;
 import de.isse.jros.messages.StdMsgs.Header;
+import de.isse.jros.types.ROSint64;
+import de.isse.jros.types.ROSstruct;
 
 /**
  * Testing RosMaster and RosNode in a localhost setup
@@ -58,4 +88,552 @@ public class MasterSlaveTest {
 		master.shutdown();
 	}
 
+	@Test
+	public void testQueue() throws IOException, InterruptedException {
+		RosMaster master = new RosMaster(11312);
+
+		RosNode a = new RosNode("/a", "http://127.0.0.1:11312");
+		RosNode b = new RosNode("/b", "http://127.0.0.1:11312");
+
+		Publishing publishing = a.publish("/test", StdMsgs.Header(), false, 10, QueuePolicy.BLOCK);
+		final Header header = new StdMsgs.Header();
+		final List<Long> seqs = new ArrayList<Long>();
+		b.subscribe("/test", header.TYPE, new Subscriber() {
+			@Override
+			public void received(byte[] message) {
+				synchronized (seqs) {
+					seqs.add(header.seq.read(message));
+				}
+			}
+		});
+		Thread.sleep(50);
+
+		byte[] msg = new byte[64];
+		header.frame_id.write(msg, "/");
+		for (int i = 0; i < 1000; i++) {
+			header.seq.write(msg, i);
+			publishing.send(msg);
+		}
+		Thread.sleep(200);
+		synchronized (seqs) {
+			assertEquals(1000, seqs.size());
+			for (int i = 0; i < 1000; i++)
+				assertEquals(i, seqs.get(i).intValue());
+		}
+		for (long dropped : publishing.getDroppedMessages().values())
+			assertEquals(0, dropped);
+
+		a.shutdown();
+		b.shutdown();
+		master.shutdown();
+	}
+
+	@Test
+	public void testPooled() throws IOException, InterruptedException {
+		RosMaster master = new RosMaster(11313);
+
+		RosNode a = new RosNode("/a", "http://127.0.0.1:11313");
+		RosNode b = new RosNode("/b", "http://127.0.0.1:11313");
+
+		Publishing publishing = a.publish("/test", StdMsgs.Header(), true);
+		final Header header = new StdMsgs.Header();
+		byte[] msg = new byte[64];
+		header.frame_id.write(msg, "/pooled");
+		publishing.send(msg);
+
+		b.subscribePooled("/test", header.TYPE, new PooledSubscriber() {
+			@Override
+			public void received(MessageLease message) {
+				received = message.retain();
+			}
+		});
+		Thread.sleep(50);
+		assertNotNull(null, received);
+		assertEquals("/pooled", header.frame_id.read(received));
+
+		a.shutdown();
+		b.shutdown();
+		master.shutdown();
+	}
+
+	@Test
+	public void testDirect() throws IOException, InterruptedException {
+		RosMaster master = new RosMaster(11314);
+
+		RosNode a = new RosNode("/a", "http://127.0.0.1:11314");
+		RosNode b = new RosNode("/b", "http://127.0.0.1:11314");
+
+		Publishing publishing = a.publish("/test", StdMsgs.Header(), true);
+		final Header header = new StdMsgs.Header();
+		byte[] msg = new byte[64];
+		header.frame_id.write(msg, "/direct");
+		publishing.send(msg);
+
+		b.subscribeDirect("/test", header.TYPE, new BufferSubscriber() {
+			@Override
+			public void received(ByteBuffer message) {
+				received = new byte[message.remaining()];
+				message.get(received);
+			}
+		});
+		Thread.sleep(50);
+		assertNotNull(null, received);
+		assertEquals("/direct", header.frame_id.read(received));
+
+		a.shutdown();
+		b.shutdown();
+		master.shutdown();
+	}
+
+	@Test
+	public void testUdp() throws IOException, InterruptedException {
+		RosMaster master = new RosMaster(11315);
+
+		RosNode a = new RosNode("/a", "http://127.0.0.1:11315");
+		RosNode b = new RosNode("/b", "http://127.0.0.1:11315");
+
+		Publishing publishing = a.publish("/test", StdMsgs.Header(), true);
+		final Header header = new StdMsgs.Header();
+		char[] frame = new char[10000];
+		Arrays.fill(frame, 'x');
+		String frameId = new String(frame);
+		byte[] msg = new byte[10016];
+		header.seq.write(msg, 42);
+		header.frame_id.write(msg, frameId);
+		publishing.send(msg);
+		// the buffer may be reused after sending
+		header.seq.write(msg, 43);
+
+		b.subscribe("/test", header.TYPE, new Subscriber() {
+			@Override
+			public void received(byte[] message) {
+				received = message;
+			}
+		}, Transport.UDPROS);
+		Thread.sleep(100);
+		assertNotNull(null, received);
+		assertEquals(42, header.seq.read(received));
+		assertEquals(frameId, header.frame_id.read(received));
+
+		a.shutdown();
+		b.shutdown();
+		master.shutdown();
+	}
+
+	@Test
+	public void testIntraProcess() throws IOException, InterruptedException {
+		RosMaster master = new RosMaster(11316);
+
+		RosNode a = new RosNode("/a", "http://127.0.0.1:11316");
+		RosNode b = new RosNode("/b", "http://127.0.0.1:11316");
+		b.setIntraProcess(true);
+
+		Publishing publishing = a.publish("/test", StdMsgs.Header(), true);
+		final Header header = new StdMsgs.Header();
+		byte[] msg = new byte[64];
+		header.frame_id.write(msg, "/latched");
+		publishing.send(msg);
+
+		b.subscribe("/test", header.TYPE, new Subscriber() {
+			@Override
+			public void received(byte[] message) {
+				received = message;
+			}
+		});
+		assertNotNull(null, received);
+		assertEquals("/latched", header.frame_id.read(received));
+
+		header.frame_id.write(msg, "/local");
+		publishing.send(msg);
+		assertEquals("/local", header.frame_id.read(received));
+		assertEquals(0, publishing.getDroppedMessages().size());
+		assertEquals(1, a.getSubscribers().get("/test").size());
+
+		a.shutdown();
+		b.shutdown();
+		master.shutdown();
+	}
+
+	@Test
+	public void testSharedMemory() throws IOException, InterruptedException {
+		RosMaster master = new RosMaster(11317);
+
+		RosNode a = new RosNode("/a", "http://127.0.0.1:11317");
+		RosNode b = new RosNode("/b", "http://127.0.0.1:11317");
+		a.setShmCapacity(1 << 16);
+
+		Publishing publishing = a.publish("/test", StdMsgs.Header(), true);
+		final Header header = new StdMsgs.Header();
+		byte[] msg = new byte[1024];
+		header.frame_id.write(msg, "/latched");
+		publishing.send(msg);
+
+		final List<Long> seqs = new ArrayList<Long>();
+		b.subscribe("/test", header.TYPE, new Subscriber() {
+			@Override
+			public void received(byte[] message) {
+				synchronized (seqs) {
+					received = message;
+					seqs.add(header.seq.read(message));
+				}
+			}
+		}, Transport.SHMROS);
+		Thread.sleep(50);
+		synchronized (seqs) {
+			assertNotNull(null, received);
+			assertEquals("/latched", header.frame_id.read(received));
+		}
+
+		// wraps around the ring several times
+		header.frame_id.write(msg, "/shm");
+		for (int i = 1; i <= 500; i++) {
+			header.seq.write(msg, i);
+			publishing.send(msg);
+			Thread.sleep(0, 100000);
+		}
+		Thread.sleep(50);
+		synchronized (seqs) {
+			assertEquals("/shm", header.frame_id.read(received));
+			assertEquals(500, header.seq.read(received));
+			for (int i = 1; i < seqs.size(); i++)
+				assertTrue(seqs.get(i) > seqs.get(i - 1));
+		}
+
+		a.shutdown();
+		b.shutdown();
+		master.shutdown();
+	}
+
+	@Test
+	public void testThreadFactory() throws IOException, InterruptedException {
+		final AtomicInteger created = new AtomicInteger();
+		ThreadFactory threads = new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				created.incrementAndGet();
+				return Threads.virtual().newThread(r);
+			}
+		};
+		RosMaster master = new RosMaster(11318, threads);
+
+		RosNode a = new RosNode("/a", "http://127.0.0.1:11318", new HashMap<String, String>(), threads);
+		RosNode b = new RosNode("/b", "http://127.0.0.1:11318", new HashMap<String, String>(), threads);
+
+		Publishing publishing = a.publish("/test", StdMsgs.Header(), true);
+		final Header header = new StdMsgs.Header();
+		byte[] msg = new byte[64];
+		header.frame_id.write(msg, "/threads");
+		publishing.send(msg);
+
+		b.subscribe("/test", header.TYPE, new Subscriber() {
+			@Override
+			public void received(byte[] message) {
+				received = message;
+			}
+		});
+		Thread.sleep(50);
+		assertNotNull(null, received);
+		assertEquals("/threads", header.frame_id.read(received));
+		assertTrue(created.get() > 0);
+
+		a.shutdown();
+		b.shutdown();
+		master.shutdown();
+	}
+
+	@Test
+	public void testCallbackExecutor() throws IOException, InterruptedException {
+		RosMaster master = new RosMaster(11319);
+
+		RosNode a = new RosNode("/a", "http://127.0.0.1:11319");
+		RosNode b = new RosNode("/b", "http://127.0.0.1:11319");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		b.setCallbackExecutor(executor, 1000, QueuePolicy.BLOCK);
+
+		Publishing publishing = a.publish("/test", StdMsgs.Header(), false, 10, QueuePolicy.BLOCK);
+		final Header header = new StdMsgs.Header();
+		final List<Long> seqs = new ArrayList<Long>();
+		b.subscribe("/test", header.TYPE, new Subscriber() {
+			@Override
+			public void received(byte[] message) {
+				synchronized (seqs) {
+					seqs.add(header.seq.read(message));
+				}
+			}
+		});
+		Thread.sleep(50);
+
+		byte[] msg = new byte[64];
+		for (int i = 0; i < 1000; i++) {
+			header.seq.write(msg, i);
+			publishing.send(msg);
+		}
+		Thread.sleep(200);
+		synchronized (seqs) {
+			assertEquals(1000, seqs.size());
+			for (int i = 0; i < 1000; i++)
+				assertEquals(i, seqs.get(i).intValue());
+		}
+		DispatchStatistics stats = b.getDispatchStatistics("/test");
+		assertEquals(1000, stats.getDispatchedMessages());
+		assertEquals(0, stats.getDroppedMessages());
+		assertEquals(0, stats.getQueueDepth());
+
+		a.shutdown();
+		b.shutdown();
+		master.shutdown();
+		executor.shutdown();
+	}
+
+	@Test
+	public void testBatchRegistration() throws IOException, InterruptedException {
+		RosMaster master = new RosMaster(11320);
+
+		RosNode a = new RosNode("/a", "http://127.0.0.1:11320");
+		RosNode b = new RosNode("/b", "http://127.0.0.1:11320");
+		final Header header = new StdMsgs.Header();
+		byte[] msg = new byte[64];
+
+		a.beginBatch();
+		for (int i = 0; i < 300; i++)
+			a.publish("/test" + i, StdMsgs.Header(), true).send(msg);
+		long handled = master.getServerStatistics().getHandledRequests();
+		a.commitBatch();
+		assertEquals(handled + 2, master.getServerStatistics().getHandledRequests());
+		assertEquals(300, a.getPublishers().size());
+
+		final AtomicInteger count = new AtomicInteger();
+		b.beginBatch();
+		for (int i = 0; i < 300; i++) {
+			b.subscribe("/test" + i, header.TYPE, new Subscriber() {
+				@Override
+				public void received(byte[] message) {
+					count.incrementAndGet();
+				}
+			});
+		}
+		assertEquals(0, count.get());
+		b.commitBatch();
+		for (int i = 0; i < 100 && count.get() < 300; i++)
+			Thread.sleep(50);
+		assertEquals(300, count.get());
+		assertEquals(300, b.getSubscribers().size());
+
+		// ROS level failures of single registrations are reported as well
+		a.beginBatch();
+		a.subscribe("/test0", new ROSstruct("test/Other").withInt64("x"), new Subscriber() {
+			@Override
+			public void received(byte[] message) {
+			}
+		});
+		try {
+			a.commitBatch();
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("Incorrect topic type"));
+		}
+
+		a.shutdown();
+		b.shutdown();
+		master.shutdown();
+	}
+
+	@Test
+	public void testUnresponsiveSubscriber() throws IOException, InterruptedException {
+		RosMaster master = new RosMaster(11321);
+		// accepts connections (through the backlog), but never answers
+		ServerSocket dead = new ServerSocket(0);
+		new RpcClient("127.0.0.1", 11321).execute("registerSubscriber",
+				Arrays.asList("/dead", "/test", "std_msgs/Header", "http://127.0.0.1:" + dead.getLocalPort() + "/"));
+
+		RosNode a = new RosNode("/a", "http://127.0.0.1:11321");
+		RosNode b = new RosNode("/b", "http://127.0.0.1:11321");
+		final Header header = new StdMsgs.Header();
+		b.subscribe("/test", header.TYPE, new Subscriber() {
+			@Override
+			public void received(byte[] message) {
+				received = message;
+			}
+		});
+
+		long start = System.currentTimeMillis();
+		Publishing publishing = a.publish("/test", StdMsgs.Header(), true);
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		byte[] msg = new byte[64];
+		header.frame_id.write(msg, "/alive");
+		publishing.send(msg);
+		for (int i = 0; i < 100 && received == null; i++)
+			Thread.sleep(10);
+		assertNotNull(received);
+		assertEquals("/alive", header.frame_id.read(received));
+
+		a.shutdown();
+		b.shutdown();
+		master.shutdown();
+		dead.close();
+	}
+
+	@Test
+	public void testParameters() throws IOException, InterruptedException {
+		RosMaster master = new RosMaster(11322);
+
+		RosNode a = new RosNode("/ns/a", "http://127.0.0.1:11322");
+		RosNode b = new RosNode("/b", "http://127.0.0.1:11322");
+		a.setParam("rate", 10);
+		a.setParam("/robot/name", "lbr");
+		assertEquals(10, b.getParam("/ns/rate"));
+		assertTrue(b.hasParam("/robot/name"));
+		assertNull(b.getParam("rate"));
+		assertEquals("/robot/name", a.searchParam("robot/name"));
+		assertEquals("/ns/rate", a.searchParam("rate"));
+		assertNull(b.searchParam("rate"));
+		Map<?, ?> robot = (Map<?, ?>) a.getParam("/robot");
+		assertEquals("lbr", robot.get("name"));
+		assertEquals(Arrays.asList("/ns/rate", "/robot/name"), b.getParamNames());
+
+		assertEquals("lbr", b.getCachedParam("/robot/name"));
+		assertNull(b.getCachedParam("/ns/missing"));
+		a.setParam("/robot", Collections.singletonMap("name", "iiwa"));
+		a.setParam("missing", 1.5);
+		for (int i = 0; i < 100 && !"iiwa".equals(b.getCachedParam("/robot/name")); i++)
+			Thread.sleep(10);
+		assertEquals("iiwa", b.getCachedParam("/robot/name"));
+		for (int i = 0; i < 100 && b.getCachedParam("/ns/missing") == null; i++)
+			Thread.sleep(10);
+		assertEquals(1.5, b.getCachedParam("/ns/missing"));
+
+		assertTrue(a.deleteParam("/robot"));
+		assertFalse(a.deleteParam("/robot"));
+		for (int i = 0; i < 100 && b.getCachedParam("/robot/name") != null; i++)
+			Thread.sleep(10);
+		assertNull(b.getCachedParam("/robot/name"));
+
+		a.shutdown();
+		b.shutdown();
+		master.shutdown();
+	}
+
+	@Test
+	public void testServices() throws IOException, InterruptedException {
+		RosMaster master = new RosMaster(11323);
+		final ROSstruct request = new ROSstruct("rospy_tutorials/AddTwoIntsRequest").withInt64("a").withInt64("b");
+		ROSstruct response = new ROSstruct("rospy_tutorials/AddTwoIntsResponse").withInt64("sum");
+		assertEquals("6a2e34150c00229791cc89ff309fff21", MessageHelper.getServiceMD5(request, response));
+
+		RosNode a = new RosNode("/a", "http://127.0.0.1:11323");
+		RosNode b = new RosNode("/b", "http://127.0.0.1:11323");
+		final AtomicInteger calls = new AtomicInteger();
+		ServiceProvider provider = a.advertiseService("/add_two_ints", "rospy_tutorials/AddTwoInts", request,
+				response, new ServiceHandler() {
+					@Override
+					public byte[] call(byte[] message) throws Exception {
+						calls.incrementAndGet();
+						long x = ROSint64.TYPE.read(message, 0), y = ROSint64.TYPE.read(message, 8);
+						if (x < 0)
+							throw new IllegalArgumentException("negative");
+						byte[] ret = new byte[8];
+						ROSint64.TYPE.write(ret, 0, x + y);
+						return ret;
+					}
+				});
+
+		byte[] msg = new byte[16];
+		for (boolean persistent : new boolean[] { false, true }) {
+			ServiceClient client = b.serviceClient("/add_two_ints", request, response, persistent);
+			for (long i = 0; i < 10; i++) {
+				ROSint64.TYPE.write(msg, 0, i);
+				ROSint64.TYPE.write(msg, 8, 2 * i);
+				assertEquals(3 * i, (long) ROSint64.TYPE.read(client.call(msg), 0));
+			}
+			ROSint64.TYPE.write(msg, 0, -1L);
+			try {
+				client.call(msg);
+				fail();
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().contains("negative"));
+			}
+			client.close();
+		}
+		assertEquals(22, calls.get());
+
+		ServiceClient wrong = b.serviceClient("/add_two_ints", request, request, true);
+		try {
+			wrong.call(msg);
+			fail();
+		} catch (IOException e) {
+		}
+
+		provider.stop();
+		try {
+			b.serviceClient("/add_two_ints", request, response, false).call(msg);
+			fail();
+		} catch (IOException e) {
+		}
+
+		a.shutdown();
+		b.shutdown();
+		master.shutdown();
+	}
+
+	@Test
+	public void testLiveness() throws IOException, InterruptedException {
+		RosMaster master = new RosMaster(11324);
+		ServerSocket closed = new ServerSocket(0);
+		String dead = "http://127.0.0.1:" + closed.getLocalPort() + "/";
+		closed.close();
+		new RpcClient("127.0.0.1", 11324).execute("registerPublisher",
+				Arrays.asList("/dead", "/test", "std_msgs/Header", dead));
+		// answers every request with an HTTP error, but is alive
+		final ServerSocket busy = new ServerSocket(0);
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						try (Socket socket = busy.accept()) {
+							InputStream in = socket.getInputStream();
+							int length = 0;
+							for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+								if (line.toLowerCase().startsWith("content-length:"))
+									length = Integer.parseInt(line.substring(15).trim());
+							}
+							while (length-- > 0)
+								in.read();
+							socket.getOutputStream().write(
+									"HTTP/1.1 503 Service Unavailable\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+											.getBytes(StandardCharsets.US_ASCII));
+						}
+					}
+				} catch (IOException e) {
+				}
+			}
+		}.start();
+		new RpcClient("127.0.0.1", 11324).execute("registerPublisher",
+				Arrays.asList("/busy", "/busy", "std_msgs/Header", "http://127.0.0.1:" + busy.getLocalPort() + "/"));
+
+		RosNode a = new RosNode("/a", "http://127.0.0.1:11324");
+		a.publish("/other", StdMsgs.Header(), false);
+		assertEquals(Arrays.asList(dead), a.getPublishers().get("/test"));
+		master.setProbeInterval(50, 2);
+		for (int i = 0; i < 100 && a.getPublishers().containsKey("/test"); i++)
+			Thread.sleep(10);
+		assertFalse(a.getPublishers().containsKey("/test"));
+		Thread.sleep(200);
+		assertEquals(1, a.getPublishers().get("/other").size());
+		assertEquals(1, a.getPublishers().get("/busy").size());
+
+		a.shutdown();
+		master.shutdown();
+		busy.close();
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder ret = new StringBuilder();
+		for (int c = in.read(); c >= 0 && c != '\n'; c = in.read()) {
+			if (c != '\r')
+				ret.append((char) c);
+		}
+		return ret.toString();
+	}
+
 }
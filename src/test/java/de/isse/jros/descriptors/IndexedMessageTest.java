@@ -0,0 +1,97 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.descriptors;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.isse.jros.messages.GeometryMsgs;
+import de.isse.jros.types.ROSarray;
+import de.isse.jros.types.ROSfixedArray;
+import de.isse.jros.types.ROSfloat64;
+import de.isse.jros.types.ROSstring;
+import de.isse.jros.types.ROSstruct;
+
+/**
+ * Testing cached element positions against walking the message
+ */
+public class IndexedMessageTest {
+
+	private ROSstruct transform = GeometryMsgs.TransformStamped();
+	private ROSstruct msg = new ROSstruct("test/Indexed").withField("transforms", new ROSarray(transform))
+			.withField("values", new ROSarray(ROSfloat64.TYPE))
+			.withField("fixed", new ROSfixedArray(GeometryMsgs.TransformStamped(), 2)).withString("name");
+	private ElementDescriptor<Integer> transforms = ElementDescriptor.createFor(msg, new ROSarray(transform),
+			"transforms");
+	private ElementDescriptor<Integer> values = ElementDescriptor.createFor(msg, new ROSarray(ROSfloat64.TYPE),
+			"values");
+	private ElementDescriptor<String> frame0 = ElementDescriptor.createFor(msg, ROSstring.TYPE, "transforms", "0",
+			"header", "frame_id");
+	private ElementDescriptor<String> child1 = ElementDescriptor.createFor(msg, ROSstring.TYPE, "transforms", "1",
+			"child_frame_id");
+	private ElementDescriptor<Double> rotation1 = ElementDescriptor.createFor(msg, ROSfloat64.TYPE, "transforms",
+			"1", "transform", "rotation", "w");
+	private ElementDescriptor<Double> value2 = ElementDescriptor.createFor(msg, ROSfloat64.TYPE, "values", "2");
+	private ElementDescriptor<String> fixedChild1 = ElementDescriptor.createFor(msg, ROSstring.TYPE, "fixed", "1",
+			"child_frame_id");
+	private ElementDescriptor<String> name = ElementDescriptor.createFor(msg, ROSstring.TYPE, "name");
+
+	private void assertPositions(IndexedMessage indexed) {
+		byte[] data = indexed.getData();
+		for (ElementDescriptor<?> element : new ElementDescriptor<?>[] { transforms, values, frame0, child1,
+				rotation1, value2, fixedChild1, name }) {
+			assertEquals(element.getPosition(data), indexed.getPosition(element));
+		}
+	}
+
+	@Test
+	public void testPositions() {
+		byte[] data = new byte[msg.skip(null, 0) + 2048];
+		IndexedMessage indexed = new IndexedMessage(data);
+		assertEquals(-1, indexed.getPosition(value2));
+		assertEquals(-1, indexed.getPosition(child1));
+
+		transforms.write(data, 2);
+		values.write(data, 3);
+		child1.write(data, "/child");
+		fixedChild1.write(data, "/fixed");
+		name.write(data, "name");
+		indexed.invalidate();
+		assertPositions(indexed);
+		assertEquals("/child", indexed.read(child1));
+		assertEquals("/fixed", indexed.read(fixedChild1));
+		assertEquals("name", indexed.read(name));
+	}
+
+	@Test
+	public void testStructuralWrites() {
+		byte[] data = new byte[msg.skip(null, 0) + 2048];
+		IndexedMessage indexed = new IndexedMessage(data);
+		indexed.write(transforms, 2);
+		indexed.write(name, "name");
+		indexed.write(child1, "/child");
+		indexed.write(rotation1, 1.0);
+		assertPositions(indexed);
+
+		indexed.write(frame0, "/a/much/longer/frame");
+		indexed.write(values, 3);
+		indexed.write(value2, 2.5);
+		assertPositions(indexed);
+		assertEquals("/child", indexed.read(child1));
+		assertEquals(1.0, indexed.read(rotation1), 0);
+		assertEquals(2.5, indexed.read(value2), 0);
+		assertEquals("name", indexed.read(name));
+
+		indexed.write(frame0, "");
+		assertPositions(indexed);
+		assertEquals("/child", child1.read(data));
+		assertEquals("name", name.read(data));
+	}
+
+}
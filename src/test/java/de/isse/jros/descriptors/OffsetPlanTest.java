@@ -0,0 +1,75 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.descriptors;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.isse.jros.messages.GeometryMsgs;
+import de.isse.jros.types.ROSarray;
+import de.isse.jros.types.ROSfixedArray;
+import de.isse.jros.types.ROSfloat64;
+import de.isse.jros.types.ROSstring;
+import de.isse.jros.types.ROSstruct;
+
+/**
+ * Testing compiled offset plans against walking the message field by field
+ */
+public class OffsetPlanTest {
+
+	@Test
+	public void testConstantOffsets() {
+		ROSstruct msg = GeometryMsgs.PoseStamped();
+		ElementDescriptor<Double> x = ElementDescriptor.createFor(msg, ROSfloat64.TYPE, "pose", "position", "x");
+		ElementDescriptor<Double> w = ElementDescriptor.createFor(msg, ROSfloat64.TYPE, "pose", "orientation", "w");
+		ElementDescriptor<String> frame = ElementDescriptor.createFor(msg, ROSstring.TYPE, "header", "frame_id");
+		byte[] data = new byte[msg.skip(null, 0) + 16];
+		frame.write(data, "/world");
+
+		int header = msg.getFieldType("header").skip(data, 0);
+		assertEquals(header, x.getPosition(data));
+		assertEquals(header + 6 * 8, w.getPosition(data));
+		assertEquals(12, frame.getPosition(data));
+	}
+
+	@Test
+	public void testArrays() {
+		ROSstruct transform = GeometryMsgs.TransformStamped();
+		ROSstruct msg = new ROSstruct("test/Arrays").withField("transforms", new ROSarray(transform))
+				.withField("values", new ROSarray(ROSfloat64.TYPE))
+				.withField("fixed", new ROSfixedArray(GeometryMsgs.Vector3(), 3)).withString("name");
+		ElementDescriptor<Integer> transforms = ElementDescriptor.createFor(msg, new ROSarray(transform),
+				"transforms");
+		ElementDescriptor<Integer> values = ElementDescriptor.createFor(msg, new ROSarray(ROSfloat64.TYPE),
+				"values");
+		ElementDescriptor<String> child1 = ElementDescriptor.createFor(msg, ROSstring.TYPE, "transforms", "1",
+				"child_frame_id");
+		ElementDescriptor<Double> value2 = ElementDescriptor.createFor(msg, ROSfloat64.TYPE, "values", "2");
+		ElementDescriptor<Double> fixed2y = ElementDescriptor.createFor(msg, ROSfloat64.TYPE, "fixed", "2", "y");
+		ElementDescriptor<String> name = ElementDescriptor.createFor(msg, ROSstring.TYPE, "name");
+
+		byte[] data = new byte[msg.skip(null, 0) + 1024];
+		assertEquals(-1, value2.getPosition(data));
+		transforms.write(data, 2);
+		values.write(data, 3);
+		child1.write(data, "/child");
+		value2.write(data, 1.5);
+		fixed2y.write(data, 2.5);
+		name.write(data, "test");
+
+		int pos = msg.skipToField("fixed", data, 0);
+		assertEquals(pos + 2 * 24 + 8, fixed2y.getPosition(data));
+		assertEquals(msg.skipToField("name", data, 0), name.getPosition(data));
+		assertEquals("/child", child1.read(data));
+		assertEquals(1.5, value2.read(data), 0);
+		assertEquals(2.5, fixed2y.read(data), 0);
+		assertEquals("test", name.read(data));
+	}
+
+}
@@ -0,0 +1,60 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Testing ParameterTree: namespaces, upward search and deletion
+ */
+public class ParameterTreeTest {
+
+	@Test
+	public void testNamespaces() {
+		ParameterTree tree = new ParameterTree();
+		tree.set("/a/b/c", 1);
+		tree.set("/a/d", "x");
+		assertEquals(1, tree.get("/a/b/c"));
+		assertTrue(tree.has("/a/b"));
+		assertEquals(2, ((Map<?, ?>) tree.get("/a")).size());
+
+		Map<String, Object> ns = new HashMap<String, Object>();
+		ns.put("e", true);
+		tree.set("/a/b", ns);
+		ns.put("f", false);
+		assertNull(tree.get("/a/b/c"));
+		assertEquals(true, tree.get("/a/b/e"));
+		assertFalse(tree.has("/a/b/f"));
+
+		tree.set("/a/d/g", 2.0);
+		assertEquals(Arrays.asList("/a/b/e", "/a/d/g"), tree.getNames());
+		assertTrue(tree.delete("/a/d"));
+		assertFalse(tree.delete("/a/d/g"));
+		assertEquals(Arrays.asList("/a/b/e"), tree.getNames());
+	}
+
+	@Test
+	public void testSearch() {
+		ParameterTree tree = new ParameterTree();
+		tree.set("/robot/name", "lbr");
+		tree.set("/ns/robot/speed", 1);
+		assertEquals("/ns/robot/name", tree.search("/ns/sub/", "robot/name"));
+		assertEquals("/robot/name", tree.search("/other/", "robot/name"));
+		assertNull(tree.search("/ns/", "missing"));
+	}
+
+}
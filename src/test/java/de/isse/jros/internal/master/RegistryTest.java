@@ -0,0 +1,101 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Testing Registry: registrations, services, namespace queries and node removal
+ */
+public class RegistryTest {
+
+	private static List<String> sorted(List<String> list) {
+		Collections.sort(list);
+		return list;
+	}
+
+	@Test
+	public void testRegistrations() {
+		Registry registry = new Registry();
+		assertTrue(registry.registerPublisher("/a", "/tf", "tf2_msgs/TFMessage", "http://a:1/"));
+		assertTrue(registry.registerPublisher("/a", "/tf", "tf2_msgs/TFMessage", "http://a:1/"));
+		assertTrue(registry.registerSubscriber("/b", "/tf", "tf2_msgs/TFMessage", "http://b:1/"));
+		assertFalse(registry.registerSubscriber("/c", "/tf", "std_msgs/Header", "http://c:1/"));
+
+		assertEquals(Arrays.asList("http://a:1/"), registry.getPublishers("/tf"));
+		assertEquals(Arrays.asList("http://b:1/"), registry.getSubscribers("/tf"));
+		assertEquals("http://b:1/", registry.lookupNode("/b"));
+		assertNull(registry.lookupNode("/c"));
+
+		assertTrue(registry.unregisterPublisher("/a", "/tf", "http://a:1/"));
+		assertFalse(registry.unregisterPublisher("/a", "/tf", "http://a:1/"));
+		assertEquals("tf2_msgs/TFMessage", registry.getTopicType("/tf"));
+		assertTrue(registry.unregisterSubscriber("/b", "/tf", "http://b:1/"));
+		assertNull(registry.getTopicType("/tf"));
+		assertTrue(registry.getPublishers().isEmpty());
+	}
+
+	@Test
+	public void testPublishedTopics() {
+		Registry registry = new Registry();
+		for (String topic : Arrays.asList("/foo", "/foo/bar", "/foo/bar/baz", "/foobar", "/other/x"))
+			registry.registerPublisher("/a", topic, "std_msgs/Header", "http://a:1/");
+		registry.registerSubscriber("/a", "/foo/sub", "std_msgs/Header", "http://a:1/");
+
+		assertEquals(5, registry.getPublishedTopics("").size());
+		assertEquals(5, registry.getPublishedTopics("/").size());
+		assertEquals(Arrays.asList("/foo/bar", "/foo/bar/baz"), sorted(registry.getPublishedTopics("/foo")));
+		assertEquals(Arrays.asList("/foo/bar/baz"), registry.getPublishedTopics("/foo/bar/"));
+		assertTrue(registry.getPublishedTopics("/none").isEmpty());
+
+		registry.unregisterPublisher("/a", "/foo/bar/baz", "http://a:1/");
+		assertEquals(Arrays.asList("/foo/bar"), registry.getPublishedTopics("/foo"));
+	}
+
+	@Test
+	public void testUnregisterNode() {
+		Registry registry = new Registry();
+		registry.registerPublisher("/a", "/x", "std_msgs/Header", "http://a:1/");
+		registry.registerPublisher("/a", "/y", "std_msgs/Header", "http://a:1/");
+		registry.registerSubscriber("/a", "/z", "std_msgs/Header", "http://a:1/");
+		registry.registerPublisher("/b", "/x", "std_msgs/Header", "http://b:1/");
+
+		assertTrue(registry.unregisterNode("/a", "http://a:2/").isEmpty());
+		assertEquals(Arrays.asList("/x", "/y"), sorted(registry.unregisterNode("/a")));
+		assertEquals(Arrays.asList("http://b:1/"), registry.getPublishers("/x"));
+		assertTrue(registry.getPublishers("/y").isEmpty());
+		assertTrue(registry.getSubscribers("/z").isEmpty());
+		assertEquals(Arrays.asList("/x"), registry.getPublishedTopics(""));
+		assertEquals(Arrays.asList("/b"), registry.getNodes());
+	}
+
+	@Test
+	public void testServices() {
+		Registry registry = new Registry();
+		registry.registerService("/a", "/srv", "rosrpc://a:2", "http://a:1/");
+		assertEquals("rosrpc://a:2", registry.lookupService("/srv"));
+		registry.registerService("/b", "/srv", "rosrpc://b:2", "http://b:1/");
+		assertFalse(registry.unregisterService("/a", "/srv", "rosrpc://a:2"));
+		assertEquals(Arrays.asList("http://b:1/"), registry.getServices().get("/srv"));
+
+		registry.unregisterNode("/a");
+		assertEquals("rosrpc://b:2", registry.lookupService("/srv"));
+		registry.unregisterNode("/b");
+		assertNull(registry.lookupService("/srv"));
+	}
+
+}
@@ -0,0 +1,72 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.tcpros;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Testing TcpRosSelector: failing handlers and tasks must not stop the thread
+ */
+public class TcpRosSelectorTest {
+
+	@Test
+	public void testFailingHandler() throws IOException, InterruptedException {
+		final TcpRosSelector selector = new TcpRosSelector();
+		selector.start();
+		final Pipe pipe = Pipe.open();
+		final CountDownLatch closed = new CountDownLatch(1);
+		selector.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					selector.register(pipe.source(), SelectionKey.OP_READ, new TcpRosSelector.Handler() {
+						@Override
+						public void ready(SelectionKey key) throws IOException {
+							throw new ArrayIndexOutOfBoundsException(1);
+						}
+
+						@Override
+						public void close() {
+							closed.countDown();
+						}
+					});
+				} catch (IOException e) {
+				}
+			}
+		});
+		selector.execute(new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException();
+			}
+		});
+		pipe.sink().write(ByteBuffer.wrap(new byte[] { 1 }));
+		assertTrue(closed.await(1, TimeUnit.SECONDS));
+
+		final CountDownLatch alive = new CountDownLatch(1);
+		selector.execute(new Runnable() {
+			@Override
+			public void run() {
+				alive.countDown();
+			}
+		});
+		assertTrue(alive.await(1, TimeUnit.SECONDS));
+		selector.stop();
+		pipe.sink().close();
+	}
+
+}
@@ -0,0 +1,185 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.xmlrpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.isse.jros.Threads;
+import de.isse.jros.internal.xmlrpc.RpcConnectionPool.Connection;
+import de.isse.jros.internal.xmlrpc.RpcServer.ServerInterface;
+
+/**
+ * Testing RpcClient and RpcServer: requests on keep-alive connections
+ */
+public class RpcTest {
+
+	private RpcServer createServer() throws IOException {
+		RpcServer server = new RpcServer(0, new ServerInterface() {
+			@Override
+			public List<?> execute(String method, List<?> params) {
+				if (method.equals("fail"))
+					throw new IllegalStateException("failed");
+				return Arrays.asList(1, method, params);
+			}
+		});
+		server.start();
+		return server;
+	}
+
+	@Test
+	public void testKeepAlive() throws IOException {
+		RpcServer server = createServer();
+		RpcConnectionPool pool = new RpcConnectionPool();
+		RpcClient client = new RpcClient("127.0.0.1", server.getPort(), pool);
+
+		client.getLocalHost();
+		Connection connection = pool.acquire("127.0.0.1", server.getPort());
+		pool.release(connection, true);
+
+		for (int i = 0; i < 10; i++) {
+			List<?> ret = (List<?>) client.execute("echo", Arrays.asList("test", i));
+			assertEquals(Arrays.asList(1, "echo", Arrays.asList("test", i)), ret);
+		}
+
+		assertSame(connection, pool.acquire("127.0.0.1", server.getPort()));
+		pool.close();
+		server.stop();
+	}
+
+	@Test
+	public void testWithoutPool() throws IOException {
+		RpcServer server = createServer();
+		RpcClient client = new RpcClient("127.0.0.1", server.getPort());
+		for (int i = 0; i < 3; i++) {
+			List<?> ret = (List<?>) client.execute("echo", Arrays.asList(i));
+			assertEquals(Arrays.asList(1, "echo", Arrays.asList(i)), ret);
+		}
+		server.stop();
+	}
+
+	@Test
+	public void testServerClosedIdleConnection() throws IOException {
+		RpcServer server = createServer();
+		RpcConnectionPool pool = new RpcConnectionPool();
+		RpcClient client = new RpcClient("127.0.0.1", server.getPort(), pool);
+		client.execute("echo", Arrays.asList());
+
+		Connection connection = pool.acquire("127.0.0.1", server.getPort());
+		connection.socket.shutdownInput();
+		connection.socket.shutdownOutput();
+		pool.release(connection, true);
+
+		List<?> ret = (List<?>) client.execute("echo", Arrays.asList("retry"));
+		assertEquals(Arrays.asList(1, "echo", Arrays.asList("retry")), ret);
+		pool.close();
+		server.stop();
+	}
+
+	@Test
+	public void testConcurrentRequests() throws Exception {
+		final CountDownLatch started = new CountDownLatch(4);
+		final CountDownLatch release = new CountDownLatch(1);
+		RpcServer server = new RpcServer(0, new ServerInterface() {
+			@Override
+			public List<?> execute(String method, List<?> params) {
+				started.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+				}
+				return Arrays.asList(1, method, params);
+			}
+		}, Threads.platform(), 4, 16, RpcServer.DEFAULT_MAX_REQUEST_SIZE);
+		server.start();
+		final RpcConnectionPool pool = new RpcConnectionPool();
+		final RpcClient client = new RpcClient("127.0.0.1", server.getPort(), pool);
+		final AtomicInteger succeeded = new AtomicInteger();
+		Thread[] threads = new Thread[6];
+		for (int i = 0; i < threads.length; i++) {
+			final int n = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						if (Arrays.asList(1, "echo", Arrays.asList(n)).equals(client.execute("echo", Arrays.asList(n))))
+							succeeded.incrementAndGet();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		// all workers are busy, remaining requests wait in the queue
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertEquals(4, server.getActiveRequests());
+		release.countDown();
+		for (Thread thread : threads)
+			thread.join();
+
+		assertEquals(threads.length, succeeded.get());
+		assertEquals(threads.length, server.getHandledRequests());
+		assertEquals(threads.length, server.getOpenConnections());
+		assertEquals(0, server.getRejectedRequests());
+		pool.close();
+		server.stop();
+	}
+
+	@Test
+	public void testRequestTooLarge() throws IOException {
+		RpcServer server = new RpcServer(0, new ServerInterface() {
+			@Override
+			public List<?> execute(String method, List<?> params) {
+				return Arrays.asList(1, method, params);
+			}
+		}, Threads.platform(), 1, 1, 1024);
+		server.start();
+		RpcClient client = new RpcClient("127.0.0.1", server.getPort());
+		char[] data = new char[2048];
+		Arrays.fill(data, 'x');
+		try {
+			client.execute("echo", Arrays.asList(new String(data)));
+			fail("Request should be rejected");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("413"));
+		}
+		assertEquals(1, server.getRejectedRequests());
+		assertEquals(Arrays.asList(1, "echo", Arrays.asList("small")),
+				client.execute("echo", Arrays.asList("small")));
+		server.stop();
+	}
+
+	@Test
+	public void testMulticall() throws IOException {
+		RpcServer server = createServer();
+		RpcClient client = new RpcClient("127.0.0.1", server.getPort());
+		List<Object> ret = client.multicall(Arrays.asList(Arrays.asList("echo", "a", 1), Arrays.asList("fail"),
+				Arrays.asList("echo")));
+		assertEquals(3, ret.size());
+		assertEquals(Arrays.asList(1, "echo", Arrays.asList("a", 1)), ret.get(0));
+		assertEquals("java.lang.IllegalStateException: failed", ((Map<?, ?>) ret.get(1)).get("faultString"));
+		assertEquals(Arrays.asList(1, "echo", Arrays.asList()), ret.get(2));
+		assertEquals(1, server.getHandledRequests());
+		server.stop();
+	}
+
+}
@@ -0,0 +1,154 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.internal.xmlrpc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Testing XmlRpc: parsing requests and responses
+ */
+public class XmlRpcTest {
+
+	private static Object value(String value) {
+		return XmlRpc.parseResponse("<?xml version=\"1.0\"?>\n<methodResponse><params><param>\n<value>" + value
+				+ "</value></param></params></methodResponse>");
+	}
+
+	@Test
+	public void testScalars() throws Exception {
+		assertEquals(42, value("<int>42</int>"));
+		assertEquals(-7, value("<i4> -7 </i4>"));
+		assertEquals(0, value("<int/>"));
+		assertEquals(1L << 40, value("<i8>1099511627776</i8>"));
+		assertEquals(true, value("<boolean>1</boolean>"));
+		assertEquals(false, value("<boolean>0</boolean>"));
+		assertEquals(2.5, value("<double>2.5</double>"));
+		assertEquals(" text ", value("<string> text </string>"));
+		assertEquals("", value("<string></string>"));
+		assertEquals("untyped", value("untyped"));
+		assertEquals("", value(""));
+		assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, (byte[]) value("<base64>AQID\nBAU=</base64>"));
+		Date date = new SimpleDateFormat("yyyyMMdd'T'HH:mm:ss").parse("19980717T14:08:55");
+		assertEquals(date, value("<dateTime.iso8601>19980717T14:08:55</dateTime.iso8601>"));
+	}
+
+	@Test
+	public void testEntities() {
+		assertEquals("<a href=\"x\">&'</a>",
+				value("<string>&lt;a href=&quot;x&quot;&gt;&amp;&apos;&lt;/a&gt;</string>"));
+		assertEquals("ä€", value("<string>&#228;&#x20AC;</string>"));
+		assertEquals("ä€😀", value("ä€😀"));
+		try {
+			value("<string>&unknown;</string>");
+			fail("Unknown entity should be rejected");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testStructures() {
+		Map<String, Object> struct = new HashMap<String, Object>();
+		struct.put("a", 1);
+		struct.put("b", Arrays.asList("x", ""));
+		assertEquals(struct, value("<struct>\n <member><name>a</name><value><int>1</int></value></member>\n"
+				+ " <member><name>b</name><value><array><data><value>x</value><value/></data></array></value>"
+				+ "</member>\n</struct>"));
+		assertEquals(Arrays.asList(), value("<array><data/></array>"));
+		assertEquals(Arrays.asList(), value("<array>\n<data>\n</data>\n</array>"));
+	}
+
+	@Test
+	public void testRequest() {
+		String request = XmlRpc.formatRequest("registerPublisher", Arrays.asList("/node", "/topic", "", 3));
+		assertEquals(Arrays.asList("registerPublisher", "/node", "/topic", "", 3), XmlRpc.parseRequest(request));
+		assertEquals(Arrays.asList("getPid", "/caller"), XmlRpc.parseRequest("<?xml version='1.0'?>\n"
+				+ "<!-- comment -->\n<methodCall>\n  <methodName>getPid</methodName>\n  <params>\n"
+				+ "    <param><value><string>/caller</string></value></param>\n  </params>\n</methodCall>\n"));
+		assertEquals(Arrays.asList("shutdown"),
+				XmlRpc.parseRequest("<methodCall><methodName>shutdown</methodName></methodCall>"));
+	}
+
+	@Test
+	public void testFault() {
+		try {
+			XmlRpc.parseResponse("<methodResponse><fault><value><struct><member><name>faultCode</name>"
+					+ "<value><int>4</int></value></member><member><name>faultString</name>"
+					+ "<value><string>Too many parameters.</string></value></member></struct></value></fault>"
+					+ "</methodResponse>");
+			fail("Fault should be reported");
+		} catch (XmlRpcFault e) {
+			assertEquals("XMLRPC fault 4: Too many parameters.", e.getMessage());
+			assertFalse(e.isUnknownMethod("system.multicall"));
+		}
+		try {
+			XmlRpc.parseResponse("<methodResponse><fault><value><struct><member><name>faultCode</name>"
+					+ "<value><int>1</int></value></member><member><name>faultString</name><value><string>"
+					+ "&lt;class 'Exception'&gt;:method \"system.multicall\" is not supported</string></value>"
+					+ "</member></struct></value></fault></methodResponse>");
+			fail("Fault should be reported");
+		} catch (XmlRpcFault e) {
+			assertTrue(e.isUnknownMethod("system.multicall"));
+			assertFalse(e.isUnknownMethod("registerPublisher"));
+		}
+	}
+
+	@Test
+	public void testLargeSystemState() {
+		List<Object> publishers = new ArrayList<Object>();
+		for (int i = 0; i < 2000; i++)
+			publishers.add(Arrays.asList("/topic" + i, Arrays.asList("/node" + i, "/node" + (i + 1))));
+		List<Object> state = Arrays.asList(publishers, publishers, Arrays.asList());
+		List<Object> response = Arrays.asList(1, "current system state", state);
+
+		byte[] data = XmlRpc.formatResponse(response).getBytes(StandardCharsets.UTF_8);
+		byte[] framed = new byte[data.length + 20];
+		System.arraycopy(data, 0, framed, 10, data.length);
+		assertEquals(response, XmlRpc.parseResponse(framed, 10, data.length));
+	}
+
+	@Test
+	public void testWriter() {
+		Map<String, Object> struct = new HashMap<String, Object>();
+		struct.put("<key & more>", Arrays.asList(true, 1.5, -42, Long.MIN_VALUE, new byte[0]));
+		List<Object> params = Arrays.asList("</string>&amp;", "ä€😀", struct, Integer.MIN_VALUE, Arrays.asList());
+
+		XmlRpcWriter writer = new XmlRpcWriter();
+		writer.writeRequest("set<Param>", params);
+		String request = new String(writer.getBuffer(), 0, writer.getLength(), StandardCharsets.UTF_8);
+		assertEquals(request.getBytes(StandardCharsets.UTF_8).length, writer.getLength());
+
+		List<Object> parsed = XmlRpc.parseRequest(writer.getBuffer(), 0, writer.getLength());
+		assertEquals("set<Param>", parsed.get(0));
+		assertEquals("</string>&amp;", parsed.get(1));
+		assertEquals("ä€😀", parsed.get(2));
+		List<?> values = (List<?>) ((Map<?, ?>) parsed.get(3)).get("<key & more>");
+		assertEquals(Arrays.asList(true, 1.5, -42, Long.MIN_VALUE), values.subList(0, 4));
+		assertArrayEquals(new byte[0], (byte[]) values.get(4));
+		assertEquals(Integer.MIN_VALUE, parsed.get(4));
+		assertEquals(Arrays.asList(), parsed.get(5));
+
+		writer.writeResponse(Arrays.asList(1, "ok", 0));
+		assertEquals(Arrays.asList(1, "ok", 0), XmlRpc.parseResponse(writer.getBuffer(), 0, writer.getLength()));
+	}
+
+}
@@ -0,0 +1,107 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.manual;
+
+import java.nio.ByteBuffer;
+
+import de.isse.jros.types.ROSfloat64;
+import de.isse.jros.types.ROSint32;
+import de.isse.jros.types.ROSstring;
+
+/**
+ * Manual benchmark comparing the primitive codecs and string writes with the
+ * previous ByteBuffer and byte-by-byte implementations
+ */
+public class ManualCodecTest {
+
+	private static final int VALUES = 1024;
+	private static final int ROUNDS = 20000;
+
+	public static void main(String[] args) {
+		byte[] data = new byte[VALUES * 8];
+		for (int i = 0; i < VALUES; i++)
+			ROSfloat64.TYPE.write(data, i * 8, i * 0.5);
+
+		for (int warmup = 0; warmup < 3; warmup++) {
+			long sum = 0, start = System.nanoTime();
+			for (int round = 0; round < ROUNDS; round++)
+				for (int i = 0; i < VALUES * 2; i++)
+					sum += Integer.reverseBytes(ByteBuffer.wrap(data, i * 4, 4).getInt());
+			report("int32 read (ByteBuffer)", start, VALUES * 2, sum);
+
+			sum = 0;
+			start = System.nanoTime();
+			for (int round = 0; round < ROUNDS; round++)
+				for (int i = 0; i < VALUES * 2; i++)
+					sum += ROSint32.TYPE.read(data, i * 4);
+			report("int32 read (ROSint32)", start, VALUES * 2, sum);
+
+			double total = 0;
+			start = System.nanoTime();
+			for (int round = 0; round < ROUNDS; round++)
+				for (int i = 0; i < VALUES; i++)
+					total += Double.longBitsToDouble(Long.reverseBytes(ByteBuffer.wrap(data, i * 8, 8).getLong()));
+			report("float64 read (ByteBuffer)", start, VALUES, (long) total);
+
+			total = 0;
+			start = System.nanoTime();
+			for (int round = 0; round < ROUNDS; round++)
+				for (int i = 0; i < VALUES; i++)
+					total += ROSfloat64.TYPE.read(data, i * 8);
+			report("float64 read (ROSfloat64)", start, VALUES, (long) total);
+
+			byte[] message = new byte[64 * 1024];
+			start = System.nanoTime();
+			for (int round = 0; round < ROUNDS / 100; round++) {
+				for (int i = 0; i < 64; i++)
+					moveBytesRight(message, 0, 1);
+				for (int i = 0; i < 64; i++)
+					moveBytesLeft(message, 0, 1);
+			}
+			report("string resize (byte loop)", start, 128, message[0]);
+
+			start = System.nanoTime();
+			for (int round = 0; round < ROUNDS / 100; round++) {
+				for (int i = 0; i < 64; i++)
+					ROSstring.TYPE.write(message, 0, "x".repeat(i + 1));
+				for (int i = 63; i >= 0; i--)
+					ROSstring.TYPE.write(message, 0, "x".repeat(i));
+			}
+			report("string resize (ROSstring)", start, 128, message[0]);
+			System.out.println();
+		}
+	}
+
+	private static void report(String name, long start, int operations, long result) {
+		long time = System.nanoTime() - start;
+		int rounds = name.startsWith("string") ? ROUNDS / 100 : ROUNDS;
+		System.out.println(String.format("%-28s %8.2f ns/op (%d)", name, (double) time / rounds / operations,
+				result));
+	}
+
+	/** Previous implementation of ROSType.moveBytesRight */
+	private static void moveBytesRight(byte[] data, int start, int amount) {
+		for (int i = data.length - 1; i >= start + amount; i--) {
+			data[i] = data[i - amount];
+		}
+		for (int i = start; i < start + amount; i++) {
+			data[i] = 0;
+		}
+	}
+
+	/** Previous implementation of ROSType.moveBytesLeft */
+	private static void moveBytesLeft(byte[] data, int start, int amount) {
+		for (int i = start; i < data.length - amount; i++) {
+			data[i] = data[i + amount];
+		}
+		for (int i = data.length - amount; i < data.length; i++) {
+			data[i] = 0;
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.types;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.isse.jros.messages.GeometryMsgs;
+
+/**
+ * Testing fixed-size detection: sizes of composed types and constant-time
+ * skipping
+ */
+public class FixedSizeTest {
+
+	@Test
+	public void testFixedSizes() {
+		assertEquals(1, ROSbyte.TYPE.getFixedSize());
+		assertEquals(8, ROStime.TYPE.getFixedSize());
+		assertEquals(-1, ROSstring.TYPE.getFixedSize());
+		assertEquals(-1, new ROSarray(ROSfloat64.TYPE).getFixedSize());
+		assertEquals(36 * 8, new ROSfixedArray(ROSfloat64.TYPE, 36).getFixedSize());
+		assertEquals(7 * 8, GeometryMsgs.Transform().getFixedSize());
+		assertEquals(7 * 8 + 36 * 8, GeometryMsgs.PoseWithCovariance().getFixedSize());
+		assertEquals(-1, GeometryMsgs.TransformStamped().getFixedSize());
+		assertEquals(-1, new ROSfixedArray(ROSstring.TYPE, 2).getFixedSize());
+	}
+
+	@Test
+	public void testSkip() {
+		ROSstruct transform = GeometryMsgs.Transform();
+		ROSarray transforms = new ROSarray(transform);
+		byte[] data = new byte[4 + 3 * 56];
+		transforms.write(data, 0, 3);
+		assertEquals(3, (int) transforms.read(data, 0));
+		assertEquals(data.length, transforms.skip(data, 0));
+		assertEquals(4 + 2 * 56, transforms.skipToIndex(2, data, 0));
+		assertEquals(-1, transforms.skipToIndex(3, data, 0));
+
+		ROSfixedArray fixed = new ROSfixedArray(transform, 3);
+		assertEquals(10 + 3 * 56, fixed.skip(data, 10));
+		assertEquals(10 + 56, fixed.skipToIndex(1, data, 10));
+		assertEquals(-1, fixed.skipToIndex(3, data, 10));
+
+		ROSfixedArray strings = new ROSfixedArray(ROSstring.TYPE, 2);
+		byte[] text = new byte[12];
+		ROSstring.TYPE.write(text, 0, "abcd");
+		assertEquals(12, strings.skip(text, 0));
+		assertEquals(8, strings.skipToIndex(1, text, 0));
+	}
+
+}
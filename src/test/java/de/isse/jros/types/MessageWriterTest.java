@@ -0,0 +1,107 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/. 
+ *
+ * Copyright 2016-2019 ISSE, University of Augsburg 
+ */
+
+package de.isse.jros.types;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import de.isse.jros.descriptors.ElementDescriptor;
+import de.isse.jros.messages.GeometryMsgs;
+
+/**
+ * Testing sequentially written messages against writing single elements
+ */
+public class MessageWriterTest {
+
+	private ROSstruct transform = GeometryMsgs.TransformStamped();
+	private ROSstruct msg = new ROSstruct("test/Written").withString("name")
+			.withField("transforms", new ROSarray(transform)).withField("values", new ROSarray(ROSfloat64.TYPE))
+			.withField("fixed", new ROSfixedArray(ROSint16.TYPE, 2)).withBool("flag");
+
+	@Test
+	public void testMessage() {
+		byte[] written = new MessageWriter(msg, 4).writeString("name").beginArray(2)
+				.writeInteger(1).writeTime(2, 3).writeString("/world").writeString("/a")
+				.writeFloat(1).writeFloat(2).writeFloat(3).writeFloat(0).writeFloat(0).writeFloat(0).writeFloat(1)
+				.writeInteger(4).writeTime(5, 6).writeString("/world").writeString("/b/c")
+				.writeFloat(0).writeFloat(0).writeFloat(0).writeFloat(0).writeFloat(0).writeFloat(0).writeFloat(1)
+				.beginArray(0).writeInteger(-7).writeInteger(8).writeBoolean(true).toByteArray();
+
+		byte[] data = new byte[msg.skip(null, 0) + 1024];
+		ElementDescriptor.createFor(msg, ROSstring.TYPE, "name").write(data, "name");
+		ElementDescriptor.createFor(msg, new ROSarray(transform), "transforms").write(data, 2);
+		String[] children = { "/a", "/b/c" };
+		for (int i = 0; i < 2; i++) {
+			String index = String.valueOf(i);
+			ElementDescriptor.createFor(msg, ROSuint32.TYPE, "transforms", index, "header", "seq").write(data,
+					(long) 3 * i + 1);
+			ElementDescriptor.createFor(msg, ROStime.TYPE, "transforms", index, "header", "stamp").write(data,
+					new int[] { 3 * i + 2, 3 * i + 3 });
+			ElementDescriptor.createFor(msg, ROSstring.TYPE, "transforms", index, "header", "frame_id")
+					.write(data, "/world");
+			ElementDescriptor.createFor(msg, ROSstring.TYPE, "transforms", index, "child_frame_id").write(data,
+					children[i]);
+			ElementDescriptor.createFor(msg, ROSfloat64.TYPE, "transforms", index, "transform", "rotation", "w")
+					.write(data, 1.0);
+		}
+		for (int i = 0; i < 3; i++)
+			ElementDescriptor.createFor(msg, ROSfloat64.TYPE, "transforms", "0", "transform", "translation",
+					String.valueOf((char) ('x' + i))).write(data, i + 1.0);
+		ElementDescriptor.createFor(msg, ROSint16.TYPE, "fixed", "0").write(data, -7L);
+		ElementDescriptor.createFor(msg, ROSint16.TYPE, "fixed", "1").write(data, 8L);
+		ElementDescriptor.createFor(msg, ROSbool.TYPE, "flag").write(data, true);
+
+		int size = msg.skip(data, 0);
+		assertEquals(size, written.length);
+		for (int i = 0; i < size; i++)
+			assertEquals("byte " + i, data[i], written[i]);
+	}
+
+	@Test
+	public void testFixedSize() {
+		ROSstruct vector = GeometryMsgs.Vector3();
+		MessageWriter writer = new MessageWriter(vector);
+		writer.writeFloat(1).writeFloat(2);
+		assertFalse(writer.isComplete());
+		assertEquals(ROSfloat64.TYPE.getName(), writer.getNextType().getName());
+		byte[] data = writer.writeFloat(3).toByteArray();
+		assertEquals(24, data.length);
+		assertEquals(2.0, ElementDescriptor.createFor(vector, ROSfloat64.TYPE, "y").read(data), 0);
+		assertArrayEquals(data, writer.toByteArray());
+	}
+
+	@Test
+	public void testValidation() {
+		MessageWriter writer = new MessageWriter(msg);
+		try {
+			writer.writeInteger(1);
+			fail("Integer written to string field");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Field name has type string, cannot write an integer", e.getMessage());
+		}
+		writer.writeString("name").beginArray(1).writeInteger(1).writeTime(0, 0);
+		try {
+			writer.writeFloat(1);
+			fail("Float written to string field");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Field transforms.0.header.frame_id has type string, cannot write a float",
+					e.getMessage());
+		}
+		try {
+			writer.toByteArray();
+			fail("Incomplete message returned");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Field transforms.0.header.frame_id has not been written", e.getMessage());
+		}
+	}
+
+}
@@ -7,6 +7,7 @@
 
 package de.isse.jros.types;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
@@ -113,6 +114,32 @@ public class PrimitiveTest {
 		testPrimitive(ROSuint64.TYPE, 1L, 1L << 40);
 	}
 
+	@Test
+	public void testByteOrder() {
+		byte[] msg = new byte[8];
+		ROSint32.TYPE.write(msg, 2, 0x01020304L);
+		assertArrayEquals(new byte[] { 0, 0, 4, 3, 2, 1, 0, 0 }, msg);
+		ROSfloat64.TYPE.write(msg, 0, Double.longBitsToDouble(0x0102030405060708L));
+		assertArrayEquals(new byte[] { 8, 7, 6, 5, 4, 3, 2, 1 }, msg);
+		assertEquals(-1L, (long) ROSint16.TYPE.read(new byte[] { -1, -1 }, 0));
+		assertEquals(65535L, (long) ROSuint16.TYPE.read(new byte[] { -1, -1 }, 0));
+	}
+
+	@Test
+	public void testStringResize() {
+		byte[] msg = new byte[32];
+		ROSstring.TYPE.write(msg, 0, "abc");
+		ROSint32.TYPE.write(msg, 7, 42L);
+		ROSstring.TYPE.write(msg, 0, "abcdefgh");
+		assertEquals("abcdefgh", ROSstring.TYPE.read(msg, 0));
+		assertEquals(42L, (long) ROSint32.TYPE.read(msg, 12));
+		ROSstring.TYPE.write(msg, 0, "a");
+		assertEquals("a", ROSstring.TYPE.read(msg, 0));
+		assertEquals(42L, (long) ROSint32.TYPE.read(msg, 5));
+		for (int pos = 9; pos < msg.length; pos++)
+			assertEquals(0, msg[pos]);
+	}
+
 	public <T> void testPrimitive(ROSType<T> type, T first, T second) throws IOException {
 		byte[] msg = new byte[1000], msg2 = new byte[1000];
 